@@ -38,6 +38,12 @@ public class MainActivity extends AppCompatActivity {
                 CanvasView canvasView = findViewById(R.id.canvas);
                 canvasView.reset();
                 return true;
+            case R.id.undo_button:
+                ((CanvasView) findViewById(R.id.canvas)).undo();
+                return true;
+            case R.id.redo_button:
+                ((CanvasView) findViewById(R.id.canvas)).redo();
+                return true;
             case R.id.info_button:
                 AlertDialog.Builder alert = new AlertDialog.Builder(this);
                 alert.setPositiveButton("Ok", new DialogInterface.OnClickListener() {
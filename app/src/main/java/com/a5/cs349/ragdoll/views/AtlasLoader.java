@@ -0,0 +1,132 @@
+package com.a5.cs349.ragdoll.views;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.a5.cs349.ragdoll.io.SizedLruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes texture atlases on a background thread into one cache shared by
+ * every view and rig, bounded by a budget in bytes. The least recently
+ * used atlases are dropped once the budget is exceeded; views still
+ * drawing one keep it.
+ *
+ * Call from the UI thread; callbacks run on it too.
+ */
+final class AtlasLoader {
+    private static final String TAG = "AtlasLoader";
+
+    /**
+     * Told on the UI thread when an atlas is ready.
+     */
+    interface Callback {
+        void onAtlasLoaded(TextureAtlas atlas);
+    }
+
+    private static AtlasLoader shared;
+
+    private final Context context;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "atlas-decode");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final SizedLruCache<String, TextureAtlas> cache;
+    private final Map<String, List<Callback>> pending = new HashMap<>();
+
+    private AtlasLoader(Context context, long budget) {
+        this.context = context.getApplicationContext();
+        cache = new SizedLruCache<String, TextureAtlas>(budget) {
+            @Override
+            protected long sizeOf(String key, TextureAtlas atlas) {
+                return atlas.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the loader every view shares, with a budget of an eighth of
+     * the heap until told otherwise.
+     */
+    static synchronized AtlasLoader get(Context context) {
+        if (shared == null) {
+            shared = new AtlasLoader(context, Runtime.getRuntime().maxMemory() / 8);
+        }
+        return shared;
+    }
+
+    void setBudget(long bytes) {
+        cache.setBudget(bytes);
+    }
+
+    long getBudget() {
+        return cache.getBudget();
+    }
+
+    /**
+     * Loads the atlas of the given drawable resources at the given sizes,
+     * as TextureAtlas.load does, calling back once it is ready: at once if
+     * it is cached, otherwise after it is decoded. Requests for a key
+     * already being decoded share the one decode.
+     *
+     * @param key names the resources and sizes, e.g. a rig's file name
+     */
+    void load(final String key, final int[] resourceIds, final int[] widths, final int[] heights,
+              Callback callback) {
+        TextureAtlas cached = cache.get(key);
+        if (cached != null) {
+            callback.onAtlasLoaded(cached);
+            return;
+        }
+        List<Callback> waiting = pending.get(key);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pending.put(key, waiting);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                TextureAtlas decoded = null;
+                try {
+                    decoded = TextureAtlas.load(context, resourceIds, widths, heights);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Could not load atlas " + key, e);
+                }
+                final TextureAtlas atlas = decoded;
+                main.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Callback> callbacks = pending.remove(key);
+                        if (atlas == null) {
+                            // Parts keep their placeholders
+                            return;
+                        }
+                        if (!cache.put(key, atlas)) {
+                            Log.w(TAG, "Atlas " + key + " is over the budget of " + cache.getBudget()
+                                    + " bytes, so is not cached");
+                        }
+                        for (Callback c : callbacks) {
+                            c.onAtlasLoaded(atlas);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -2,30 +2,119 @@ package com.a5.cs349.ragdoll.views;
 
 import android.content.Context;
 import android.graphics.*;
-import android.graphics.drawable.Drawable;
 import android.support.annotation.Nullable;
 import android.support.v4.view.MotionEventCompat;
-import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
+import android.view.SurfaceView;
 import android.view.View;
-import com.a5.cs349.ragdoll.R;
-
-import java.util.Arrays;
+import com.a5.cs349.ragdoll.anim.Animator;
+import com.a5.cs349.ragdoll.anim.Clip;
+import com.a5.cs349.ragdoll.anim.Clock;
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.ik.IkSolver;
+import com.a5.cs349.ragdoll.io.PoseLibrary;
+import com.a5.cs349.ragdoll.io.PoseLibraryWriter;
+import com.a5.cs349.ragdoll.io.RigLoader;
+import com.a5.cs349.ragdoll.io.RigReader;
+import com.a5.cs349.ragdoll.metrics.FrameMetrics;
+import com.a5.cs349.ragdoll.metrics.InputMetrics;
+import com.a5.cs349.ragdoll.physics.PhysicsWorld;
+import com.a5.cs349.ragdoll.physics.VerletBody;
+import com.a5.cs349.ragdoll.scene.PoseBuffer;
+import com.a5.cs349.ragdoll.scene.PoseHistory;
+import com.a5.cs349.ragdoll.scene.PoseSnapshot;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
-
-import static android.view.MotionEvent.INVALID_POINTER_ID;
+import java.util.concurrent.ForkJoinPool;
 
 // https://www.youtube.com/watch?v=sb9OEl4k9Dk
 // https://developer.android.com/training/gestures/scale
 // https://codingexplained.com/coding/java/enum-to-integer-and-integer-to-enum
 public class CanvasView extends View {
-    private Vector<Sprite> sprites;
-    private Sprite interactiveSprite; // Sprite with which user is interacting
+    private Vector<Sprite> sprites;                                     // One root per ragdoll, bottom to top
+    private Sprite scaleSprite;                                         // Sprite being pinched, or null
+
+    private static final String RIG_ASSET = "rigs/scyther.rig";
+    private static RigLoader rigLoader;                                 // Shared by every view
+
+    private RigDefinition rig;                                          // Shared by every ragdoll
+    private TextureAtlas atlas;                                         // Null until decoded
+    private PartDrawable[] partDrawables;                               // Indexed by part
+
+    private final FrameMetrics metrics = new FrameMetrics();            // Off until enabled
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private boolean overlayVisible;
+    private static final int OVERLAY_TEXT_SIZE = 28;
+    private static final int OVERLAY_WIDTH = 640;
+    private static final int OVERLAY_LINES = FrameMetrics.Phase.values().length + 1;
+    private final Paint overlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final StringBuilder overlayText = new StringBuilder(256);   // Reused by drawOverlay
+    private char[] overlayLine = new char[64];
+
+    private final FrameInputBatcher input = new FrameInputBatcher(new FrameInputBatcher.Listener() {
+        @Override
+        public void onBatchApplied() {
+            invalidateDamage();
+        }
+    }, metrics);
+
+    private final Animator animator = new Animator(Clock.SYSTEM);
+    private boolean animationPosted;
+    private final Choreographer.FrameCallback animationFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            animationPosted = false;
+            long start = metrics.begin();
+            boolean running = animator.update();
+            if (physics != null) {
+                running |= physics.update();
+            }
+            metrics.end(FrameMetrics.Phase.UPDATE, start);
+            if (running) {
+                postAnimationFrame();
+            }
+            invalidateDamage();
+        }
+    };
+
+    private PhysicsWorld physics;                                       // Null while physics is off
+    private ForkJoinPool physicsPool;                                   // Steps the ragdolls in parallel
+
+    private boolean inverseKinematics;                                  // False while hands and feet rotate alone
+    private final List<IkSolver> solvers = new ArrayList<>();           // One per limb being reached for
+
+    private SurfaceRenderer renderer;                                   // Set while drawing on a render thread
+    private PoseBuffer.Writer poseWriter;
 
+    private static final int DAMAGE_MARGIN = 2;
+    private final Bounds damage = new Bounds();                         // Reused by invalidateDamage
+
+    public static final String INITIAL_POSE = "initial";
+    private final Map<String, PoseSnapshot> poses = new HashMap<>();
+
+    private final PoseHistory history = new PoseHistory();              // Keyed by ragdoll index
+    private final PoseHistory.Target ragdolls = new PoseHistory.Target() {
+        @Override
+        public Skeleton getSkeleton(int id) {
+            return id < sprites.size() ? sprites.get(id).getSkeleton() : null;
+        }
+    };
+
+    // Parts of the Scyther rig, in the order rigs/scyther.rig lists them
     protected enum BodyPart {
         TORSO(0),
         LEFT_L_UP(1),
@@ -65,7 +154,6 @@ public class CanvasView extends View {
 
     }
 
-    private int mActivePointerId = INVALID_POINTER_ID;
     private ScaleGestureDetector mScaleDetector;
 
     public CanvasView(Context context) {
@@ -94,119 +182,604 @@ public class CanvasView extends View {
 
     private void init(@Nullable AttributeSet set) {
         sprites = new Vector<>();
-        interactiveSprite = null;
-
-        Drawable torsoDrawable = getResources().getDrawable(R.drawable.scyther_body, null);
-        int w = 499;
-        int h = 574;
-        Vector<PointF> torsoPoints = new Vector<>(Arrays.asList(BODY_POINTS[BodyPart.TORSO.getValue()]));
-        torsoDrawable.setBounds(-w/2 - w/25, -h/2, w/2 - w/25, h/2);
-        Sprite torso = new TranslationSprite(torsoDrawable, torsoPoints);
-        sprites.add(torso);
-
-        Sprite leftUpperLeg = buildSprite(R.drawable.scyther_left_upper_leg,
-                BodyPart.LEFT_L_UP.getValue(), new Point(-115, 150),
-                new PointF(-0.3f, -0.15f),90);
-        leftUpperLeg.setScalable(true);
-        torso.addChild(leftUpperLeg);
-
-        Sprite leftLowerLeg = buildSprite(R.drawable.scyther_left_lower_leg,
-                BodyPart.LEFT_L_DOWN.getValue(), new Point(-45, 72),
-                new PointF(0, 0.4f),90);
-        leftLowerLeg.setScalable(true);
-        leftUpperLeg.addChild(leftLowerLeg);
-
-        Sprite leftLegFoot = buildSprite(R.drawable.scyther_left_leg_foot,
-                BodyPart.LEFT_L_FOOT.getValue(), new Point(-67, 155),
-                new PointF(-0.3f, 0.5f),35);
-        leftLowerLeg.addChild(leftLegFoot);
-
-        Sprite rightUpperLeg = buildSprite(R.drawable.scyther_right_upper_leg,
-                BodyPart.RIGHT_L_UP.getValue(), new Point(110, 140),
-                new PointF(0.3f, -0.15f),90);
-        rightUpperLeg.setScalable(true);
-        torso.addChild(rightUpperLeg);
-
-        Sprite rightLowerLeg = buildSprite(R.drawable.scyther_right_lower_leg,
-                BodyPart.RIGHT_L_DOWN.getValue(), new Point(28, 65),
-                new PointF(0, 0.4f),90);
-        rightLowerLeg.setScalable(true);
-        rightUpperLeg.addChild(rightLowerLeg);
-
-        Sprite rightLegFoot = buildSprite(R.drawable.scyther_right_leg_foot,
-                BodyPart.RIGHT_L_FOOT.getValue(), new Point(49, 135),
-                new PointF(0.3f, 0.5f),35);
-        rightLowerLeg.addChild(rightLegFoot);
-
-        Sprite leftUpperArm = buildSprite(R.drawable.scyther_left_upper_arm,
-                BodyPart.LEFT_A_UP.getValue(), new Point(-125, -45),
-                new PointF(-0.4f, 0),180);
-        torso.addChild(leftUpperArm);
-
-        Sprite leftLowerArm = buildSprite(R.drawable.scyther_left_lower_arm,
-                BodyPart.LEFT_A_DOWN.getValue(), new Point(-83, 80),
-                new PointF(-0.4f, 0.5f),135);
-        leftUpperArm.addChild(leftLowerArm);
-
-        Sprite leftArmHand = buildSprite(R.drawable.scyther_left_arm_hand,
-                BodyPart.LEFT_A_HAND.getValue(), new Point(-210, 260),
-                new PointF(-0.45f, 0.45f),35);
-        leftLowerArm.addChild(leftArmHand);
-
-        Sprite rightUpperArm = buildSprite(R.drawable.scyther_right_upper_arm,
-                BodyPart.RIGHT_A_UP.getValue(), new Point(125, -45),
-                new PointF(0.4f, 0),180);
-        torso.addChild(rightUpperArm);
-
-        Sprite rightLowerArm = buildSprite(R.drawable.scyther_right_lower_arm,
-                BodyPart.RIGHT_A_DOWN.getValue(), new Point(70, 80),
-                new PointF(0.4f, 0.5f),135);
-        rightUpperArm.addChild(rightLowerArm);
-
-        Sprite rightArmHand = buildSprite(R.drawable.scyther_right_arm_hand,
-                BodyPart.RIGHT_A_HAND.getValue(), new Point(175, 280),
-                new PointF(0.45f, 0.45f),35);
-        rightLowerArm.addChild(rightArmHand);
-
-        Vector<PointF> headPoints = new Vector<>(Arrays.asList(BODY_POINTS[BodyPart.HEAD.getValue()]));
-        Drawable headDrawable = getResources().getDrawable(R.drawable.scyther_head, null);
-        w = headDrawable.getIntrinsicWidth();
-        h = headDrawable.getIntrinsicHeight();
-        headDrawable.setBounds(-w/2, 75 - h, w/2, 75);
-        Sprite head = new RotatableSprite(headDrawable, headPoints);
-        head.setMaxRotate(50);
-        head.translate(0,-75 - 48);
-        torso.addChild(head);
+        overlayPaint.setTextSize(OVERLAY_TEXT_SIZE);
+
+        buildRig();
+        spawnRagdoll(0, 0);
+        savePose(INITIAL_POSE);
     }
 
+    /**
+     * Puts the scene back into the pose it was created in, without
+     * reloading any resources.
+     */
     public void reset() {
-        sprites.removeAllElements();
-        init(null);
+        restorePose(INITIAL_POSE);
         sprites.get(0).translate(getWidth()/2, getHeight()/2);
+        invalidateScene();
+    }
+
+    /**
+     * Stores the pose of every ragdoll under the given name, replacing any
+     * pose stored under it before.
+     */
+    public void savePose(String name) {
+        List<Skeleton> skeletons = new ArrayList<>(sprites.size());
+        for (int i = 0, n = sprites.size(); i < n; i++) {
+            skeletons.add(sprites.get(i).getSkeleton());
+        }
+        poses.put(name, PoseSnapshot.capture(skeletons));
+    }
+
+    /**
+     * Restores a pose stored by savePose. Ragdolls spawned since are
+     * removed and removed ones are spawned again, so the scene matches the
+     * stored one.
+     *
+     * @return false if no pose is stored under the name
+     */
+    public boolean restorePose(String name) {
+        PoseSnapshot snapshot = poses.get(name);
+        if (snapshot == null) {
+            return false;
+        }
+        releaseAll();
+        animator.stopAll();
+        history.clear();
+        int n = snapshot.getSkeletonCount();
+        while (sprites.size() > n) {
+            sprites.remove(sprites.size() - 1);
+        }
+        while (sprites.size() < n) {
+            spawnRagdoll(0, 0);
+        }
+        for (int i = 0; i < n; i++) {
+            snapshot.restore(i, sprites.get(i).getSkeleton());
+        }
+        if (physics != null) {
+            addBodies();
+        }
+        invalidateScene();
+        return true;
+    }
+
+    /**
+     * Puts back the pose from before the last drag or pinch not yet undone.
+     * Only the joints it changed move.
+     *
+     * @return false if there is nothing to undo
+     */
+    public boolean undo() {
+        if (!history.undo(ragdolls)) {
+            return false;
+        }
+        poseChanged();
+        return true;
+    }
+
+    /**
+     * Makes the last drag or pinch undone again.
+     *
+     * @return false if there is nothing to redo
+     */
+    public boolean redo() {
+        if (!history.redo(ragdolls)) {
+            return false;
+        }
+        poseChanged();
+        return true;
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Restarts the bodies from poses set outside of a gesture.
+     */
+    private void poseChanged() {
+        if (physics != null) {
+            addBodies();
+            postAnimationFrame();
+        }
+        invalidateScene();
+    }
+
+    public boolean hasPose(String name) {
+        return poses.containsKey(name);
+    }
+
+    /**
+     * Writes every stored pose to a pose library file, so they outlive the
+     * process.
+     */
+    public void writePoses(File file) throws IOException {
+        PoseLibraryWriter writer = new PoseLibraryWriter(new FileOutputStream(file));
+        try {
+            for (Map.Entry<String, PoseSnapshot> entry : poses.entrySet()) {
+                writer.writePose(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Stores every pose in a pose library file, replacing stored poses of
+     * the same names. Clips in the library are skipped.
+     *
+     * @return the number of poses read
+     */
+    public int readPoses(File file) throws IOException {
+        PoseLibrary library = PoseLibrary.open(file);
+        int read = 0;
+        for (int i = 0, n = library.getEntryCount(); i < n; i++) {
+            if (library.isPose(i)) {
+                poses.put(library.getName(i), library.getPose(i).toSnapshot());
+                read++;
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Plays clip on a ragdoll, on top of any clips already playing on it.
+     * Clips are keyed by part, i.e. BodyPart.getValue().
+     *
+     * @param ragdoll a root sprite returned by spawnRagdoll
+     */
+    public void play(Clip clip, Sprite ragdoll, boolean loop) {
+        animator.play(clip, ragdoll.getSkeleton(), loop);
+        invalidateDamage();
+        postAnimationFrame();
+    }
+
+    public void stopAnimation(Sprite ragdoll) {
+        animator.stop(ragdoll.getSkeleton());
+    }
+
+    /**
+     * Lets the ragdolls fall, collapsing within their joint limits onto
+     * the bottom of the view. A ragdoll being dragged is held still and
+     * falls from wherever it is let go. The ragdolls are stepped in
+     * parallel, one chunk of them per core, and every step is done before
+     * the frame is drawn.
+     */
+    public void setPhysicsEnabled(boolean enabled) {
+        if (enabled == (physics != null)) {
+            return;
+        }
+        if (!enabled) {
+            physics = null;
+            physicsPool.shutdown();
+            physicsPool = null;
+            return;
+        }
+        physicsPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        physics = new PhysicsWorld(Clock.SYSTEM, physicsPool);
+        physics.setLimits(0, 0, getWidth(), getHeight());
+        addBodies();
+        postAnimationFrame();
+    }
+
+    public boolean isPhysicsEnabled() {
+        return physics != null;
+    }
+
+    /**
+     * Makes dragging a hand or foot pose its whole limb, turning every
+     * joint back to the torso within its limit, rather than rotating the
+     * hand or foot alone.
+     */
+    public void setInverseKinematicsEnabled(boolean enabled) {
+        inverseKinematics = enabled;
+    }
+
+    public boolean isInverseKinematicsEnabled() {
+        return inverseKinematics;
+    }
+
+    /**
+     * Starts pointerId's interaction with the sprite at (x, y), if there is
+     * one no other pointer holds. A hand or foot reaches with IK only if
+     * no other pointer holds a joint of its limb, and otherwise rotates
+     * alone.
+     */
+    private void press(int pointerId, float x, float y) {
+        Sprite sprite = findSpriteHit(x, y);
+        PointerSessions sessions = input.getSessions();
+        if (sprite == null || !sessions.isFree(sprite)) {
+            return;
+        }
+        track(sprite);
+        if (inverseKinematics && sprite.getParent() != null && sprite.getChildCount() == 0
+                && sessions.isChainFree(sprite)) {
+            sprite.handleReachDownEvent(x, y, idleSolver());
+        } else {
+            sprite.handleMouseDownEvent(x, y);
+        }
+        input.begin(pointerId, sprite);
+        hold(sprite);
+    }
+
+    /**
+     * Ends pointerId's interaction, if it has one.
+     */
+    private void lift(int pointerId, float x, float y) {
+        Sprite sprite = input.end(pointerId);
+        if (sprite != null) {
+            sprite.handleMouseUp(x, y);
+            release(sprite);
+        }
+    }
+
+    /**
+     * Ends every pointer's interaction and the pinch, dropping anything
+     * queued.
+     */
+    private void releaseAll() {
+        PointerSessions sessions = input.getSessions();
+        while (sessions.getCount() > 0) {
+            Sprite sprite = sessions.getSprite(0);
+            lift(sessions.getPointerId(0), sprite.mLastTouchX, sprite.mLastTouchY);
+        }
+        endPinch();
+        input.clear();
+    }
+
+    private void endPinch() {
+        Sprite pinched = scaleSprite;
+        scaleSprite = null;
+        if (pinched != null) {
+            release(pinched);
+        }
+    }
+
+    /**
+     * Returns a solver not reaching for any limb. Sprites release theirs
+     * when let go.
+     */
+    private IkSolver idleSolver() {
+        for (int i = 0, n = solvers.size(); i < n; i++) {
+            if (!solvers.get(i).isGrabbing()) {
+                return solvers.get(i);
+            }
+        }
+        IkSolver solver = new IkSolver(rig);
+        solvers.add(solver);
+        return solver;
+    }
+
+    /**
+     * Has the gesture's undo entry cover the ragdoll sprite belongs to.
+     */
+    private void track(Sprite sprite) {
+        Skeleton skeleton = sprite.getSkeleton();
+        for (int i = 0, n = sprites.size(); i < n; i++) {
+            if (sprites.get(i).getSkeleton() == skeleton) {
+                history.track(i, skeleton);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives every ragdoll a body, starting from its current pose.
+     */
+    private void addBodies() {
+        physics.clear();
+        for (int i = 0, n = sprites.size(); i < n; i++) {
+            Skeleton skeleton = sprites.get(i).getSkeleton();
+            VerletBody body = new VerletBody(skeleton, rig);
+            body.setHeld(isHeld(skeleton));
+            physics.add(body);
+        }
+    }
+
+    /**
+     * Returns whether a pointer or the pinch holds a sprite of skeleton.
+     */
+    private boolean isHeld(Skeleton skeleton) {
+        return input.getSessions().holds(skeleton)
+                || (scaleSprite != null && scaleSprite.getSkeleton() == skeleton);
+    }
+
+    /**
+     * Holds the body of the ragdoll sprite belongs to still, if physics is
+     * on, until every pointer on it is lifted.
+     */
+    private void hold(Sprite sprite) {
+        if (physics != null) {
+            VerletBody body = physics.find(sprite.getSkeleton());
+            if (body != null) {
+                body.setHeld(true);
+            }
+        }
+    }
+
+    /**
+     * Lets the body of the ragdoll sprite belongs to fall, once nothing
+     * holds it.
+     */
+    private void release(Sprite sprite) {
+        if (physics == null || isHeld(sprite.getSkeleton())) {
+            return;
+        }
+        VerletBody body = physics.find(sprite.getSkeleton());
+        if (body != null && body.isHeld()) {
+            body.setHeld(false);
+            postAnimationFrame();
+        }
+    }
+
+    private void postAnimationFrame() {
+        if (!animationPosted) {
+            animationPosted = true;
+            Choreographer.getInstance().postFrameCallback(animationFrame);
+        }
+    }
+
+    /**
+     * Touch events received against drag, rotate and scale updates applied.
+     */
+    public InputMetrics getInputMetrics() {
+        return input.getMetrics();
+    }
+
+    /**
+     * Time spent in each phase of a frame, and from each touch to the
+     * frame showing it. Recorded only while enabled by setMetricsEnabled.
+     */
+    public FrameMetrics getFrameMetrics() {
+        return metrics;
+    }
+
+    public void setMetricsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Shows the p50, p99 and max of every phase in the top left corner,
+     * updated whenever the ragdolls are redrawn.
+     */
+    public void setMetricsOverlayVisible(boolean visible) {
+        overlayVisible = visible;
+        invalidate(0, 0, OVERLAY_WIDTH, overlayHeight());
+    }
+
+    public boolean isMetricsOverlayVisible() {
+        return overlayVisible;
+    }
+
+    /**
+     * Adds a ragdoll with its torso at (x, y), drawn above the existing
+     * ones. Every instance shares the rig's shapes and drawables; only its
+     * pose is its own.
+     *
+     * @return the ragdoll's root sprite
+     */
+    public Sprite spawnRagdoll(float x, float y) {
+        Skeleton skeleton = rig.instantiate(x, y);
+        Sprite root = null;
+        for (int part = 0, n = rig.getPartCount(); part < n; part++) {
+            Sprite sprite;
+            if (rig.isDraggable(part)) {
+                sprite = new TranslationSprite(partDrawables[part], rig.getShape(part), skeleton, part);
+            } else {
+                sprite = new RotatableSprite(partDrawables[part], rig.getShape(part), skeleton, part);
+            }
+            sprite.setMaxRotate(rig.getMaxRotate(part));
+            if (root == null) {
+                root = sprite;
+            }
+        }
+        sprites.add(root);
+        if (atlas != null) {
+            applyHitMasks(root);
+        }
+        if (physics != null) {
+            physics.add(new VerletBody(skeleton, rig));
+            postAnimationFrame();
+        }
+        invalidateScene();
+        return root;
+    }
+
+    /**
+     * Adds n ragdolls, laid out on a grid covering the view.
+     */
+    public void spawnRagdolls(int n) {
+        int columns = (int) Math.ceil(Math.sqrt(n));
+        int rows = (n + columns - 1) / columns;
+        float cellW = (float) getWidth() / columns;
+        float cellH = (float) getHeight() / rows;
+        for (int i = 0; i < n; i++) {
+            spawnRagdoll((i % columns + 0.5f) * cellW, (i / columns + 0.5f) * cellH);
+        }
+    }
+
+    public int getRagdollCount() {
+        return sprites.size();
+    }
+
+    /**
+     * Loads the Scyther rig and gives each part a drawable, shared by every
+     * ragdoll spawned from it, then has the atlas holding the part images
+     * decoded in the background, at the size they are drawn. Parts draw a
+     * placeholder of their hit shape until it arrives, so the first frame
+     * never waits on decoding. Every part needs an image.
+     */
+    private void buildRig() {
+        try {
+            rig = rigLoader(getContext()).load(RIG_ASSET);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not load " + RIG_ASSET, e);
+        }
+        int parts = rig.getPartCount();
+        int[] images = new int[parts];
+        int[] widths = new int[parts];
+        int[] heights = new int[parts];
+        partDrawables = new PartDrawable[parts];
+        Bounds bounds = new Bounds();
+        for (int part = 0; part < parts; part++) {
+            rig.getImageBounds(part, bounds);
+            int left = (int) bounds.left;
+            int top = (int) bounds.top;
+            int right = (int) bounds.right;
+            int bottom = (int) bounds.bottom;
+            images[part] = rig.getImage(part);
+            widths[part] = Math.max(1, right - left);
+            heights[part] = Math.max(1, bottom - top);
+            PartDrawable drawable = new PartDrawable(rig.getShape(part));
+            drawable.setBounds(left, top, right, bottom);
+            partDrawables[part] = drawable;
+        }
+        AtlasLoader.get(getContext()).load(RIG_ASSET, images, widths, heights, new AtlasLoader.Callback() {
+            @Override
+            public void onAtlasLoaded(TextureAtlas loaded) {
+                atlas = loaded;
+                for (int part = 0; part < partDrawables.length; part++) {
+                    partDrawables[part].setImage(loaded.getDrawable(part));
+                }
+                for (int i = 0, n = sprites.size(); i < n; i++) {
+                    applyHitMasks(sprites.get(i));
+                }
+                invalidateScene();
+            }
+        });
+    }
+
+    /**
+     * Makes every part of a ragdoll hit test against the opaque pixels of
+     * its image, so a touch on a transparent corner falls through to
+     * whatever is drawn below it.
+     */
+    private void applyHitMasks(Sprite root) {
+        Skeleton skeleton = root.getSkeleton();
+        for (int part = 0; part < partDrawables.length; part++) {
+            Rect image = partDrawables[part].getBounds();
+            ((Sprite) skeleton.getTag(part)).setHitMask(atlas.getMask(part),
+                    image.left, image.top, image.right, image.bottom);
+        }
+    }
+
+    /**
+     * Caps the memory the decoded ragdoll images of every view take
+     * together. Images over the cap are still drawn, but are decoded again
+     * the next time they are needed.
+     */
+    public void setTextureBudget(long bytes) {
+        AtlasLoader.get(getContext()).setBudget(bytes);
+    }
+
+    /**
+     * Returns the loader every view reads rigs through, so a rig is read
+     * once per process. Images are named by drawable resource.
+     */
+    private static synchronized RigLoader rigLoader(Context context) {
+        if (rigLoader == null) {
+            final Context app = context.getApplicationContext();
+            rigLoader = new RigLoader(new RigLoader.Source() {
+                @Override
+                public InputStream open(String name) throws IOException {
+                    return app.getAssets().open(name);
+                }
+            }, new RigReader.ImageResolver() {
+                @Override
+                public int resolve(String image) throws IOException {
+                    int id = app.getResources().getIdentifier(image, "drawable", app.getPackageName());
+                    if (id == 0) {
+                        throw new IOException("No drawable named " + image);
+                    }
+                    return id;
+                }
+            });
+        }
+        return rigLoader;
+    }
+
+    /**
+     * Switches drawing to a render thread that draws onto surface, e.g. a
+     * SurfaceView laid out behind this view, which keeps handling input.
+     * After each change the scene's pose is published as an immutable
+     * snapshot, so input never waits on drawing and the render thread
+     * never sees a half-updated pose. Pass null to draw in onDraw again.
+     */
+    public void setRenderSurface(@Nullable SurfaceView surface) {
+        if (renderer != null) {
+            renderer.release();
+            renderer = null;
+            poseWriter = null;
+        }
+        if (surface != null) {
+            PoseBuffer buffer = new PoseBuffer();
+            poseWriter = buffer.newWriter();
+            renderer = new SurfaceRenderer(surface.getHolder(), partDrawables, buffer.newReader(),
+                    metrics);
+            publishPose();
+        }
         invalidate();
     }
 
-    private Sprite buildSprite(int resourceId, int index, Point adj, PointF rotate, float maxRotate) {
-        Drawable drawable = getResources().getDrawable(resourceId, null);
-        int w = drawable.getIntrinsicWidth();
-        int h = drawable.getIntrinsicHeight();
-        float rOffsetX = w*rotate.x;
-        float rOffsetY = h*rotate.y;
+    /**
+     * Redraws the whole scene, on whichever thread draws it.
+     */
+    private void invalidateScene() {
+        if (renderer != null) {
+            publishPose();
+            invalidateOverlay();
+        } else {
+            invalidate();
+        }
+    }
+
+    private void invalidateOverlay() {
+        if (overlayVisible) {
+            invalidate(0, 0, OVERLAY_WIDTH, overlayHeight());
+        }
+    }
+
+    private static int overlayHeight() {
+        return OVERLAY_LINES * OVERLAY_TEXT_SIZE * 5 / 4;
+    }
 
-//        Vector<PointF> points = new Vector<>(Arrays.asList(BODY_POINTS[index]));
-        Vector<PointF> points = new Vector<>();
-        points.add(new PointF(-w/2 + rOffsetX,-h/2 + rOffsetY));
-        points.add(new PointF(w/2 + rOffsetX,-h/2 + rOffsetY));
-        points.add(new PointF(w/2 + rOffsetX,h/2 + rOffsetY));
-        points.add(new PointF(-w/2 + rOffsetX,h/2 + rOffsetY));
+    private void publishPose() {
+        poseWriter.begin();
+        for (int i = 0, n = sprites.size(); i < n; i++) {
+            poseWriter.addSkeleton(sprites.get(i).getSkeleton());
+        }
+        poseWriter.publish();
+        renderer.requestRender();
+    }
 
-        drawable.setBounds(
-                -w/2 + (int)rOffsetX,  -h/2 + (int)rOffsetY,
-                w/2 + (int)rOffsetX,  h/2 + (int)rOffsetY);
-        Sprite sprite = new RotatableSprite(drawable, points);
-        sprite.setMaxRotate(maxRotate);
-        sprite.translate(adj.x - rOffsetX,adj.y - rOffsetY);
-        return sprite;
+    /**
+     * Invalidates only the area the ragdolls' changes since the last call
+     * touched: where the changed limbs were drawn, and where they will be.
+     */
+    private void invalidateDamage() {
+        damage.setEmpty();
+        for (int i = 0, n = sprites.size(); i < n; i++) {
+            sprites.get(i).getSkeleton().collectDamage(damage);
+        }
+        if (damage.isEmpty()) {
+            return;
+        }
+        invalidateOverlay();
+        if (renderer != null) {
+            // The surface is redrawn whole
+            publishPose();
+            return;
+        }
+        // Leave room for filtered edges
+        int left = (int) Math.floor(damage.left) - DAMAGE_MARGIN;
+        int top = (int) Math.floor(damage.top) - DAMAGE_MARGIN;
+        int right = (int) Math.ceil(damage.right) + DAMAGE_MARGIN;
+        int bottom = (int) Math.ceil(damage.bottom) + DAMAGE_MARGIN;
+        invalidate(left, top, right, bottom);
     }
 
     @Override
@@ -214,102 +787,142 @@ public class CanvasView extends View {
         super.onLayout(changed, left, top, right, bottom);
         if (sprites.size() > 0) {
             sprites.get(0).translate(getWidth()/2, getHeight()/2);
+            invalidateScene();
+        }
+        if (physics != null) {
+            physics.setLimits(0, 0, getWidth(), getHeight());
+            postAnimationFrame();
         }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (renderer != null) {
+            // The render thread draws the ragdolls, and counts them presented
+            if (overlayVisible) {
+                drawOverlay(canvas);
+            }
+            return;
+        }
 
-        // 1. Setup
-        Paint paint = new Paint();
-        paint.setStrokeWidth(3);
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.STROKE);
+        // Redraw; nothing in here may allocate, since it runs every frame
+        long start = metrics.begin();
+        for (int i = 0, n = sprites.size(); i < n; i++) {
+            sprites.get(i).draw(canvas);
+        }
+        metrics.end(FrameMetrics.Phase.DRAW, start);
+        if (overlayVisible) {
+            drawOverlay(canvas);
+        }
+        metrics.onPresented();
+    }
 
-        // 2. Redraw
-        for (Sprite sprite : sprites) {
-            sprite.draw(canvas);
+    /**
+     * Draws the metrics summary one line at a time, through reused buffers.
+     */
+    private void drawOverlay(Canvas canvas) {
+        overlayText.setLength(0);
+        metrics.appendSummary(overlayText);
+        overlayPaint.setColor(0xc0ffffff);
+        canvas.drawRect(0, 0, OVERLAY_WIDTH, overlayHeight(), overlayPaint);
+        overlayPaint.setColor(Color.BLACK);
+        float y = OVERLAY_TEXT_SIZE;
+        for (int from = 0, to; (to = overlayText.indexOf("\n", from)) >= 0; from = to + 1) {
+            int length = to - from;
+            if (length > overlayLine.length) {
+                overlayLine = new char[length];
+            }
+            overlayText.getChars(from, to, overlayLine, 0);
+            canvas.drawText(overlayLine, 0, length, OVERLAY_TEXT_SIZE / 2, y, overlayPaint);
+            y += OVERLAY_TEXT_SIZE * 5 / 4;
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
-        mScaleDetector.onTouchEvent(ev);
+        long start = metrics.begin();
+        // Event times are uptime millis, the same clock as System.nanoTime
+        metrics.onInput(ev.getEventTime() * NANOS_PER_MILLI);
+        boolean handled = handleTouchEvent(ev);
+        metrics.end(FrameMetrics.Phase.INPUT, start);
+        return handled;
+    }
+
+    private boolean handleTouchEvent(MotionEvent ev) {
         final int action = MotionEventCompat.getActionMasked(ev);
+        input.onEvent(ev.getHistorySize() + 1);
+        if (action != MotionEvent.ACTION_MOVE) {
+            // Anything that changes the gesture sees the moves before it applied
+            input.flush();
+        }
 
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
-                final int pointerIndex = MotionEventCompat.getActionIndex(ev);
-                final float x = MotionEventCompat.getX(ev, pointerIndex);
-                final float y = MotionEventCompat.getY(ev, pointerIndex);
-
-                for (Sprite sprite : sprites) {
-                    interactiveSprite = sprite.getSpriteHit(x, y);
-                    if (interactiveSprite != null) {
-                        interactiveSprite.handleMouseDownEvent(x, y);
-                        break;
-                    }
-                }
+                history.beginGesture();
+                press(MotionEventCompat.getPointerId(ev, 0), ev.getX(), ev.getY());
+                break;
+            }
 
-                mActivePointerId = MotionEventCompat.getPointerId(ev, 0);
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                final int pointerIndex = MotionEventCompat.getActionIndex(ev);
+                press(MotionEventCompat.getPointerId(ev, pointerIndex),
+                        MotionEventCompat.getX(ev, pointerIndex), MotionEventCompat.getY(ev, pointerIndex));
                 break;
             }
 
             case MotionEvent.ACTION_MOVE: {
-                // Find the index of the active pointer and fetch its position
-                final int pointerIndex =
-                        MotionEventCompat.findPointerIndex(ev, mActivePointerId);
-
-                final float x = MotionEventCompat.getX(ev, pointerIndex);
-                final float y = MotionEventCompat.getY(ev, pointerIndex);
-
-                if (interactiveSprite != null) {
-                // && interactiveSprite.getSpriteHit(x, y) != null) {
-                    interactiveSprite.handleMouseDragEvent(x, y);
-                    invalidate();
+                // Queued per pointer for the next frame, with the samples
+                // the system batched into this event. Pointers holding
+                // nothing are skipped.
+                for (int p = 0, count = MotionEventCompat.getPointerCount(ev); p < count; p++) {
+                    final int pointerId = MotionEventCompat.getPointerId(ev, p);
+                    for (int h = 0, n = ev.getHistorySize(); h < n; h++) {
+                        input.queueDrag(pointerId, ev.getHistoricalX(p, h), ev.getHistoricalY(p, h));
+                    }
+                    input.queueDrag(pointerId, MotionEventCompat.getX(ev, p), MotionEventCompat.getY(ev, p));
                 }
                 break;
             }
-            case MotionEvent.ACTION_UP: {
-                interactiveSprite = null;
-                mActivePointerId = INVALID_POINTER_ID;
+
+            case MotionEvent.ACTION_POINTER_UP: {
+                final int pointerIndex = MotionEventCompat.getActionIndex(ev);
+                lift(MotionEventCompat.getPointerId(ev, pointerIndex),
+                        MotionEventCompat.getX(ev, pointerIndex), MotionEventCompat.getY(ev, pointerIndex));
                 break;
             }
 
-            case MotionEvent.ACTION_CANCEL: {
-                interactiveSprite = null;
-                mActivePointerId = INVALID_POINTER_ID;
+            case MotionEvent.ACTION_UP: {
+                lift(MotionEventCompat.getPointerId(ev, 0), ev.getX(), ev.getY());
+                releaseAll();
+                history.endGesture();                                   // The last moves were flushed above
                 break;
             }
 
-            case MotionEvent.ACTION_POINTER_UP: {
-                final int pointerIndex = MotionEventCompat.getActionIndex(ev);
-                final int pointerId = MotionEventCompat.getPointerId(ev, pointerIndex);
-
-                if (pointerId == mActivePointerId) {
-                    interactiveSprite = null;
-                    // This was our active pointer going up. Choose a new
-                    // active pointer and adjust accordingly.
-                    final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
-                    mActivePointerId = MotionEventCompat.getPointerId(ev, newPointerIndex);
-                    final float x = MotionEventCompat.getX(ev, newPointerIndex);
-                    final float y = MotionEventCompat.getY(ev, newPointerIndex);
-
-                    for (Sprite sprite : sprites) {
-                        interactiveSprite = sprite.getSpriteHit(x, y);
-                        if (interactiveSprite != null) {
-                            interactiveSprite.handleMouseDownEvent(x, y);
-                            break;
-                        }
-                    }
-                }
+            case MotionEvent.ACTION_CANCEL: {
+                releaseAll();
+                history.endGesture();
                 break;
             }
         }
+        // After the pointers, so a pinch knows which of its fingers hold sprites
+        mScaleDetector.onTouchEvent(ev);
         return true;
     }
 
+    /**
+     * Returns the sprite under (x, y) on the topmost ragdoll there, or null.
+     */
+    private Sprite findSpriteHit(float x, float y) {
+        long start = metrics.begin();
+        Sprite hit = null;
+        for (int i = sprites.size() - 1; i >= 0 && hit == null; i--) {
+            hit = sprites.get(i).getSpriteHit(x, y);
+        }
+        metrics.end(FrameMetrics.Phase.HIT_TEST, start);
+        return hit;
+    }
+
     /**
      * The scale listener, used for handling multi-finger scale gestures.
      */
@@ -327,27 +940,34 @@ public class CanvasView extends View {
             float focusX = scaleGestureDetector.getFocusX();
             float focusY = scaleGestureDetector.getFocusY();
 
-            for (Sprite sprite : sprites) {
-                Sprite temp = sprite.getSpriteHit(focusX, focusY);
+            if (input.getSessions().getCount() > 1) {
+                // Each finger is posing a sprite of its own
+                return true;
+            }
+            long start = metrics.begin();
+            for (int i = sprites.size() - 1; i >= 0; i--) {
+                Sprite temp = sprites.get(i).getSpriteHit(focusX, focusY);
                 if (temp != null
                         && temp.isScalable()) {
-                    interactiveSprite = temp;
+                    scaleSprite = temp;
+                    track(temp);
+                    hold(temp);
                     break;
                 }
             }
+            metrics.end(FrameMetrics.Phase.HIT_TEST, start);
             return true;
         }
 
         @Override
         public boolean onScale(ScaleGestureDetector scaleGestureDetector) {
-            if (interactiveSprite != null) {
+            if (scaleSprite != null) {
                 float spanX = scaleGestureDetector.getCurrentSpanX();
                 float spanY = scaleGestureDetector.getCurrentSpanY();
                 float prevSpanX = scaleGestureDetector.getPreviousSpanX();
                 float prevSpanY = scaleGestureDetector.getPreviousSpanY();
 
-                interactiveSprite.scale(scaleGestureDetector.getScaleFactor());
-                ViewCompat.postInvalidateOnAnimation(CanvasView.this);
+                input.queueScale(scaleSprite, scaleGestureDetector.getScaleFactor());
             }
             return true;
 
@@ -355,76 +975,8 @@ public class CanvasView extends View {
 
         @Override
         public void onScaleEnd(ScaleGestureDetector detector) {
+            input.flush();
+            endPinch();
         }
     };
-
-    private PointF [][] BODY_POINTS = {
-            {
-                    new PointF(-499/6, -574/10), new PointF(-40, 80),
-                    new PointF(-499/6, 574/3), new PointF(499/8, 574/3),
-                    new PointF(40, 80), new PointF(499/8, -574/10)
-            },
-            {
-                    new PointF(-114,-156), new PointF(114,-156),
-                    new PointF(114,156), new PointF(-114,156),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(-100,-100), new PointF(100,-100),
-                    new PointF(100,100), new PointF(-100,100),
-            },
-            {
-                    new PointF(0,75 + -225),
-                    new PointF(30,75 + -175),
-                    new PointF(125,75 + -175),
-                    new PointF(75,75 + -100),
-                    new PointF(100,75 + -50),
-                    new PointF(75,75 + -50),
-                    new PointF(0,75 + 25),
-                    new PointF(-75,75 + -50),
-                    new PointF(-100,75 + -50),
-                    new PointF(-75,75 + -100),
-                    new PointF(-125,75 + -175),
-                    new PointF(-30,75 + -175)
-            },
-    };
 }
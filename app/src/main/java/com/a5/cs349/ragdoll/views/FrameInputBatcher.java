@@ -0,0 +1,149 @@
+package com.a5.cs349.ragdoll.views;
+
+import android.view.Choreographer;
+import com.a5.cs349.ragdoll.metrics.FrameMetrics;
+import com.a5.cs349.ragdoll.metrics.InputMetrics;
+
+/**
+ * Queues drag samples, per pointer, and pinch factors as they arrive and
+ * applies them all to their sprites once per frame, from a Choreographer
+ * callback. Posting from an input callback lands in the same frame, since
+ * animation callbacks run after input ones, so batching adds no latency.
+ * However many pointers are down, a frame is one batch and one
+ * onBatchApplied.
+ *
+ * Starting or ending a pointer's session, changing pinch target, or
+ * calling flush, applies whatever is queued first, so the order of
+ * gestures is kept.
+ */
+final class FrameInputBatcher implements Choreographer.FrameCallback {
+    /**
+     * Told after every applied batch, e.g. to invalidate what changed.
+     */
+    interface Listener {
+        void onBatchApplied();
+    }
+
+    private final Listener listener;
+    private final InputMetrics metrics = new InputMetrics();
+    private final FrameMetrics frameMetrics;                            // Times each batch as UPDATE
+
+    private Choreographer choreographer;                                // Fetched on first post
+    private boolean posted;
+
+    private final PointerSessions sessions = new PointerSessions();
+    private Sprite scaleTarget;
+    private float pendingScale = 1;
+    private int scaleCount;
+
+    FrameInputBatcher(Listener listener, FrameMetrics frameMetrics) {
+        this.listener = listener;
+        this.frameMetrics = frameMetrics;
+    }
+
+    InputMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records a MotionEvent that carried sampleCount samples, whether or
+     * not any of them were queued.
+     */
+    void onEvent(int sampleCount) {
+        metrics.onEvent(sampleCount);
+    }
+
+    /**
+     * The pointers down and the sprites they hold, e.g. to check a sprite
+     * is free before starting a session on it.
+     */
+    PointerSessions getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Starts queueing pointerId's drags for sprite, which has been
+     * pressed. See PointerSessions.begin.
+     */
+    void begin(int pointerId, Sprite sprite) {
+        flush();
+        sessions.begin(pointerId, sprite);
+    }
+
+    /**
+     * Applies what pointerId has queued and ends its session.
+     *
+     * @return the sprite it held, or null
+     */
+    Sprite end(int pointerId) {
+        flush();
+        return sessions.end(pointerId);
+    }
+
+    /**
+     * Queues a drag sample for pointerId, if it holds a sprite.
+     */
+    void queueDrag(int pointerId, float x, float y) {
+        if (sessions.queue(pointerId, x, y)) {
+            post();
+        }
+    }
+
+    void queueScale(Sprite sprite, float factor) {
+        if (sprite != scaleTarget) {
+            flush();
+            scaleTarget = sprite;
+        }
+        pendingScale *= factor;
+        scaleCount++;
+        post();
+    }
+
+    /**
+     * Applies everything queued now rather than on the next frame.
+     */
+    void flush() {
+        if (scaleCount == 0 && !sessions.hasQueued()) {
+            return;
+        }
+        long start = frameMetrics.begin();
+        int updates = sessions.apply();
+        if (scaleTarget != null && scaleCount > 0) {
+            scaleTarget.scale(pendingScale);
+            updates++;
+        }
+        pendingScale = 1;
+        scaleCount = 0;
+        metrics.onBatch(updates);
+        frameMetrics.end(FrameMetrics.Phase.UPDATE, start);
+        listener.onBatchApplied();
+    }
+
+    /**
+     * Drops anything queued and every session, e.g. when the gesture is
+     * cancelled.
+     */
+    void clear() {
+        sessions.clear();
+        pendingScale = 1;
+        scaleCount = 0;
+        scaleTarget = null;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        posted = false;
+        flush();
+    }
+
+    private void post() {
+        if (posted) {
+            return;
+        }
+        if (choreographer == null) {
+            choreographer = Choreographer.getInstance();
+        }
+        choreographer.postFrameCallback(this);
+        posted = true;
+    }
+}
@@ -0,0 +1,87 @@
+package com.a5.cs349.ragdoll.views;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+
+/**
+ * Draws a part's hit shape as a flat placeholder until its image has been
+ * decoded, then the image. Sprites keep the same drawable throughout, so
+ * the image can arrive at any time without touching the scene.
+ *
+ * The image may be set from one thread while another draws.
+ */
+final class PartDrawable extends Drawable {
+    private static final int PLACEHOLDER_COLOR = 0x40808080;
+
+    private final Path placeholder;
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private volatile Drawable image;
+
+    PartDrawable(PolygonShape shape) {
+        placeholder = Sprite.getPath(shape);
+        paint.setColor(PLACEHOLDER_COLOR);
+    }
+
+    /**
+     * Starts drawing image, in this drawable's bounds, instead of the
+     * placeholder.
+     */
+    void setImage(Drawable image) {
+        image.setBounds(getBounds());
+        this.image = image;
+        invalidateSelf();
+    }
+
+    boolean hasImage() {
+        return image != null;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Drawable d = image;
+        if (d != null) {
+            d.draw(canvas);
+        } else {
+            canvas.drawPath(placeholder, paint);
+        }
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        Drawable d = image;
+        if (d != null) {
+            d.setBounds(bounds);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        Drawable d = image;
+        if (d != null) {
+            d.setAlpha(alpha);
+        }
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        Drawable d = image;
+        if (d != null) {
+            d.setColorFilter(colorFilter);
+        }
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
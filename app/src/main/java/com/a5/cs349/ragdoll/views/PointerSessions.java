@@ -0,0 +1,211 @@
+package com.a5.cs349.ragdoll.views;
+
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.util.Arrays;
+
+/**
+ * One interaction session per pointer down: the sprite it pressed and the
+ * drag samples queued for it since the last frame. All of them are
+ * applied together, once per frame.
+ *
+ * Sessions never fight over a joint. A sprite is held by at most one
+ * pointer, and a limb being reached for by IK, which turns every joint
+ * from the hand or foot up to the torso, is held whole. Pointers on the
+ * same chain otherwise each turn their own joint, and are applied
+ * ancestors first, so a finger on a forearm sees the elbow where the
+ * finger on the upper arm has just put it.
+ *
+ * Sessions are kept sorted by joint, so applying them needs no sort, and
+ * are reused, so nothing is allocated once the most pointers seen have
+ * been down together.
+ */
+final class PointerSessions {
+    private static final class Session {
+        int pointerId;
+        Sprite sprite;
+        float[] samples = new float[32];                                // x, y pairs, oldest first
+        int sampleCount;
+    }
+
+    private Session[] sessions = new Session[0];                        // Active ones first, by joint
+    private int count;
+
+    int getCount() {
+        return count;
+    }
+
+    int getPointerId(int i) {
+        return sessions[i].pointerId;
+    }
+
+    Sprite getSprite(int i) {
+        return sessions[i].sprite;
+    }
+
+    /**
+     * Returns whether a new pointer may take sprite: no other holds it and
+     * it is not on a limb being reached for.
+     */
+    boolean isFree(Sprite sprite) {
+        Skeleton skeleton = sprite.getSkeleton();
+        int joint = sprite.getJointIndex();
+        for (int i = 0; i < count; i++) {
+            Sprite held = sessions[i].sprite;
+            if (held == sprite) {
+                return false;
+            }
+            if (held.isReaching() && held.getSkeleton() == skeleton
+                    && onChain(skeleton, joint, held.getJointIndex())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether no pointer holds a joint IK would turn to reach with
+     * effector, so a new pointer may reach with it.
+     */
+    boolean isChainFree(Sprite effector) {
+        Skeleton skeleton = effector.getSkeleton();
+        for (int i = 0; i < count; i++) {
+            Sprite held = sessions[i].sprite;
+            if (held.getSkeleton() == skeleton && onChain(skeleton, held.getJointIndex(), effector.getJointIndex())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether any pointer holds a sprite of skeleton.
+     */
+    boolean holds(Skeleton skeleton) {
+        for (int i = 0; i < count; i++) {
+            if (sessions[i].sprite.getSkeleton() == skeleton) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts a session for pointerId on sprite, which must be free and
+     * already pressed.
+     */
+    void begin(int pointerId, Sprite sprite) {
+        if (count == sessions.length) {
+            sessions = Arrays.copyOf(sessions, Math.max(4, count * 2));
+        }
+        Session s = sessions[count];
+        if (s == null) {
+            s = new Session();
+        }
+        s.pointerId = pointerId;
+        s.sprite = sprite;
+        s.sampleCount = 0;
+        // Insertion keeps ancestors, which have lower joints, first
+        int i = count++;
+        int joint = sprite.getJointIndex();
+        for (; i > 0 && sessions[i - 1].sprite.getJointIndex() > joint; i--) {
+            sessions[i] = sessions[i - 1];
+        }
+        sessions[i] = s;
+    }
+
+    /**
+     * Ends pointerId's session, dropping anything queued for it.
+     *
+     * @return the sprite it held, or null if it had no session
+     */
+    Sprite end(int pointerId) {
+        for (int i = 0; i < count; i++) {
+            Session s = sessions[i];
+            if (s.pointerId != pointerId) {
+                continue;
+            }
+            System.arraycopy(sessions, i + 1, sessions, i, count - i - 1);
+            sessions[--count] = s;                                      // Kept for reuse
+            Sprite sprite = s.sprite;
+            s.sprite = null;
+            return sprite;
+        }
+        return null;
+    }
+
+    /**
+     * Ends every session, dropping anything queued.
+     */
+    void clear() {
+        for (int i = 0; i < count; i++) {
+            sessions[i].sprite = null;
+        }
+        count = 0;
+    }
+
+    /**
+     * Queues a drag sample for pointerId.
+     *
+     * @return false if it has no session
+     */
+    boolean queue(int pointerId, float x, float y) {
+        Session s = session(pointerId);
+        if (s == null) {
+            return false;
+        }
+        if (s.sampleCount * 2 == s.samples.length) {
+            s.samples = Arrays.copyOf(s.samples, s.samples.length * 2);
+        }
+        s.samples[s.sampleCount * 2] = x;
+        s.samples[s.sampleCount * 2 + 1] = y;
+        s.sampleCount++;
+        return true;
+    }
+
+    boolean hasQueued() {
+        for (int i = 0; i < count; i++) {
+            if (sessions[i].sampleCount > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies every session's queued samples, ancestors first.
+     *
+     * @return the number of drag updates applied
+     */
+    int apply() {
+        int updates = 0;
+        for (int i = 0; i < count; i++) {
+            Session s = sessions[i];
+            updates += s.sprite.handleMouseDragEvents(s.samples, s.sampleCount);
+            s.sampleCount = 0;
+        }
+        return updates;
+    }
+
+    private Session session(int pointerId) {
+        for (int i = 0; i < count; i++) {
+            if (sessions[i].pointerId == pointerId) {
+                return sessions[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether joint is one IK turns to reach with effector: the
+     * effector or an ancestor of it below the root.
+     */
+    private static boolean onChain(Skeleton skeleton, int joint, int effector) {
+        for (int j = effector; skeleton.getParent(j) != Skeleton.NO_PARENT; j = skeleton.getParent(j)) {
+            if (j == joint) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
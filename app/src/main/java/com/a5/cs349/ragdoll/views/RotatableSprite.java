@@ -2,38 +2,32 @@ package com.a5.cs349.ragdoll.views;
 
 import android.graphics.*;
 import android.graphics.drawable.Drawable;
-
-import java.util.Vector;
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+import com.a5.cs349.ragdoll.scene.Skeleton;
 
 public class RotatableSprite extends Sprite {
     private static final InteractionMode INTERACTION_MODE = InteractionMode.ROTATING;
     private Drawable drawable;
-    private Vector<PointF> poly;
 
-    public RotatableSprite(Drawable d, Vector<PointF> p) {
-        super(INTERACTION_MODE);
+    public RotatableSprite(Drawable d, PolygonShape p) {
+        super(INTERACTION_MODE, p);
         drawable = d;
-        poly = p;
-    }
-
-    public boolean pointInside(float x, float y) {
-        Matrix fullTransform = this.getFullTransform();
-        Matrix inverseTransform = new Matrix();
 
-        fullTransform.invert(inverseTransform);
+        Rect image = d.getBounds();
+        setLocalDrawBounds(image.left, image.top, image.right, image.bottom);
+    }
 
-        float [] newPoints = {x,y};
-        inverseTransform.mapPoints(newPoints);
-        return getPolygon(poly).contains(new com.snatik.polygon.Point(newPoints[0], newPoints[1]));
+    /**
+     * Views joint of an existing skeleton, e.g. one instantiated from a
+     * RigDefinition, which has already set the joint's bounds. The drawable
+     * and shape may be shared with other instances.
+     */
+    public RotatableSprite(Drawable d, PolygonShape p, Skeleton skeleton, int joint) {
+        super(INTERACTION_MODE, p, skeleton, joint);
+        drawable = d;
     }
 
     protected void drawSprite(Canvas canvas) {
-        Paint paint = new Paint();
-        paint.setStrokeWidth(3);
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.STROKE);
-
         drawable.draw(canvas);
-//        canvas.drawPath(getPath(poly), paint);
     }
 }
@@ -1,9 +1,14 @@
 package com.a5.cs349.ragdoll.views;
 
 import android.graphics.*;
-import com.snatik.polygon.Polygon;
+import com.a5.cs349.ragdoll.geom.Affine;
+import com.a5.cs349.ragdoll.geom.AlphaMask;
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+import com.a5.cs349.ragdoll.ik.IkSolver;
+import com.a5.cs349.ragdoll.scene.Skeleton;
 
-import java.util.Vector;
+import java.util.List;
 
 /**
  * A building block for creating your own shapes that can be
@@ -15,6 +20,10 @@ import java.util.Vector;
  */
 
 // Example extracted from scene_graph
+//
+// A Sprite is a thin view over one joint of a Skeleton, which holds the pose
+// of the whole tree in flat arrays. A new sprite starts out as the root of a
+// one-joint skeleton; addChild moves the child's joints into ours.
 public abstract class Sprite {
     /**
      * Tracks our current interaction mode after a mouse-down
@@ -23,51 +32,172 @@ public abstract class Sprite {
         IDLE,
         DRAGGING,
         SCALING,
-        ROTATING
+        ROTATING,
+        REACHING                                                        // Dragged as the end of its limb
     }
 
-    private Sprite parent = null;                                       // Pointer to our parent
-    private Vector<Sprite> children = new Vector<Sprite>();
+    /**
+     * Delegates the narrow phase of Skeleton.hitTest to each sprite
+     */
+    private static final Skeleton.HitTester SPRITE_HIT_TESTER = new Skeleton.HitTester() {
+        @Override
+        public boolean hit(Skeleton skeleton, int joint, float x, float y) {
+            return ((Sprite) skeleton.getTag(joint)).pointInside(x, y);
+        }
+    };
 
-    private Matrix transform = new Matrix();
-    private PointF translate = new PointF(0,0);
-    private PointF anchor = new PointF(0,0);
+    private Skeleton skeleton;
+    private int index;
 
-    private float MAX_ROTATE = 180;
-    private float rotate = 0;
-    private float anchorRotate = 0;
+    // Scratch objects handed out by the accessors below, so that a drag or
+    // pinch frame does not allocate
+    private Affine transform = new Affine();
+    private Affine worldTransform = new Affine();
+    private Affine inverseWorldTransform = new Affine();
+    private Bounds worldBounds = new Bounds();
+    private Bounds subtreeBounds = new Bounds();
 
-    private float scale = 1.0f;
-    private boolean isScalable = false;
+    private Matrix drawMatrix;                                          // Created on first draw
+    private float[] drawValues;
+    private Rect clip;
+
+    private float MAX_ROTATE = 180;
+    private static final double ROTATE_SAMPLE_STEP = 30;                // degrees
 
     protected float mLastTouchX = 0;
     protected float mLastTouchY = 0;
+    private float lastParentRotation;                                   // World rotation of our parent then
 
     protected InteractionMode interactionMode = InteractionMode.IDLE;   // current state
 
     protected InteractionMode mainInteractionMode;
 
-    public Sprite(InteractionMode m) {
+    private IkSolver solver;                                            // Set while reaching
+
+    private final PolygonShape shape;                                   // Hit tested without a mask
+    private AlphaMask hitMask;                                          // Null to hit test the shape
+    private float maskLeft;                                             // Maps our coordinates into the mask
+    private float maskTop;
+    private float maskScaleX;
+    private float maskScaleY;
+
+    /**
+     * Creates the root of a new one-joint skeleton, hit tested against
+     * shape, which also gives our local bounds.
+     */
+    public Sprite(InteractionMode m, PolygonShape shape) {
+        mainInteractionMode = m;
+        this.shape = shape;
+        skeleton = new Skeleton(1);
+        index = skeleton.addJoint(Skeleton.NO_PARENT);
+        skeleton.setTag(index, this);
+        Bounds bounds = shape.getBounds();
+        setLocalBounds(bounds.left, bounds.top, bounds.right, bounds.bottom);
+    }
+
+    /**
+     * Creates a view over an existing joint, e.g. one of a skeleton
+     * instantiated from a RigDefinition, which has already set the joint's
+     * bounds. The shape may be shared with other instances.
+     */
+    protected Sprite(InteractionMode m, PolygonShape shape, Skeleton skeleton, int joint) {
         mainInteractionMode = m;
+        this.shape = shape;
+        this.skeleton = skeleton;
+        index = joint;
+        skeleton.setTag(index, this);
     }
 
+    /**
+     * Adds s, which must not already have a parent, along with its
+     * subtree. Children must be added depth-first (see Skeleton.addJoint).
+     */
     public void addChild(Sprite s) {
-        children.add(s);
-        s.setParent(this);
-        s.updateAnchors(anchor.x + translate.x, anchor.y + translate.y,
-                anchorRotate + rotate);
+        if (s.index != 0) {
+            throw new IllegalArgumentException("Sprite already has a parent");
+        }
+        Skeleton old = s.skeleton;
+        int base = skeleton.attach(old, index);
+        for (int i = 0, n = old.getCount(); i < n; i++) {
+            Sprite moved = (Sprite) skeleton.getTag(base + i);
+            moved.skeleton = skeleton;
+            moved.index = base + i;
+        }
+    }
+    public int getChildCount() {
+        int n = 0;
+        for (int c = index + 1, end = skeleton.getSubtreeEnd(index); c < end; c = skeleton.getSubtreeEnd(c)) {
+            n++;
+        }
+        return n;
+    }
+    public Sprite getChild(int i) {
+        int c = index + 1;
+        for (int n = 0; n < i; n++) {
+            c = skeleton.getSubtreeEnd(c);
+        }
+        if (c >= skeleton.getSubtreeEnd(index)) {
+            throw new IndexOutOfBoundsException("No child " + i);
+        }
+        return spriteAt(c);
     }
     public Sprite getParent() {
-        return parent;
+        int p = skeleton.getParent(index);
+        return p == Skeleton.NO_PARENT ? null : spriteAt(p);
+    }
+    public Skeleton getSkeleton() {
+        return skeleton;
     }
-    private void setParent(Sprite s) {
-        this.parent = s;
+    public int getJointIndex() {
+        return index;
+    }
+    private Sprite spriteAt(int joint) {
+        return (Sprite) skeleton.getTag(joint);
     }
 
     /**
-     * Test whether a point, in world coordinates, is within our sprite.
+     * Test whether a point, in world coordinates, is within our sprite:
+     * on an opaque pixel of our hit mask if we have one, else within our
+     * shape.
      */
-    public abstract boolean pointInside(float x, float y);
+    public boolean pointInside(float x, float y) {
+        Affine inverseTransform = getInverseFullTransform();
+        float localX = inverseTransform.mapX(x, y);
+        float localY = inverseTransform.mapY(x, y);
+        if (hitMask != null) {
+            return hitMaskContains(localX, localY);
+        }
+        return shape.contains(localX, localY);
+    }
+
+    /**
+     * Hit tests against the opaque pixels of our image from now on, rather
+     * than our shape. The image covers the given rectangle, in our own
+     * coordinates, which becomes our hit bounds; both stretch with the
+     * image when we are scaled.
+     */
+    public void setHitMask(AlphaMask mask, float left, float top, float right, float bottom) {
+        hitMask = mask;
+        maskLeft = left;
+        maskTop = top;
+        maskScaleX = 1 / (right - left);
+        maskScaleY = 1 / (bottom - top);
+        setLocalBounds(left, top, right, bottom);
+        skeleton.setBoundsScaled(index, true);
+    }
+
+    public boolean hasHitMask() {
+        return hitMask != null;
+    }
+
+    /**
+     * Tests a point in our own coordinates, before our image is stretched
+     * by the effective scale, against the hit mask, which must be set.
+     */
+    private boolean hitMaskContains(float localX, float localY) {
+        float imageY = localY / skeleton.getEffectiveScale(index);
+        return hitMask.contains((localX - maskLeft) * maskScaleX, (imageY - maskTop) * maskScaleY);
+    }
 
     /**
      * Handles a mouse down event, assuming that the event has already
@@ -76,8 +206,24 @@ public abstract class Sprite {
     protected void handleMouseDownEvent(float x, float y) {
         mLastTouchX = x;
         mLastTouchY = y;
+        lastParentRotation = getParentRotation();
 
         interactionMode = mainInteractionMode;
+        solver = null;
+    }
+
+    /**
+     * Handles a mouse down event like handleMouseDownEvent, but drags us
+     * as the end effector of our limb: each drag has solver turn the chain
+     * from us back to the root so that the touched point follows. Falls
+     * back to our own interaction mode if we are a root.
+     */
+    protected void handleReachDownEvent(float x, float y, IkSolver solver) {
+        handleMouseDownEvent(x, y);
+        if (solver.grab(skeleton, index, x, y)) {
+            this.solver = solver;
+            interactionMode = InteractionMode.REACHING;
+        }
     }
 
     /**
@@ -97,38 +243,92 @@ public abstract class Sprite {
             case DRAGGING:
                 float x_diff = x - mLastTouchX;
                 float y_diff = y - mLastTouchY;
-                translate.x += x_diff;
-                translate.y += y_diff;
                 if (x_diff != 0 || y_diff != 0) {
-                    for (Sprite child : children) {
-                        child.updateAnchors(x_diff, y_diff, 0);
-                    }
+                    skeleton.translateInWorld(index, x_diff, y_diff);
                 }
                 break;
             case ROTATING:
+                // Rotate about our joint, which is the origin of our world transform
+                float pivotX = skeleton.getWorldX(index);
+                float pivotY = skeleton.getWorldY(index);
                 double angle = Math.toDegrees(Math.atan2(
-                        y - translate.y - anchor.y, x - translate.x - anchor.x))
+                        y - pivotY, x - pivotX))
                         - Math.toDegrees(Math.atan2(
-                                mLastTouchY - translate.y - anchor.y, mLastTouchX - translate.x - anchor.x));
+                                mLastTouchY - pivotY, mLastTouchX - pivotX));
+                // Less however far our parent has turned us since, e.g.
+                // under another finger, so we keep following this one
+                angle = (angle - (getParentRotation() - lastParentRotation)) % 360;
 
                 if (angle < 0) angle += 360;
-                double test = (rotate + angle) % 360;
+                double test = (skeleton.getRotation(index) + angle) % 360;
                 if ((test) <= MAX_ROTATE
                         || (test) >= (360 - MAX_ROTATE)) {
-                    rotate = (float) test;
-                    for (Sprite child : children) {
-                        child.updateAnchors(0, 0, (float) angle);
-                        child.rotate(angle);
-                    }
+                    skeleton.rotate(index, (float) angle);
                 }
                 break;
+            case REACHING:
+                solver.solve(x, y);
+                break;
         }
 
         mLastTouchX = x;
         mLastTouchY = y;
+        lastParentRotation = getParentRotation();
+    }
+
+    private float getParentRotation() {
+        int p = skeleton.getParent(index);
+        return p == Skeleton.NO_PARENT ? 0 : skeleton.getWorldRotation(p);
+    }
+
+    /**
+     * Handles the drag samples queued since the last frame, packed as x, y
+     * pairs, oldest first. A drag only needs the latest sample, since the
+     * offsets add up the same either way. A rotation also steps through
+     * any sample that sweeps ROTATE_SAMPLE_STEP or more, so a fast swing
+     * neither takes the short way round nor jumps past its limit.
+     *
+     * @return the number of drag updates applied
+     */
+    protected int handleMouseDragEvents(float[] samples, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        if (interactionMode != InteractionMode.ROTATING) {
+            handleMouseDragEvent(samples[count * 2 - 2], samples[count * 2 - 1]);
+            return 1;
+        }
+        float pivotX = skeleton.getWorldX(index);
+        float pivotY = skeleton.getWorldY(index);
+        int applied = 0;
+        for (int i = 0; i < count - 1; i++) {
+            float x = samples[i * 2];
+            float y = samples[i * 2 + 1];
+            double sweep = Math.toDegrees(Math.atan2(y - pivotY, x - pivotX)
+                    - Math.atan2(mLastTouchY - pivotY, mLastTouchX - pivotX));
+            sweep = Math.abs(sweep % 360);
+            if (Math.min(sweep, 360 - sweep) >= ROTATE_SAMPLE_STEP) {
+                handleMouseDragEvent(x, y);
+                applied++;
+            }
+        }
+        handleMouseDragEvent(samples[count * 2 - 2], samples[count * 2 - 1]);
+        return applied + 1;
+    }
+
+    /**
+     * Returns whether we are being dragged as the end of a limb posed by
+     * IK, which turns every joint up to the root.
+     */
+    protected boolean isReaching() {
+        return interactionMode == InteractionMode.REACHING;
     }
 
     protected void handleMouseUp(float x, float y) {
+        if (solver != null) {
+            solver.release();
+            solver = null;
+        }
         interactionMode = InteractionMode.IDLE;
         // Do any other interaction handling necessary here
     }
@@ -141,156 +341,198 @@ public abstract class Sprite {
      * @return The sprite that was hit, or null if no sprite was hit
      */
     public Sprite getSpriteHit(float x, float y) {
-        for (Sprite sprite : children) {
-            Sprite s = sprite.getSpriteHit(x, y);
-            if (s != null) {
-                return s;
+        int hit = skeleton.hitTest(index, x, y, SPRITE_HIT_TESTER);
+        return hit == Skeleton.NO_PARENT ? null : spriteAt(hit);
+    }
+
+    /**
+     * Adds every sprite in this subtree whose shape contains the given world
+     * point to out, parents before children.
+     */
+    public void getSpritesAt(float x, float y, List<Sprite> out) {
+        int i = index;
+        int end = skeleton.getSubtreeEnd(index);
+        while (i < end) {
+            if (!skeleton.subtreeBoundsContain(i, x, y)) {
+                i = skeleton.getSubtreeEnd(i);
+                continue;
             }
+            if (skeleton.worldBoundsContain(i, x, y) && spriteAt(i).pointInside(x, y)) {
+                out.add(spriteAt(i));
+            }
+            i++;
         }
-        if (this.pointInside(x, y)) {
-            return this;
-        }
-        return null;
     }
 
     /**
-     * Returns the full transform to this object from the root
+     * Adds every sprite in this subtree whose world bounds intersect the
+     * given world rectangle to out, parents before children.
      */
-    public Matrix getFullTransform() {
-        Matrix returnTransform = new Matrix();
-        Sprite curSprite = this;
-        while (curSprite != null) {
-            returnTransform.preConcat(curSprite.getLocalTransform());
-            curSprite = curSprite.getParent();
+    public void getSpritesIn(float left, float top, float right, float bottom, List<Sprite> out) {
+        int i = index;
+        int end = skeleton.getSubtreeEnd(index);
+        while (i < end) {
+            if (!skeleton.subtreeBoundsIntersect(i, left, top, right, bottom)) {
+                i = skeleton.getSubtreeEnd(i);
+                continue;
+            }
+            if (skeleton.worldBoundsIntersect(i, left, top, right, bottom)) {
+                out.add(spriteAt(i));
+            }
+            i++;
         }
-        return returnTransform;
     }
 
     /**
-     * Returns our local transform, without scaling, because scaling should not
-     * carry over
+     * Sets the box, in our own coordinates, that encloses everything
+     * pointInside can accept. Sprites without local bounds are never hit.
      */
-    public Matrix getLocalTransform() {
-        transform.reset();
+    protected void setLocalBounds(float left, float top, float right, float bottom) {
+        skeleton.setLocalBounds(index, left, top, right, bottom);
+    }
 
-        Matrix parentTransform = new Matrix();
-        if (parent != null) {
-            parentTransform = parent.getFullTransform();
-            parentTransform.invert(transform);
-        }
+    /**
+     * Sets the box, in our own coordinates, that drawSprite draws into.
+     * Sprites without draw bounds are never drawn.
+     */
+    protected void setLocalDrawBounds(float left, float top, float right, float bottom) {
+        skeleton.setLocalDrawBounds(index, left, top, right, bottom);
+    }
 
-        transform.postRotate(rotate);
-        transform.postConcat(parentTransform);
+    /**
+     * Returns the world-space bounds of this sprite's hit area. Callers
+     * must not modify it.
+     */
+    public Bounds getWorldBounds() {
+        skeleton.getWorldBounds(index, worldBounds);
+        return worldBounds;
+    }
 
-        transform.postTranslate(translate.x, translate.y);
+    /**
+     * Returns the world-space bounds of this sprite and all of its
+     * descendants. Callers must not modify it.
+     */
+    public Bounds getSubtreeBounds() {
+        skeleton.getSubtreeBounds(index, subtreeBounds);
+        return subtreeBounds;
+    }
 
-        return transform;
+    /**
+     * Returns the full transform to this object from the root.
+     * Callers must not modify it.
+     */
+    public Affine getFullTransform() {
+        skeleton.getWorldTransform(index, worldTransform);
+        return worldTransform;
     }
 
-    public Matrix getLocalWithScaleTransform() {
-        transform.reset();
+    /**
+     * Returns the inverse of the full transform, mapping world coordinates
+     * into this sprite's coordinates. Callers must not modify it.
+     */
+    public Affine getInverseFullTransform() {
+        skeleton.getInverseWorldTransform(index, inverseWorldTransform);
+        return inverseWorldTransform;
+    }
 
-        Matrix parentTransform = new Matrix();
-        if (parent != null) {
-            parentTransform = parent.getFullTransform();
-            parentTransform.invert(transform);
+    /**
+     * Returns our local transform, without scaling, because scaling should not
+     * carry over
+     */
+    public Affine getLocalTransform() {
+        int p = skeleton.getParent(index);
+        if (p != Skeleton.NO_PARENT) {
+            skeleton.getInverseWorldTransform(p, transform);
+        } else {
+            transform.reset();
         }
-
-        transform.postScale(1,scale);
-        transform.postRotate(rotate);
-        transform.postConcat(parentTransform);
-        transform.postTranslate(translate.x, translate.y);
+        transform.postConcat(getFullTransform());
         return transform;
     }
 
-    /**
-     * Performs an arbitrary transform on this sprite
-     */
-    public void transform(Matrix t) {
-        transform.postConcat(t);
+    public Affine getLocalWithScaleTransform() {
+        transform.set(getFullTransform());
+        transform.preScale(1, skeleton.getEffectiveScale(index));
+        int p = skeleton.getParent(index);
+        if (p != Skeleton.NO_PARENT) {
+            skeleton.getInverseWorldTransform(p, inverseWorldTransform);
+            transform.preConcat(inverseWorldTransform);
+        }
+        return transform;
     }
 
     /**
      * Translate relative to parent
      */
     public void translate(float x, float y) {
-        translate.x += x;
-        translate.y += y;
-        for (Sprite child : children) {
-            child.updateAnchors(x, y, 0);
-        }
+        skeleton.translate(index, x, y);
     }
 
     /**
-     * Rotate relative to parent
+     * Rotate relative to parent, about our own joint
      */
     public void rotate(double angle) {
-        Matrix rotateTransform = new Matrix();
-        rotateTransform.postRotate((float)angle);
-        rotate(rotateTransform);
-    }
-
-    private void rotate(Matrix rotateTransform) {
-        float [] point = { translate.x, translate.y };
-        rotateTransform.mapPoints(point);
-        translate = new PointF(point[0], point[1]);
-        for (Sprite child : children) {
-            child.rotate(rotateTransform);
-        }
+        skeleton.rotate(index, (float) angle);
     }
 
     /**
      * Scale relative to parent
      */
     public void scale(float scaleFactor) {
-        if (isScalable && scale * scaleFactor <= 5
-                && scale * scaleFactor >= 0.2) {
-            scale *= scaleFactor;
-
-            for (Sprite child : children) {
-                child.realScale(scaleFactor, anchorRotate + rotate);
-            }
-        }
-    }
-
-    private void realScale(float scaleFactor, float angle) {
-        Matrix scaleTransform = new Matrix();
-        scaleTransform.postRotate(-angle);
-        scaleTransform.postScale(1, scaleFactor);
-        scaleTransform.postRotate(angle);
-
-        float [] point = { translate.x, translate.y };
-        scaleTransform.mapPoints(point);
-        translate = new PointF(point[0], point[1]);
-        if (isScalable) {
-            scale(scaleFactor);
-        }
+        skeleton.scale(index, scaleFactor);
     }
 
     /**
-     * Draws the sprite. This method will call drawSprite after
-     * the transform has been set up for this sprite.
+     * Draws the sprite and its subtree. Joints are stored depth-first, so
+     * this is one pass over the skeleton's packed world transforms, calling
+     * drawSprite after the transform has been set up for each sprite.
+     * Subtrees and sprites whose draw bounds miss the canvas clip are
+     * skipped.
      */
     public void draw(Canvas canvas) {
-        Matrix oldTransform = canvas.getMatrix();
-
-        // Set to our transform
-        Matrix currentAT = canvas.getMatrix();
-        if (parent != null) {
-            currentAT.postConcat(parent.getFullTransform());
+        if (drawMatrix == null) {
+            drawMatrix = new Matrix();
+            drawValues = new float[9];
+            drawValues[8] = 1;
+            clip = new Rect();
+        }
+        if (!canvas.getClipBounds(clip)) {
+            return;
         }
-        currentAT.postConcat(getLocalWithScaleTransform());
-        canvas.setMatrix(currentAT);
-
-        // Draw the sprite (delegated to sub-classes)
-        this.drawSprite(canvas);
 
-        // Restore original transform
-        canvas.setMatrix(oldTransform);
+        float[] world = skeleton.getWorldTransforms();
+        int i = index;
+        int end = skeleton.getSubtreeEnd(index);
+        while (i < end) {
+            if (!skeleton.subtreeDrawBoundsIntersect(i, clip.left, clip.top, clip.right, clip.bottom)) {
+                i = skeleton.getSubtreeEnd(i);
+                continue;
+            }
+            if (!skeleton.drawBoundsIntersect(i, clip.left, clip.top, clip.right, clip.bottom)) {
+                i++;
+                continue;
+            }
 
-        // Draw children
-        for (Sprite sprite : children) {
-            sprite.draw(canvas);
+            // Set to our transform; only the sprite's own image is scaled
+            int o = i * 6;
+            float scale = skeleton.getEffectiveScale(i);
+            drawValues[0] = world[o];
+            drawValues[1] = world[o + 2] * scale;
+            drawValues[2] = world[o + 4];
+            drawValues[3] = world[o + 1];
+            drawValues[4] = world[o + 3] * scale;
+            drawValues[5] = world[o + 5];
+            drawMatrix.setValues(drawValues);
+
+            int saveCount = canvas.save();
+            canvas.concat(drawMatrix);
+
+            // Draw the sprite (delegated to sub-classes)
+            spriteAt(i).drawSprite(canvas);
+
+            // Restore original transform
+            canvas.restoreToCount(saveCount);
+            i++;
         }
     }
 
@@ -299,38 +541,21 @@ public abstract class Sprite {
     }
 
     public void setScalable(boolean isScalable) {
-        this.isScalable = isScalable;
+        skeleton.setScalable(index, isScalable);
     }
     public boolean isScalable() {
-        return isScalable;
+        return skeleton.isScalable(index);
     }
 
     protected abstract void drawSprite(Canvas canvas);
 
-    protected void updateAnchors(float x_diff, float y_diff, float ang_diff) {
-        anchor.x += x_diff;
-        anchor.y += y_diff;
-        anchorRotate = (anchorRotate + ang_diff) % 360;
-        for (Sprite child : children) {
-            child.updateAnchors(x_diff, y_diff, ang_diff);
-        }
-    }
-
-    protected static Path getPath(Vector<PointF> shapePoints) {
+    protected static Path getPath(PolygonShape shape) {
         Path path = new Path();
-        path.moveTo(shapePoints.get(0).x, shapePoints.get(0).y);
-        for (PointF p : shapePoints) {
-            path.lineTo(p.x, p.y);
+        path.moveTo(shape.getX(0), shape.getY(0));
+        for (int i = 1, n = shape.getVertexCount(); i < n; i++) {
+            path.lineTo(shape.getX(i), shape.getY(i));
         }
         path.close();
         return path;
     }
-
-    protected static Polygon getPolygon(Vector<PointF> polyPath) {
-        Polygon.Builder polyBuilder = Polygon.Builder();
-        for (PointF p : polyPath) {
-            polyBuilder.addVertex(new com.snatik.polygon.Point(p.x, p.y));
-        }
-        return polyBuilder.build();
-    }
 }
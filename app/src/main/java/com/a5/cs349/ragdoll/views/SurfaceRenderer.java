@@ -0,0 +1,157 @@
+package com.a5.cs349.ragdoll.views;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.drawable.Drawable;
+import android.view.SurfaceHolder;
+import com.a5.cs349.ragdoll.metrics.FrameMetrics;
+import com.a5.cs349.ragdoll.scene.PoseBuffer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws the poses published to a PoseBuffer onto a SurfaceView from its
+ * own thread. The thread sleeps until requestRender is called, takes the
+ * latest frame and draws every joint's part image with the frame's
+ * transform; posting the canvas paces it to the display. Drawing is timed
+ * into the given FrameMetrics, and each posted canvas counts as presented.
+ *
+ * The drawables must not be drawn from any other thread meanwhile.
+ */
+final class SurfaceRenderer implements SurfaceHolder.Callback {
+    private final SurfaceHolder holder;
+    private final Drawable[] partDrawables;
+    private final PoseBuffer.Reader reader;
+    private final FrameMetrics metrics;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile boolean redraw;                                    // Draw even if the pose is unchanged
+    private long drawnSequence = -1;                                    // Render thread only
+
+    SurfaceRenderer(SurfaceHolder holder, Drawable[] partDrawables, PoseBuffer.Reader reader,
+                    FrameMetrics metrics) {
+        this.holder = holder;
+        this.partDrawables = partDrawables;
+        this.reader = reader;
+        this.metrics = metrics;
+        holder.addCallback(this);
+        if (holder.getSurface() != null && holder.getSurface().isValid()) {
+            surfaceCreated(holder);
+        }
+    }
+
+    /**
+     * Wakes the render thread to draw the latest frame. Never blocks.
+     */
+    void requestRender() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Stops drawing and lets go of the surface.
+     */
+    void release() {
+        holder.removeCallback(this);
+        stop();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        redraw = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                renderLoop();
+            }
+        }, "ragdoll-render");
+        thread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        // The new surface is blank until drawn, even if the pose is unchanged
+        redraw = true;
+        requestRender();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        stop();
+    }
+
+    private void stop() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(t);
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void renderLoop() {
+        Matrix matrix = new Matrix();
+        float[] values = new float[9];
+        values[8] = 1;
+        while (running) {
+            PoseBuffer.Frame frame = reader.acquire();
+            if (frame.getSequence() == drawnSequence && !redraw) {
+                LockSupport.park(this);
+                continue;
+            }
+            redraw = false;
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null) {
+                // Surface not ready; surfaceChanged will ask again
+                redraw = true;
+                LockSupport.park(this);
+                continue;
+            }
+            long start = metrics.begin();
+            try {
+                canvas.drawColor(Color.WHITE);
+                float[] t = frame.getTransforms();
+                for (int j = 0, n = frame.getJointCount(); j < n; j++) {
+                    int o = j * 6;
+                    values[0] = t[o];
+                    values[1] = t[o + 2];
+                    values[2] = t[o + 4];
+                    values[3] = t[o + 1];
+                    values[4] = t[o + 3];
+                    values[5] = t[o + 5];
+                    matrix.setValues(values);
+
+                    int saveCount = canvas.save();
+                    canvas.concat(matrix);
+                    partDrawables[frame.getPart(j)].draw(canvas);
+                    canvas.restoreToCount(saveCount);
+                }
+            } finally {
+                metrics.end(FrameMetrics.Phase.DRAW, start);
+                holder.unlockCanvasAndPost(canvas);
+            }
+            metrics.onPresented();
+            drawnSequence = frame.getSequence();
+        }
+    }
+}
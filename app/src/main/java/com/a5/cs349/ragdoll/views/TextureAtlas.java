@@ -0,0 +1,262 @@
+package com.a5.cs349.ragdoll.views;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.*;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import com.a5.cs349.ragdoll.geom.AlphaMask;
+import com.a5.cs349.ragdoll.geom.AtlasLayout;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A set of drawable resources packed into one bitmap, so a rig's parts are
+ * decoded into a single allocation and every part draws from the same
+ * texture.
+ *
+ * Each image is packed at the size it is drawn at, so a large source image
+ * costs no more memory than it shows. The atlas is packed on first run and
+ * written to the cache directory as a PNG; later runs decode that one
+ * file. The cache key covers the resources, their sizes, the screen
+ * density and the APK, so an update or a density change packs a fresh
+ * atlas.
+ *
+ * Loading also builds an AlphaMask of each image, for hit testing against
+ * its opaque pixels without reading the bitmap on every touch.
+ */
+public final class TextureAtlas {
+    private static final String TAG = "TextureAtlas";
+    private static final String CACHE_PREFIX = "atlas-";
+    private static final int MAX_WIDTH = 2048;
+    private static final int PADDING = 2;
+    private static final int MASK_CELL = 2;                             // Pixels per mask cell side
+    private static final int MASK_ALPHA = 0x80;                         // Opaque from half alpha up
+
+    private final Bitmap bitmap;
+    private final AtlasLayout layout;
+    private final AlphaMask[] masks;
+
+    private TextureAtlas(Bitmap bitmap, AtlasLayout layout) {
+        this.bitmap = bitmap;
+        this.layout = layout;
+        masks = buildMasks(bitmap, layout);
+    }
+
+    /**
+     * Loads the atlas holding the given drawable resources, in that order,
+     * each scaled to the given width and height. Blocks while decoding, so
+     * call it off the UI thread.
+     */
+    public static TextureAtlas load(Context context, int[] resourceIds, int[] widths, int[] heights) {
+        Resources res = context.getResources();
+        AtlasLayout layout = AtlasLayout.pack(widths, heights, MAX_WIDTH, PADDING);
+
+        File cacheDir = context.getCacheDir();
+        String apk = context.getApplicationInfo().sourceDir;
+        int key = Arrays.hashCode(resourceIds);
+        key = key * 31 + Arrays.hashCode(widths);
+        key = key * 31 + Arrays.hashCode(heights);
+        key = key * 31 + res.getDisplayMetrics().densityDpi;
+        key = key * 31 + (apk != null ? (int) new File(apk).lastModified() : 0);
+        File cached = new File(cacheDir, CACHE_PREFIX + Integer.toHexString(key) + ".png");
+
+        Bitmap bitmap = null;
+        if (cached.exists()) {
+            BitmapFactory.Options decode = new BitmapFactory.Options();
+            decode.inScaled = false;
+            decode.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            bitmap = BitmapFactory.decodeFile(cached.getPath(), decode);
+            if (bitmap != null
+                    && (bitmap.getWidth() != layout.getWidth() || bitmap.getHeight() != layout.getHeight())) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+        if (bitmap == null) {
+            bitmap = pack(res, resourceIds, layout);
+            writeCache(bitmap, cacheDir, cached);
+        }
+        return new TextureAtlas(bitmap, layout);
+    }
+
+    private static Bitmap pack(Resources res, int[] resourceIds, AtlasLayout layout) {
+        Bitmap atlas = Bitmap.createBitmap(layout.getWidth(), layout.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(atlas);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Rect dst = new Rect();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        for (int i = 0; i < resourceIds.length; i++) {
+            dst.set(layout.getLeft(i), layout.getTop(i), layout.getRight(i), layout.getBottom(i));
+            Bitmap image = decodeAtLeast(res, resourceIds[i], dst.width(), dst.height(), options);
+            // Scaled the rest of the way into place
+            canvas.drawBitmap(image, null, dst, paint);
+            image.recycle();
+        }
+        return atlas;
+    }
+
+    /**
+     * Decodes a resource subsampled by the largest power of two that keeps
+     * it at least width by height, so big images are never decoded whole.
+     */
+    private static Bitmap decodeAtLeast(Resources res, int resourceId, int width, int height,
+                                        BitmapFactory.Options options) {
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        options.inSampleSize = 1;
+        BitmapFactory.decodeResource(res, resourceId, options);
+        int sample = 1;
+        while (options.outWidth / (sample * 2) >= width && options.outHeight / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        return BitmapFactory.decodeResource(res, resourceId, options);
+    }
+
+    private static AlphaMask[] buildMasks(Bitmap bitmap, AtlasLayout layout) {
+        AlphaMask[] masks = new AlphaMask[layout.getCount()];
+        int[] pixels = new int[0];
+        for (int i = 0; i < masks.length; i++) {
+            int width = layout.getRight(i) - layout.getLeft(i);
+            int height = layout.getBottom(i) - layout.getTop(i);
+            if (pixels.length < width * height) {
+                pixels = new int[width * height];
+            }
+            bitmap.getPixels(pixels, 0, width, layout.getLeft(i), layout.getTop(i), width, height);
+            masks[i] = AlphaMask.fromArgb(pixels, 0, width, width, height, MASK_CELL, MASK_ALPHA);
+        }
+        return masks;
+    }
+
+    /**
+     * Writes the packed atlas off the UI thread, replacing any atlas cached
+     * by an earlier version. The bitmap is never modified after packing, so
+     * it is safe to compress while it is being drawn.
+     */
+    private static void writeCache(final Bitmap atlas, final File cacheDir, final File cached) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File[] old = cacheDir.listFiles();
+                if (old != null) {
+                    for (File f : old) {
+                        if (f.getName().startsWith(CACHE_PREFIX)) {
+                            f.delete();
+                        }
+                    }
+                }
+                File tmp = new File(cacheDir, cached.getName() + ".tmp");
+                OutputStream out = null;
+                try {
+                    out = new FileOutputStream(tmp);
+                    if (atlas.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                        out.close();
+                        out = null;
+                        if (!tmp.renameTo(cached)) {
+                            Log.w(TAG, "Could not move atlas into " + cached);
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not cache atlas", e);
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                    tmp.delete();
+                }
+            }
+        }, "atlas-cache").start();
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Returns the memory the atlas holds on to, masks included.
+     */
+    public int getByteCount() {
+        int bytes = bitmap.getByteCount();
+        for (AlphaMask mask : masks) {
+            bytes += mask.getByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns where an image is opaque.
+     */
+    public AlphaMask getMask(int image) {
+        return masks[image];
+    }
+
+    public int getImageWidth(int image) {
+        return layout.getRight(image) - layout.getLeft(image);
+    }
+
+    public int getImageHeight(int image) {
+        return layout.getBottom(image) - layout.getTop(image);
+    }
+
+    /**
+     * Returns a new drawable showing one image of the atlas. Drawables from
+     * the same atlas share its bitmap.
+     */
+    public Drawable getDrawable(int image) {
+        return new Region(bitmap, new Rect(
+                layout.getLeft(image), layout.getTop(image),
+                layout.getRight(image), layout.getBottom(image)));
+    }
+
+    private static final class Region extends Drawable {
+        private final Bitmap bitmap;
+        private final Rect src;
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        Region(Bitmap bitmap, Rect src) {
+            this.bitmap = bitmap;
+            this.src = src;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(bitmap, src, getBounds(), paint);
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            paint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            paint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return src.width();
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return src.height();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.a5.cs349.ragdoll.views;
+
+import com.a5.cs349.ragdoll.ik.IkSolver;
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Several pointers posing one ragdoll at once, each through its own
+ * session, applied together once per frame.
+ */
+public class PointerSessionsTest {
+    private PointerSessions sessions;
+    private Sprite torso;
+    private Sprite leftUpperArm;
+    private Sprite leftForearm;
+    private Sprite rightUpperArm;
+    private Sprite rightForearm;
+
+    @Before
+    public void setUp() {
+        sessions = new PointerSessions();
+        torso = new TestSprite(Sprite.InteractionMode.DRAGGING, 50);
+        leftUpperArm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        leftUpperArm.translate(-100, 0);
+        torso.addChild(leftUpperArm);
+        leftForearm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        leftForearm.translate(0, 100);
+        leftUpperArm.addChild(leftForearm);
+        rightUpperArm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        rightUpperArm.translate(100, 0);
+        torso.addChild(rightUpperArm);
+        rightForearm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        rightForearm.translate(0, 100);
+        rightUpperArm.addChild(rightForearm);
+        torso.translate(200, 200);
+    }
+
+    private static float worldRotation(Sprite sprite) {
+        float degrees = sprite.getSkeleton().getWorldRotation(sprite.getJointIndex()) % 360;
+        return degrees > 180 ? degrees - 360 : degrees;
+    }
+
+    @Test
+    public void twoArmsTurnInTheSameFrame() {
+        // Shoulders at (100, 200) and (300, 200); both fingers start below
+        leftUpperArm.handleMouseDownEvent(100, 300);
+        sessions.begin(0, leftUpperArm);
+        rightUpperArm.handleMouseDownEvent(300, 300);
+        sessions.begin(1, rightUpperArm);
+
+        assertTrue(sessions.queue(0, 0, 200));                         // A quarter turn clockwise
+        assertTrue(sessions.queue(1, 400, 200));                       // and one anticlockwise
+        assertFalse("no session", sessions.queue(2, 0, 0));
+        assertEquals(2, sessions.apply());
+        assertEquals(90, worldRotation(leftUpperArm), 1e-3);
+        assertEquals(-90, worldRotation(rightUpperArm), 1e-3);
+        assertFalse(sessions.hasQueued());
+    }
+
+    @Test
+    public void aSpriteHasOnePointer() {
+        leftUpperArm.handleMouseDownEvent(100, 300);
+        sessions.begin(0, leftUpperArm);
+        assertFalse(sessions.isFree(leftUpperArm));
+        assertTrue(sessions.isFree(leftForearm));
+        assertTrue(sessions.holds(torso.getSkeleton()));
+
+        assertSame(leftUpperArm, sessions.end(0));
+        assertNull(sessions.end(0));
+        assertTrue(sessions.isFree(leftUpperArm));
+        assertFalse(sessions.holds(torso.getSkeleton()));
+    }
+
+    @Test
+    public void aForearmKeepsToItsFingerWhileTheUpperArmTurns() {
+        // The forearm is pressed first but is applied after its parent
+        leftForearm.handleMouseDownEvent(100, 400);
+        sessions.begin(0, leftForearm);
+        leftUpperArm.handleMouseDownEvent(200, 200);
+        sessions.begin(1, leftUpperArm);
+        assertSame(leftUpperArm, sessions.getSprite(0));
+
+        double rad = Math.toRadians(30);
+        sessions.queue(1, 100 + (float) (100 * Math.cos(rad)), 200 + (float) (100 * Math.sin(rad)));
+        sessions.queue(0, 100, 400);                                    // Held still
+        sessions.apply();
+        assertEquals(30, worldRotation(leftUpperArm), 1e-3);
+        assertEquals("forearm still points the way its finger holds it", 0, worldRotation(leftForearm), 1e-3);
+    }
+
+    @Test
+    public void aReachHoldsItsWholeLimb() {
+        int joints = torso.getSkeleton().getCount();
+        float[] limits = new float[joints];
+        Arrays.fill(limits, 180);
+        leftForearm.handleReachDownEvent(100, 400, new IkSolver(limits));
+        sessions.begin(0, leftForearm);
+
+        assertFalse("on the reaching limb", sessions.isFree(leftUpperArm));
+        assertTrue("dragged, not turned, by the reach", sessions.isFree(torso));
+        assertTrue(sessions.isFree(rightUpperArm));
+
+        // A reach needs its limb to itself
+        rightUpperArm.handleMouseDownEvent(300, 300);
+        sessions.begin(1, rightUpperArm);
+        assertFalse(sessions.isChainFree(rightForearm));
+        sessions.end(1);
+        assertTrue(sessions.isChainFree(rightForearm));
+    }
+
+    @Test
+    public void tenPointersAreOneUpdateEachAndDoNotAllocate() {
+        // A torso with ten single bone limbs around it, one finger on each
+        final Sprite body = new TestSprite(Sprite.InteractionMode.DRAGGING, 50);
+        final Sprite[] limbs = new Sprite[10];
+        for (int i = 0; i < limbs.length; i++) {
+            limbs[i] = new TestSprite(Sprite.InteractionMode.ROTATING, 10);
+            double rad = Math.toRadians(36 * i);
+            limbs[i].translate((float) (100 * Math.cos(rad)), (float) (100 * Math.sin(rad)));
+            body.addChild(limbs[i]);
+        }
+        for (int i = 0; i < limbs.length; i++) {
+            Sprite limb = limbs[i];
+            float x = body.getSkeleton().getWorldX(limb.getJointIndex());
+            float y = body.getSkeleton().getWorldY(limb.getJointIndex());
+            limb.handleMouseDownEvent(x + 50, y);
+            sessions.begin(i, limb);
+        }
+
+        for (int frame = 0; frame < 20000; frame++) {
+            assertEquals(limbs.length, frame(body, limbs, frame));
+        }
+        long allocated = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int frame = 0; frame < 2000; frame++) {
+                    frame(body, limbs, frame);
+                }
+            }
+        });
+        assertEquals("bytes allocated over 2000 ten pointer frames", 0, allocated);
+    }
+
+    /**
+     * Moves every finger a little further round its limb's joint, then
+     * applies the frame.
+     */
+    private int frame(Sprite body, Sprite[] limbs, int frame) {
+        double rad = Math.toRadians(frame % 60 - 30);
+        for (int i = 0; i < limbs.length; i++) {
+            int joint = limbs[i].getJointIndex();
+            float x = body.getSkeleton().getWorldX(joint);
+            float y = body.getSkeleton().getWorldY(joint);
+            sessions.queue(i, x + (float) (50 * Math.cos(rad)), y + (float) (50 * Math.sin(rad)));
+        }
+        int updates = sessions.apply();
+        body.getSkeleton().updateWorldTransforms();
+        return updates;
+    }
+}
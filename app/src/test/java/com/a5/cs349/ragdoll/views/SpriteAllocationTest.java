@@ -0,0 +1,108 @@
+package com.a5.cs349.ragdoll.views;
+
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives scripted drag and pinch gestures through a small scene graph and
+ * checks that, once warmed up, a frame does not allocate anything.
+ */
+public class SpriteAllocationTest {
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 2000;
+
+    private Sprite torso;
+    private Sprite upperArm;
+    private Sprite lowerArm;
+    private Sprite upperLeg;
+
+    @Before
+    public void setUp() {
+        torso = new TestSprite(Sprite.InteractionMode.DRAGGING, 50);
+        upperArm = new TestSprite(Sprite.InteractionMode.ROTATING, 50);
+        upperArm.translate(-120, -40);
+        torso.addChild(upperArm);
+        lowerArm = new TestSprite(Sprite.InteractionMode.ROTATING, 50);
+        lowerArm.translate(-80, 80);
+        upperArm.addChild(lowerArm);
+        Sprite hand = new TestSprite(Sprite.InteractionMode.ROTATING, 50);
+        hand.translate(-60, 100);
+        lowerArm.addChild(hand);
+        upperLeg = new TestSprite(Sprite.InteractionMode.ROTATING, 50);
+        upperLeg.setScalable(true);
+        upperLeg.translate(100, 150);
+        torso.addChild(upperLeg);
+        Sprite lowerLeg = new TestSprite(Sprite.InteractionMode.ROTATING, 50);
+        lowerLeg.setScalable(true);
+        lowerLeg.translate(30, 70);
+        upperLeg.addChild(lowerLeg);
+        torso.translate(500, 500);
+    }
+
+    @Test
+    public void dragFramesDoNotAllocate() {
+        runFrames(WARMUP_FRAMES);
+
+        long allocated = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                runFrames(MEASURED_FRAMES);
+            }
+        });
+        assertEquals("bytes allocated over " + MEASURED_FRAMES + " frames", 0, allocated);
+    }
+
+    @Test
+    public void cachedTransformsMatchAfterDrag() {
+        runFrames(100);
+        // After the frames the cached inverse must still undo the world transform
+        float x = lowerArm.getFullTransform().mapX(10, 20);
+        float y = lowerArm.getFullTransform().mapY(10, 20);
+        assertEquals(10, lowerArm.getInverseFullTransform().mapX(x, y), 1e-2);
+        assertEquals(20, lowerArm.getInverseFullTransform().mapY(x, y), 1e-2);
+    }
+
+    /**
+     * Each frame moves the torso, rotates the upper arm back and forth and
+     * pinches the leg, then brings every world transform up to date the
+     * way a redraw would.
+     */
+    private void runFrames(int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            float t = (frame % 60) / 60f;
+
+            torso.handleMouseDownEvent(500, 500);
+            torso.handleMouseDragEvent(500 + t, 500 - t);
+            torso.handleMouseUp(500 + t, 500 - t);
+
+            upperArm.handleMouseDownEvent(upperArmPivotX() - 50, upperArmPivotY());
+            upperArm.handleMouseDragEvent(upperArmPivotX() - 50, upperArmPivotY() + 10 * t);
+            upperArm.handleMouseDragEvent(upperArmPivotX() - 50, upperArmPivotY());
+            upperArm.handleMouseUp(upperArmPivotX() - 50, upperArmPivotY());
+
+            upperLeg.scale(frame % 2 == 0 ? 1.01f : 1 / 1.01f);
+
+            torso.getSpriteHit(upperArmPivotX(), upperArmPivotY());
+            updateTransforms(torso);
+        }
+    }
+
+    private float upperArmPivotX() {
+        return upperArm.getFullTransform().tx;
+    }
+
+    private float upperArmPivotY() {
+        return upperArm.getFullTransform().ty;
+    }
+
+    private static void updateTransforms(Sprite sprite) {
+        sprite.getFullTransform();
+        sprite.getLocalWithScaleTransform();
+        for (int i = 0, n = sprite.getChildCount(); i < n; i++) {
+            updateTransforms(sprite.getChild(i));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.a5.cs349.ragdoll.views;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A frame's worth of drag samples applied as one batch must end where
+ * applying them one by one would.
+ */
+public class SpriteDragBatchTest {
+    private Sprite torso;
+    private Sprite forearm;
+
+    @Before
+    public void setUp() {
+        torso = new TestSprite(Sprite.InteractionMode.DRAGGING, 50);
+        forearm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        forearm.translate(100, 0);
+        forearm.setMaxRotate(135);
+        torso.addChild(forearm);
+        torso.translate(200, 200);
+    }
+
+    @Test
+    public void dragUsesOnlyTheLatestSample() {
+        torso.handleMouseDownEvent(200, 200);
+        float[] samples = {210, 205, 230, 190, 260, 240};
+        assertEquals(1, torso.handleMouseDragEvents(samples, 3));
+        assertEquals(260, torso.getSkeleton().getWorldX(0), 1e-3);
+        assertEquals(240, torso.getSkeleton().getWorldY(0), 1e-3);
+    }
+
+    @Test
+    public void fastRotationStepsThroughHistory() {
+        // Sweep around the forearm's joint at (300, 200) in 45 degree steps,
+        // ending opposite where we started. The limit stops it at 135.
+        forearm.handleMouseDownEvent(400, 200);
+        float[] samples = new float[8];
+        for (int i = 0; i < 4; i++) {
+            double rad = Math.toRadians(45 * (i + 1));
+            samples[i * 2] = 300 + (float) (100 * Math.cos(rad));
+            samples[i * 2 + 1] = 200 + (float) (100 * Math.sin(rad));
+        }
+        assertEquals(4, forearm.handleMouseDragEvents(samples, 4));
+        assertEquals(135, forearm.getSkeleton().getRotation(1), 1e-2);
+    }
+
+    @Test
+    public void latestSampleAloneWouldMissTheSwing() {
+        forearm.handleMouseDownEvent(400, 200);
+        assertEquals(1, forearm.handleMouseDragEvents(new float[] {200, 200}, 1));
+        // Straight to 180 is past the limit, so nothing moves
+        assertEquals(0, forearm.getSkeleton().getRotation(1), 1e-2);
+    }
+
+    @Test
+    public void smallStepsCollapseIntoOneUpdate() {
+        forearm.handleMouseDownEvent(400, 200);
+        float[] samples = new float[10];
+        for (int i = 0; i < 5; i++) {
+            double rad = Math.toRadians(5 * (i + 1));
+            samples[i * 2] = 300 + (float) (100 * Math.cos(rad));
+            samples[i * 2 + 1] = 200 + (float) (100 * Math.sin(rad));
+        }
+        assertEquals(1, forearm.handleMouseDragEvents(samples, 5));
+        assertEquals(25, forearm.getSkeleton().getRotation(1), 1e-2);
+    }
+}
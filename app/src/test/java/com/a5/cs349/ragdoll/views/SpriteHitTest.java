@@ -0,0 +1,118 @@
+package com.a5.cs349.ragdoll.views;
+
+import com.a5.cs349.ragdoll.geom.AlphaMask;
+import com.a5.cs349.ragdoll.geom.Bounds;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpriteHitTest {
+    private Sprite torso;
+    private Sprite upperArm;
+    private Sprite lowerArm;
+
+    @Before
+    public void setUp() {
+        torso = new TestSprite(Sprite.InteractionMode.DRAGGING, 50);
+        upperArm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        upperArm.translate(100, 0);
+        torso.addChild(upperArm);
+        lowerArm = new TestSprite(Sprite.InteractionMode.ROTATING, 20);
+        lowerArm.translate(60, 0);
+        upperArm.addChild(lowerArm);
+        torso.translate(200, 200);
+    }
+
+    @Test
+    public void subtreeBoundsCoverDescendants() {
+        Bounds b = torso.getSubtreeBounds();
+        assertEquals(150, b.left, 1e-3);
+        assertEquals(150, b.top, 1e-3);
+        assertEquals(380, b.right, 1e-3);
+        assertEquals(250, b.bottom, 1e-3);
+    }
+
+    @Test
+    public void hitFindsDeepestSprite() {
+        assertSame(lowerArm, torso.getSpriteHit(360, 200));
+        assertSame(upperArm, torso.getSpriteHit(300, 210));
+        assertSame(torso, torso.getSpriteHit(200, 200));
+        assertNull(torso.getSpriteHit(300, 300));
+    }
+
+    @Test
+    public void boundsFollowRotation() {
+        // Swing the upper arm down by 90 degrees about its joint
+        upperArm.handleMouseDownEvent(400, 200);
+        upperArm.handleMouseDragEvent(300, 300);
+
+        assertNull(torso.getSpriteHit(360, 200));
+        assertSame(lowerArm, torso.getSpriteHit(300, 270));
+        Bounds b = torso.getSubtreeBounds();
+        assertEquals(280, b.bottom, 1e-2);
+        assertEquals(320, b.right, 1e-2);
+    }
+
+    @Test
+    public void queriesReturnAllMatches() {
+        List<Sprite> out = new ArrayList<>();
+        torso.getSpritesAt(245, 200, out);
+        assertEquals(1, out.size());
+        assertSame(torso, out.get(0));
+
+        out.clear();
+        torso.getSpritesIn(240, 190, 345, 210, out);
+        assertEquals(3, out.size());
+        assertTrue(out.contains(torso));
+        assertTrue(out.contains(upperArm));
+        assertTrue(out.contains(lowerArm));
+
+        out.clear();
+        torso.getSpritesIn(0, 0, 10, 10, out);
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    public void clearPixelsFallThroughToTheSpriteBelow() {
+        // Slide the lower arm back so its left edge overlaps the upper arm
+        lowerArm.translate(-30, 0);
+        assertSame(lowerArm, torso.getSpriteHit(315, 200));
+
+        // An image whose left half is clear, drawn over the lower arm
+        int[] pixels = new int[40 * 40];
+        for (int y = 0; y < 40; y++) {
+            for (int x = 20; x < 40; x++) {
+                pixels[y * 40 + x] = 0xff000000;
+            }
+        }
+        lowerArm.setHitMask(AlphaMask.fromArgb(pixels, 0, 40, 40, 40, 2, 0x80), -20, -20, 20, 20);
+
+        assertSame(upperArm, torso.getSpriteHit(315, 200));
+        assertSame(lowerArm, torso.getSpriteHit(345, 200));
+        assertNull(torso.getSpriteHit(325, 200));
+    }
+
+    @Test
+    public void aStretchedImageIsHitWhereItIsDrawn() {
+        // An image whose bottom half is opaque, on a lower arm scaled to
+        // twice its length, so the opaque half is drawn from y = 200 to 240
+        int[] pixels = new int[40 * 40];
+        for (int y = 20; y < 40; y++) {
+            for (int x = 0; x < 40; x++) {
+                pixels[y * 40 + x] = 0xff000000;
+            }
+        }
+        lowerArm.setHitMask(AlphaMask.fromArgb(pixels, 0, 40, 40, 40, 2, 0x80), -20, -20, 20, 20);
+        lowerArm.setScalable(true);
+        lowerArm.scale(2);
+
+        assertSame("past the unscaled bounds", lowerArm, torso.getSpriteHit(360, 235));
+        assertSame(lowerArm, torso.getSpriteHit(360, 205));
+        assertNull("clear half, stretched", torso.getSpriteHit(360, 185));
+        assertNull("below the image", torso.getSpriteHit(360, 245));
+    }
+}
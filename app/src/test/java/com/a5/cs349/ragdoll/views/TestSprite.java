@@ -0,0 +1,18 @@
+package com.a5.cs349.ragdoll.views;
+
+import android.graphics.Canvas;
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+
+/**
+ * A sprite with a square hit area and no drawing, so nothing in it touches
+ * the Android framework and it can be used in plain JVM tests.
+ */
+class TestSprite extends Sprite {
+    TestSprite(InteractionMode m, float halfSize) {
+        super(m, PolygonShape.rectangle(-halfSize, -halfSize, halfSize, halfSize));
+    }
+
+    @Override
+    protected void drawSprite(Canvas canvas) {
+    }
+}
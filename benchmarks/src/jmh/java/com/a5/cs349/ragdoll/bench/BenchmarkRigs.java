@@ -0,0 +1,98 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+import com.a5.cs349.ragdoll.io.RigLoader;
+import com.a5.cs349.ragdoll.io.RigReader;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Rigs the benchmarks run on: the rig files the app ships, which are on
+ * the benchmark classpath, and synthetic ones, all without any images.
+ */
+final class BenchmarkRigs {
+    static final int TORSO = 0;
+    static final int LEFT_LEG = 1;                                      // Scalable, as is the knee below it
+    static final int LEFT_ARM = 7;
+    static final int[] LIMB_ENDS = {3, 6, 9, 12};                       // Feet, then hands
+    static final float WIDTH = 1080;
+    static final float HEIGHT = 1920;
+
+    static final String SCYTHER = "rigs/scyther.rig";
+
+    /**
+     * Opens a rig file on the benchmark classpath.
+     */
+    static final RigLoader.Source FILES = new RigLoader.Source() {
+        @Override
+        public InputStream open(String name) throws IOException {
+            InputStream in = BenchmarkRigs.class.getClassLoader().getResourceAsStream(name);
+            if (in == null) {
+                throw new FileNotFoundException(name + " is not on the benchmark classpath");
+            }
+            return in;
+        }
+    };
+
+    /**
+     * Names images by a hash of their name, as no images are loaded.
+     */
+    static final RigReader.ImageResolver IMAGES = new RigReader.ImageResolver() {
+        @Override
+        public int resolve(String image) {
+            return image.hashCode();
+        }
+    };
+
+    private static final RigLoader LOADER = new RigLoader(FILES, IMAGES);
+
+    private BenchmarkRigs() {
+    }
+
+    /**
+     * The Scyther rig the app draws, from rigs/scyther.rig: a torso with
+     * two three-bone legs, two three-bone arms and a head.
+     */
+    static RigDefinition ragdoll() {
+        try {
+            return LOADER.load(SCYTHER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A single chain of depth joints, each hanging 40 pixels below its
+     * parent.
+     */
+    static RigDefinition chain(int depth) {
+        RigDefinition.Builder b = new RigDefinition.Builder();
+        int parent = b.addPart(Skeleton.NO_PARENT, PolygonShape.rectangle(-10, -10, 10, 50));
+        for (int i = 1; i < depth; i++) {
+            parent = b.addPart(parent, PolygonShape.rectangle(-10, -10, 10, 50));
+            b.setOffset(parent, 0, 40);
+        }
+        return b.build();
+    }
+
+    /**
+     * Instantiates n ragdolls on a grid covering a phone-sized view, the
+     * way CanvasView.spawnRagdolls lays them out.
+     */
+    static Skeleton[] scene(RigDefinition rig, int n) {
+        int columns = (int) Math.ceil(Math.sqrt(n));
+        int rows = (n + columns - 1) / columns;
+        Skeleton[] scene = new Skeleton[n];
+        for (int i = 0; i < n; i++) {
+            scene[i] = rig.instantiate(
+                    (i % columns + 0.5f) * WIDTH / columns,
+                    (i / columns + 0.5f) * HEIGHT / rows);
+            scene[i].updateWorldTransforms();
+        }
+        return scene;
+    }
+}
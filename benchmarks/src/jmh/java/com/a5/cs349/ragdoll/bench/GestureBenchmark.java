@@ -0,0 +1,77 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-frame work of one gesture on one ragdoll, up to the damage the
+ * frame invalidates: a drag rotating an upper arm about its joint, with
+ * the angle and limit check Sprite.handleMouseDragEvent does, and a pinch
+ * stretching the upper leg, which cascades through the scalable knee
+ * below it as Skeleton.scale does for Sprite.scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GestureBenchmark {
+    private static final float MAX_ROTATE = 180;
+
+    private Skeleton skeleton;
+    private final Bounds damage = new Bounds();
+    private float lastX;
+    private float lastY;
+    private int frame;
+    private float factor = 1.05f;
+
+    @Setup
+    public void setUp() {
+        skeleton = BenchmarkRigs.ragdoll().instantiate(540, 960);
+        skeleton.updateWorldTransforms();
+        lastX = skeleton.getWorldX(BenchmarkRigs.LEFT_ARM) - 100;
+        lastY = skeleton.getWorldY(BenchmarkRigs.LEFT_ARM) + 100;
+    }
+
+    @Benchmark
+    public Bounds dragRotate() {
+        int arm = BenchmarkRigs.LEFT_ARM;
+        float pivotX = skeleton.getWorldX(arm);
+        float pivotY = skeleton.getWorldY(arm);
+        // The finger sweeps back and forth through a quarter turn
+        double t = Math.toRadians(90 + 45 * Math.sin(frame++ * 0.1));
+        float x = pivotX + 141 * (float) Math.cos(t);
+        float y = pivotY + 141 * (float) Math.sin(t);
+        double angle = Math.toDegrees(Math.atan2(y - pivotY, x - pivotX))
+                - Math.toDegrees(Math.atan2(lastY - pivotY, lastX - pivotX));
+        if (angle < 0) {
+            angle += 360;
+        }
+        double test = (skeleton.getRotation(arm) + angle) % 360;
+        if (test <= MAX_ROTATE || test >= 360 - MAX_ROTATE) {
+            skeleton.rotate(arm, (float) angle);
+        }
+        lastX = x;
+        lastY = y;
+        damage.setEmpty();
+        skeleton.collectDamage(damage);
+        return damage;
+    }
+
+    @Benchmark
+    public Bounds pinchScale() {
+        if (!skeleton.scale(BenchmarkRigs.LEFT_LEG, factor)) {
+            factor = 1 / factor;
+        }
+        damage.setEmpty();
+        skeleton.collectDamage(damage);
+        return damage;
+    }
+}
@@ -0,0 +1,94 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One touch hit tested against every ragdoll in the scene, topmost first,
+ * as CanvasView does with Sprite.getSpriteHit, with the rig's polygons as
+ * the narrow phase. Touches cycle through a fixed set of points spread
+ * over the view, so hits and misses both count. The frame benchmark puts
+ * the touches in the rest of a frame's work on the scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HitTestBenchmark {
+    private static final int TOUCHES = 1024;                            // A power of two
+    private static final int TOUCHES_PER_FRAME = 10;
+
+    @Param({"1", "10", "100", "500"})
+    public int rigs;
+
+    private RigDefinition rig;
+    private Skeleton[] scene;
+    private final float[] touches = new float[TOUCHES * 2];
+    private int next;
+    private int frames;
+
+    @Setup
+    public void setUp() {
+        rig = BenchmarkRigs.ragdoll();
+        scene = BenchmarkRigs.scene(rig, rigs);
+        Random random = new Random(1);
+        for (int i = 0; i < TOUCHES; i++) {
+            touches[i * 2] = random.nextFloat() * BenchmarkRigs.WIDTH;
+            touches[i * 2 + 1] = random.nextFloat() * BenchmarkRigs.HEIGHT;
+        }
+    }
+
+    @Benchmark
+    public int touch() {
+        int t = next;
+        next = (next + 1) & (TOUCHES - 1);
+        float x = touches[t * 2];
+        float y = touches[t * 2 + 1];
+        for (int i = scene.length - 1; i >= 0; i--) {
+            int hit = scene[i].hitTest(BenchmarkRigs.TORSO, x, y, rig);
+            if (hit != Skeleton.NO_PARENT) {
+                return hit;
+            }
+        }
+        return Skeleton.NO_PARENT;
+    }
+
+    /**
+     * A whole frame of the scene around its touches: every limb of every
+     * ragdoll swung a little, as a physics step or animation would, ten
+     * touches hit tested, then every joint's world transform read in
+     * draw order.
+     */
+    @Benchmark
+    public float frame() {
+        float angle = (frames++ & 1) == 0 ? 3 : -3;
+        for (Skeleton skeleton : scene) {
+            for (int joint = 1, count = skeleton.getCount(); joint < count; joint++) {
+                skeleton.rotate(joint, angle);
+            }
+            skeleton.translate(BenchmarkRigs.TORSO, angle, 0);
+            skeleton.updateWorldTransforms();
+        }
+        float sum = 0;
+        for (int t = 0; t < TOUCHES_PER_FRAME; t++) {
+            sum += touch();
+        }
+        for (Skeleton skeleton : scene) {
+            float[] world = skeleton.getWorldTransforms();
+            for (int o = 0, end = skeleton.getCount() * 6; o < end; o++) {
+                sum += world[o];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,57 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.ik.IkSolver;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame of IK on every hand and foot of every ragdoll in the scene:
+ * each is grabbed where its joint is and solved towards a target circling
+ * the view, mostly out of reach, so most solves spend their whole budget
+ * of IkSolver.ITERATIONS steps. A frame of a real scene solves one limb
+ * per finger; a 16 ms frame should fit many rigs' worth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IkBenchmark {
+    @Param({"1", "100"})
+    public int rigs;
+
+    private Skeleton[] scene;
+    private IkSolver solver;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        RigDefinition rig = BenchmarkRigs.ragdoll();
+        scene = BenchmarkRigs.scene(rig, rigs);
+        solver = new IkSolver(rig);
+    }
+
+    @Benchmark
+    public int everyLimb() {
+        float x = BenchmarkRigs.WIDTH / 2 + 600 * (float) Math.cos(frame * 0.1);
+        float y = BenchmarkRigs.HEIGHT / 2 + 600 * (float) Math.sin(frame * 0.1);
+        frame++;
+        int reached = 0;
+        for (Skeleton skeleton : scene) {
+            for (int limb : BenchmarkRigs.LIMB_ENDS) {
+                solver.grab(skeleton, limb, skeleton.getWorldX(limb), skeleton.getWorldY(limb));
+                reached += solver.solve(x, y) ? 1 : 0;
+            }
+            skeleton.updateWorldTransforms();
+        }
+        return reached;
+    }
+}
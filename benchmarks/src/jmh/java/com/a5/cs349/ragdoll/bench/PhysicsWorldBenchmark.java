@@ -0,0 +1,73 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.anim.ManualClock;
+import com.a5.cs349.ragdoll.physics.PhysicsWorld;
+import com.a5.cs349.ragdoll.physics.VerletBody;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One 60 Hz frame of PhysicsWorld.update, two steps of 128 Scyther
+ * ragdolls, on the calling thread (0 threads) and on pools of 1 to 8
+ * threads. Nothing is in reach and gravity turns over every half second,
+ * so no body ever falls asleep and every frame does the full work. The
+ * speedup depends on the cores of the machine running it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PhysicsWorldBenchmark {
+    private static final int RIGS = 128;
+    private static final long FRAME_NANOS = 16666667;
+    private static final int FLIP_FRAMES = 30;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private final ManualClock clock = new ManualClock();
+    private PhysicsWorld world;
+    private int frames;
+
+    @Setup
+    public void setUp() {
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+        world = new PhysicsWorld(clock, pool);
+        RigDefinition rig = BenchmarkRigs.ragdoll();
+        Skeleton[] scene = BenchmarkRigs.scene(rig, RIGS);
+        for (int i = 0; i < RIGS; i++) {
+            // Every ragdoll tumbles differently
+            scene[i].setRotation(BenchmarkRigs.TORSO, i * 7 % 40 - 20);
+            world.add(new VerletBody(scene[i], rig));
+        }
+        world.update();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean frame() {
+        // Half a period first, so the bodies swing about their start
+        boolean down = ((frames++ + FLIP_FRAMES / 2) / FLIP_FRAMES & 1) == 0;
+        world.setGravity(0, down ? PhysicsWorld.DEFAULT_GRAVITY : -PhysicsWorld.DEFAULT_GRAVITY);
+        clock.advance(FRAME_NANOS);
+        return world.update();
+    }
+}
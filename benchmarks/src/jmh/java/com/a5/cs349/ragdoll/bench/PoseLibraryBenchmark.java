@@ -0,0 +1,72 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.io.PoseLibrary;
+import com.a5.cs349.ragdoll.io.PoseLibraryWriter;
+import com.a5.cs349.ragdoll.scene.PoseSnapshot;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a pose library of the Scyther's poses, as the app does from an
+ * asset read into memory, and restoring one pose from it. Loading checks
+ * the header and trailer only, so it should cost the same however many
+ * poses the library holds. Mapping a file is left out: one mapping per
+ * operation would run out of mappings long before the garbage collector
+ * released any.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoseLibraryBenchmark {
+    @Param({"100", "10000"})
+    public int poses;
+
+    private ByteBuffer file;
+    private PoseLibrary library;
+    private Skeleton target;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Skeleton skeleton = BenchmarkRigs.ragdoll().instantiate(0, 0);
+        Random random = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PoseLibraryWriter writer = new PoseLibraryWriter(out);
+        for (int i = 0; i < poses; i++) {
+            for (int j = 1; j < skeleton.getCount(); j++) {
+                skeleton.setRotation(j, random.nextFloat() * 90 - 45);
+            }
+            writer.writePose("pose" + i, PoseSnapshot.capture(Collections.singletonList(skeleton)));
+        }
+        writer.close();
+        file = ByteBuffer.wrap(out.toByteArray());
+        library = PoseLibrary.wrap(file);
+        target = BenchmarkRigs.ragdoll().instantiate(0, 0);
+    }
+
+    @Benchmark
+    public PoseLibrary load() throws IOException {
+        return PoseLibrary.wrap(file);
+    }
+
+    @Benchmark
+    public Skeleton restore() {
+        library.getPose(next).restore(0, target);
+        next = (next + 97) % poses;
+        return target;
+    }
+}
@@ -0,0 +1,51 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.io.RigReader;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading rigs/scyther.rig, already in memory, into a RigDefinition, as
+ * RigLoader does the first time a view asks for the rig. It should take
+ * well under a frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RigReaderBenchmark {
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder b = new StringBuilder();
+        char[] buffer = new char[4096];
+        InputStream in = BenchmarkRigs.FILES.open(BenchmarkRigs.SCYTHER);
+        try {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            for (int n; (n = reader.read(buffer)) != -1; ) {
+                b.append(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        text = b.toString();
+    }
+
+    @Benchmark
+    public RigDefinition read() throws IOException {
+        return RigReader.read(new StringReader(text), BenchmarkRigs.IMAGES);
+    }
+}
@@ -0,0 +1,54 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.physics.PhysicsWorld;
+import com.a5.cs349.ragdoll.physics.VerletBody;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One physics step of a Scyther ragdoll, out of the 120 a second
+ * PhysicsWorld runs; a step has PhysicsWorld.STEP_SECONDS to fit in.
+ * Nothing is in reach and gravity turns over every half second, so the
+ * body tumbles back and forth about where it started, doing a full step
+ * every time without ever falling asleep or drifting off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VerletBodyBenchmark {
+    private static final int FLIP_STEPS = 60;
+
+    private Skeleton skeleton;
+    private VerletBody body;
+    private final Bounds limits = new Bounds();
+    private int steps;
+
+    @Setup
+    public void setUp() {
+        RigDefinition rig = BenchmarkRigs.ragdoll();
+        skeleton = rig.instantiate(BenchmarkRigs.WIDTH / 2, BenchmarkRigs.HEIGHT / 2);
+        skeleton.updateWorldTransforms();
+        body = new VerletBody(skeleton, rig);
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    }
+
+    @Benchmark
+    public Skeleton step() {
+        // Half a period first, so the body swings about its start
+        boolean down = ((steps++ + FLIP_STEPS / 2) / FLIP_STEPS & 1) == 0;
+        float gravity = down ? PhysicsWorld.DEFAULT_GRAVITY : -PhysicsWorld.DEFAULT_GRAVITY;
+        body.step(PhysicsWorld.STEP_SECONDS, 0, gravity, limits);
+        return skeleton;
+    }
+}
@@ -0,0 +1,53 @@
+package com.a5.cs349.ragdoll.bench;
+
+import com.a5.cs349.ragdoll.geom.Affine;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The world transform of the deepest joint of a chain, as
+ * Sprite.getFullTransform reads it, after the root has turned and every
+ * joint below it has to be recomposed. The clean case reads it again with
+ * nothing changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WorldTransformBenchmark {
+    @Param({"1", "4", "16", "64"})
+    public int depth;
+
+    private Skeleton skeleton;
+    private int leaf;
+    private final Affine transform = new Affine();
+    private float angle = 1;
+
+    @Setup
+    public void setUp() {
+        skeleton = BenchmarkRigs.chain(depth).instantiate(540, 100);
+        leaf = depth - 1;
+    }
+
+    @Benchmark
+    public Affine afterRootTurns() {
+        angle = -angle;
+        skeleton.rotate(0, angle);
+        skeleton.getWorldTransform(leaf, transform);
+        return transform;
+    }
+
+    @Benchmark
+    public Affine clean() {
+        skeleton.getWorldTransform(leaf, transform);
+        return transform;
+    }
+}
@@ -0,0 +1,136 @@
+package com.a5.cs349.ragdoll.anim;
+
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.util.Arrays;
+
+/**
+ * Plays clips on skeletons. Any number of clips can play on any number of
+ * skeletons; update evaluates all of them in one pass, in the order they
+ * were started, so a later clip wins on channels two clips share.
+ *
+ * Playbacks are kept in parallel arrays and update does not allocate.
+ * Not thread safe; play and update from the thread that owns the
+ * skeletons.
+ */
+public final class Animator {
+    private final Clock clock;
+
+    private int count = 0;
+    private Clip[] clips = new Clip[8];
+    private Skeleton[] skeletons = new Skeleton[8];
+    private long[] startNanos = new long[8];
+    private float[] speeds = new float[8];
+    private boolean[] loops = new boolean[8];
+
+    public Animator(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Starts clip on skeleton from its beginning, now.
+     *
+     * @param speed playback rate; 1 is real time
+     * @param loop  whether to start over at the end, or stop there
+     */
+    public void play(Clip clip, Skeleton skeleton, float speed, boolean loop) {
+        if (count == clips.length) {
+            int capacity = count * 2;
+            clips = Arrays.copyOf(clips, capacity);
+            skeletons = Arrays.copyOf(skeletons, capacity);
+            startNanos = Arrays.copyOf(startNanos, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+            loops = Arrays.copyOf(loops, capacity);
+        }
+        clips[count] = clip;
+        skeletons[count] = skeleton;
+        startNanos[count] = clock.nanoTime();
+        speeds[count] = speed;
+        loops[count] = loop;
+        count++;
+        clip.apply(skeleton, 0);
+    }
+
+    public void play(Clip clip, Skeleton skeleton, boolean loop) {
+        play(clip, skeleton, 1, loop);
+    }
+
+    /**
+     * Stops every clip playing on skeleton, leaving it in its current pose.
+     */
+    public void stop(Skeleton skeleton) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (skeletons[i] == skeleton) {
+                remove(i);
+            }
+        }
+    }
+
+    public void stopAll() {
+        Arrays.fill(clips, 0, count, null);
+        Arrays.fill(skeletons, 0, count, null);
+        count = 0;
+    }
+
+    public boolean isPlaying(Skeleton skeleton) {
+        for (int i = 0; i < count; i++) {
+            if (skeletons[i] == skeleton) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getPlayingCount() {
+        return count;
+    }
+
+    /**
+     * Poses every skeleton as its clips are at the clock's current time.
+     * Clips that have played to the end are applied at their last frame,
+     * then dropped.
+     *
+     * @return whether any clip is still playing
+     */
+    public boolean update() {
+        long now = clock.nanoTime();
+        int i = 0;
+        while (i < count) {
+            Clip clip = clips[i];
+            float seconds = (now - startNanos[i]) * 1e-9f * speeds[i];
+            float duration = clip.getDuration();
+            boolean finished = false;
+            if (seconds >= duration) {
+                if (loops[i] && duration > 0) {
+                    seconds %= duration;
+                } else {
+                    seconds = duration;
+                    finished = true;
+                }
+            }
+            clip.apply(skeletons[i], seconds);
+            if (finished) {
+                remove(i);
+            } else {
+                i++;
+            }
+        }
+        return count > 0;
+    }
+
+    /**
+     * Removes playback i, keeping the others in order so layering stays
+     * the same.
+     */
+    private void remove(int i) {
+        int tail = count - i - 1;
+        System.arraycopy(clips, i + 1, clips, i, tail);
+        System.arraycopy(skeletons, i + 1, skeletons, i, tail);
+        System.arraycopy(startNanos, i + 1, startNanos, i, tail);
+        System.arraycopy(speeds, i + 1, speeds, i, tail);
+        System.arraycopy(loops, i + 1, loops, i, tail);
+        count--;
+        clips[count] = null;
+        skeletons[count] = null;
+    }
+}
@@ -0,0 +1,257 @@
+package com.a5.cs349.ragdoll.anim;
+
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable animation of some of a rig's joint channels. Keyframes are
+ * baked at build time into evenly spaced samples, easing included, so
+ * evaluating a channel at any time is one index computation and one lerp
+ * however many keys it had. Clips hold no playback state and can be
+ * played on any number of rigs at once.
+ *
+ * The samples live in a FloatBuffer, so a clip can also be read in place
+ * from a mapped PoseLibrary.
+ */
+public final class Clip {
+    /**
+     * The parts of a joint's local pose a clip can drive.
+     */
+    public enum Channel {
+        TRANSLATE_X,
+        TRANSLATE_Y,
+        ROTATION,
+        SCALE
+    }
+
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private final float duration;
+    private final float sampleRate;
+    private final int sampleCount;                                      // Per track
+    private final int[] trackJoints;
+    private final int[] trackChannels;
+    private final FloatBuffer samples;                                  // Track after track
+
+    private Clip(float duration, float sampleRate, int sampleCount,
+                 int[] trackJoints, int[] trackChannels, FloatBuffer samples) {
+        this.duration = duration;
+        this.sampleRate = sampleRate;
+        this.sampleCount = sampleCount;
+        this.trackJoints = trackJoints;
+        this.trackChannels = trackChannels;
+        this.samples = samples;
+    }
+
+    /**
+     * Creates a clip over samples that are already baked, e.g. in a mapped
+     * file. The samples are read in place, not copied.
+     *
+     * @param samples sampleCount samples per track, track after track
+     */
+    public static Clip wrap(float duration, float sampleRate, int sampleCount,
+                            int[] trackJoints, Channel[] trackChannels, FloatBuffer samples) {
+        int trackCount = trackJoints.length;
+        if (trackChannels.length != trackCount || sampleCount < 1
+                || samples.remaining() != trackCount * sampleCount) {
+            throw new IllegalArgumentException("Samples do not match " + trackCount
+                    + " tracks of " + sampleCount);
+        }
+        int[] channels = new int[trackCount];
+        for (int track = 0; track < trackCount; track++) {
+            channels[track] = trackChannels[track].ordinal();
+        }
+        return new Clip(duration, sampleRate, sampleCount, trackJoints.clone(), channels, samples.slice());
+    }
+
+    /**
+     * Length of the clip in seconds: the time of its last key.
+     */
+    public float getDuration() {
+        return duration;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Number of baked samples in each track.
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public float getSample(int track, int index) {
+        return samples.get(track * sampleCount + index);
+    }
+
+    public int getTrackCount() {
+        return trackJoints.length;
+    }
+
+    public int getTrackJoint(int track) {
+        return trackJoints[track];
+    }
+
+    public Channel getTrackChannel(int track) {
+        return CHANNELS[trackChannels[track]];
+    }
+
+    /**
+     * Returns a track's value at the given time, clamped to the clip.
+     */
+    public float sample(int track, float seconds) {
+        float u = Math.max(0, Math.min(seconds, duration)) * sampleRate;
+        int i = (int) u;
+        int base = track * sampleCount;
+        if (i >= sampleCount - 1) {
+            return samples.get(base + sampleCount - 1);
+        }
+        float a = samples.get(base + i);
+        return a + (samples.get(base + i + 1) - a) * (u - i);
+    }
+
+    /**
+     * Poses every joint the clip drives as it is at the given time. Does
+     * not allocate.
+     */
+    public void apply(Skeleton skeleton, float seconds) {
+        for (int track = 0, n = trackJoints.length; track < n; track++) {
+            int joint = trackJoints[track];
+            float value = sample(track, seconds);
+            switch (CHANNELS[trackChannels[track]]) {
+                case TRANSLATE_X:
+                    skeleton.setTranslate(joint, value, skeleton.getTranslateY(joint));
+                    break;
+                case TRANSLATE_Y:
+                    skeleton.setTranslate(joint, skeleton.getTranslateX(joint), value);
+                    break;
+                case ROTATION:
+                    skeleton.setRotation(joint, value);
+                    break;
+                case SCALE:
+                    skeleton.setScale(joint, value);
+                    break;
+            }
+        }
+    }
+
+    public static final class Builder {
+        public static final float DEFAULT_SAMPLE_RATE = 60;
+
+        private final List<Key> keys = new ArrayList<>();
+
+        /**
+         * Adds a key. The easing shapes the segment that ends at this key.
+         *
+         * @param joint   the part, i.e. the joint index in rigs built from
+         *                the same definition
+         * @param seconds when the channel reaches value
+         */
+        public Builder key(int joint, Channel channel, float seconds, float value, Easing easing) {
+            if (seconds < 0) {
+                throw new IllegalArgumentException("Keys cannot be before the start of the clip");
+            }
+            keys.add(new Key(joint, channel.ordinal(), seconds, value, easing));
+            return this;
+        }
+
+        public Builder key(int joint, Channel channel, float seconds, float value) {
+            return key(joint, channel, seconds, value, Easing.LINEAR);
+        }
+
+        public Clip build() {
+            return build(DEFAULT_SAMPLE_RATE);
+        }
+
+        /**
+         * Bakes the keys into samplesPerSecond samples per second of clip.
+         */
+        public Clip build(float samplesPerSecond) {
+            if (keys.isEmpty()) {
+                throw new IllegalStateException("A clip needs at least one key");
+            }
+            List<Key> sorted = new ArrayList<>(keys);
+            Collections.sort(sorted, new Comparator<Key>() {
+                @Override
+                public int compare(Key a, Key b) {
+                    if (a.joint != b.joint) {
+                        return a.joint - b.joint;
+                    }
+                    if (a.channel != b.channel) {
+                        return a.channel - b.channel;
+                    }
+                    return Float.compare(a.seconds, b.seconds);
+                }
+            });
+
+            float duration = 0;
+            int trackCount = 0;
+            for (int k = 0; k < sorted.size(); k++) {
+                Key key = sorted.get(k);
+                duration = Math.max(duration, key.seconds);
+                if (k == 0 || !sorted.get(k - 1).sameTrack(key)) {
+                    trackCount++;
+                }
+            }
+            int sampleCount = (int) Math.ceil(duration * samplesPerSecond) + 1;
+
+            int[] trackJoints = new int[trackCount];
+            int[] trackChannels = new int[trackCount];
+            float[] samples = new float[trackCount * sampleCount];
+            int first = 0;
+            for (int track = 0; track < trackCount; track++) {
+                int last = first;
+                while (last + 1 < sorted.size() && sorted.get(last + 1).sameTrack(sorted.get(first))) {
+                    last++;
+                }
+                trackJoints[track] = sorted.get(first).joint;
+                trackChannels[track] = sorted.get(first).channel;
+                int k = first;
+                for (int s = 0; s < sampleCount; s++) {
+                    float t = Math.min(s / samplesPerSecond, duration);
+                    while (k < last && sorted.get(k + 1).seconds <= t) {
+                        k++;
+                    }
+                    Key from = sorted.get(k);
+                    float value = from.value;
+                    if (k < last && t > from.seconds) {
+                        Key to = sorted.get(k + 1);
+                        float progress = (t - from.seconds) / (to.seconds - from.seconds);
+                        value += (to.value - from.value) * to.easing.apply(progress);
+                    }
+                    samples[track * sampleCount + s] = value;
+                }
+                first = last + 1;
+            }
+            return new Clip(duration, samplesPerSecond, sampleCount, trackJoints, trackChannels,
+                    FloatBuffer.wrap(samples));
+        }
+    }
+
+    private static final class Key {
+        final int joint;
+        final int channel;
+        final float seconds;
+        final float value;
+        final Easing easing;
+
+        Key(int joint, int channel, float seconds, float value, Easing easing) {
+            this.joint = joint;
+            this.channel = channel;
+            this.seconds = seconds;
+            this.value = value;
+            this.easing = easing;
+        }
+
+        boolean sameTrack(Key other) {
+            return joint == other.joint && channel == other.channel;
+        }
+    }
+}
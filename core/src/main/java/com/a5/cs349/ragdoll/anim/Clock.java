@@ -0,0 +1,18 @@
+package com.a5.cs349.ragdoll.anim;
+
+/**
+ * The time source an Animator plays clips against.
+ */
+public interface Clock {
+    /**
+     * Monotonic time, in nanoseconds.
+     */
+    long nanoTime();
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+}
@@ -0,0 +1,43 @@
+package com.a5.cs349.ragdoll.anim;
+
+/**
+ * Maps progress through a keyframe segment, from 0 to 1, to how far the
+ * value has moved.
+ */
+public enum Easing {
+    LINEAR {
+        @Override
+        public float apply(float t) {
+            return t;
+        }
+    },
+    EASE_IN {
+        @Override
+        public float apply(float t) {
+            return t * t;
+        }
+    },
+    EASE_OUT {
+        @Override
+        public float apply(float t) {
+            return t * (2 - t);
+        }
+    },
+    EASE_IN_OUT {
+        @Override
+        public float apply(float t) {
+            return t * t * (3 - 2 * t);
+        }
+    },
+    /**
+     * Holds the previous key's value until the segment ends.
+     */
+    STEP {
+        @Override
+        public float apply(float t) {
+            return t < 1 ? 0 : 1;
+        }
+    };
+
+    public abstract float apply(float t);
+}
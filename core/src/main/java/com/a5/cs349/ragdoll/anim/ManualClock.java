@@ -0,0 +1,22 @@
+package com.a5.cs349.ragdoll.anim;
+
+/**
+ * A clock that only moves when told to, for playing clips headless or at
+ * a fixed step.
+ */
+public final class ManualClock implements Clock {
+    private long now;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void advance(long nanos) {
+        now += nanos;
+    }
+
+    public void advanceSeconds(float seconds) {
+        now += (long) (seconds * 1e9);
+    }
+}
@@ -0,0 +1,132 @@
+package com.a5.cs349.ragdoll.geom;
+
+/**
+ * A 2D affine transform stored as six floats:
+ *
+ *   | a  c  tx |
+ *   | b  d  ty |
+ *   | 0  0  1  |
+ *
+ * Covers the subset of android.graphics.Matrix that the scene graph needs.
+ * Everything is plain arithmetic on fields, so nothing here allocates or
+ * crosses into native code, and it can be used off-device in unit tests.
+ *
+ * Naming follows Matrix: "pre" operations are applied to points before this
+ * transform, "post" operations after it.
+ */
+public final class Affine {
+    public float a = 1, b = 0, c = 0, d = 1;
+    public float tx = 0, ty = 0;
+
+    public void reset() {
+        a = 1; b = 0; c = 0; d = 1;
+        tx = 0; ty = 0;
+    }
+
+    public void set(Affine m) {
+        a = m.a; b = m.b; c = m.c; d = m.d;
+        tx = m.tx; ty = m.ty;
+    }
+
+    public void set(float a, float b, float c, float d, float tx, float ty) {
+        this.a = a; this.b = b; this.c = c; this.d = d;
+        this.tx = tx; this.ty = ty;
+    }
+
+    /**
+     * this = this * R(degrees)
+     */
+    public void preRotate(float degrees) {
+        double rad = Math.toRadians(degrees);
+        float cos = (float) Math.cos(rad);
+        float sin = (float) Math.sin(rad);
+        float na = a * cos + c * sin;
+        float nb = b * cos + d * sin;
+        float nc = c * cos - a * sin;
+        float nd = d * cos - b * sin;
+        a = na; b = nb; c = nc; d = nd;
+    }
+
+    /**
+     * this = this * S(sx, sy)
+     */
+    public void preScale(float sx, float sy) {
+        a *= sx; b *= sx;
+        c *= sy; d *= sy;
+    }
+
+    /**
+     * this = T(dx, dy) * this
+     */
+    public void postTranslate(float dx, float dy) {
+        tx += dx;
+        ty += dy;
+    }
+
+    /**
+     * this = m * this
+     */
+    public void postConcat(Affine m) {
+        float na = m.a * a + m.c * b;
+        float nb = m.b * a + m.d * b;
+        float nc = m.a * c + m.c * d;
+        float nd = m.b * c + m.d * d;
+        float ntx = m.a * tx + m.c * ty + m.tx;
+        float nty = m.b * tx + m.d * ty + m.ty;
+        a = na; b = nb; c = nc; d = nd;
+        tx = ntx; ty = nty;
+    }
+
+    /**
+     * this = this * m
+     */
+    public void preConcat(Affine m) {
+        float na = a * m.a + c * m.b;
+        float nb = b * m.a + d * m.b;
+        float nc = a * m.c + c * m.d;
+        float nd = b * m.c + d * m.d;
+        float ntx = a * m.tx + c * m.ty + tx;
+        float nty = b * m.tx + d * m.ty + ty;
+        a = na; b = nb; c = nc; d = nd;
+        tx = ntx; ty = nty;
+    }
+
+    /**
+     * Writes the inverse of this transform into out (which may be this).
+     *
+     * @return false if the transform is singular, in which case out is untouched
+     */
+    public boolean invert(Affine out) {
+        float det = a * d - b * c;
+        if (det == 0) {
+            return false;
+        }
+        float inv = 1 / det;
+        float na = d * inv;
+        float nb = -b * inv;
+        float nc = -c * inv;
+        float nd = a * inv;
+        float ntx = (c * ty - d * tx) * inv;
+        float nty = (b * tx - a * ty) * inv;
+        out.set(na, nb, nc, nd, ntx, nty);
+        return true;
+    }
+
+    public float mapX(float x, float y) {
+        return a * x + c * y + tx;
+    }
+
+    public float mapY(float x, float y) {
+        return b * x + d * y + ty;
+    }
+
+    /**
+     * Copies this transform into a 3x3 array laid out the way
+     * android.graphics.Matrix.setValues expects.
+     */
+    public void getValues(float[] values) {
+        values[0] = a;  values[1] = c;  values[2] = tx;
+        values[3] = b;  values[4] = d;  values[5] = ty;
+        values[6] = 0;  values[7] = 0;  values[8] = 1;
+    }
+}
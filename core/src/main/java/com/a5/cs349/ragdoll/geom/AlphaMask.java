@@ -0,0 +1,99 @@
+package com.a5.cs349.ragdoll.geom;
+
+/**
+ * An immutable 1-bit mask of where an image is opaque, packed 64 cells to
+ * a long, each row starting on a new long. A cell may cover a square of
+ * several pixels, and is set if any of them is opaque, so a coarse mask
+ * never misses a touch on an opaque pixel.
+ *
+ * Lookups take coordinates normalized to the image, so one mask serves
+ * the image at any size it is drawn at, and are a bounds check and one
+ * array read.
+ */
+public final class AlphaMask {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    private AlphaMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Builds a mask from ARGB pixels, e.g. from Bitmap.getPixels.
+     *
+     * @param stride    ints from one row of pixels to the next
+     * @param cellSize  pixels per cell side; 1 for a full resolution mask
+     * @param threshold the alpha, 0 to 255, from which a pixel is opaque
+     */
+    public static AlphaMask fromArgb(int[] pixels, int offset, int stride, int pixelWidth, int pixelHeight,
+                                     int cellSize, int threshold) {
+        if (pixelWidth <= 0 || pixelHeight <= 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("Empty mask " + pixelWidth + " x " + pixelHeight
+                    + " at cell size " + cellSize);
+        }
+        AlphaMask mask = new AlphaMask((pixelWidth + cellSize - 1) / cellSize,
+                (pixelHeight + cellSize - 1) / cellSize);
+        for (int y = 0; y < pixelHeight; y++) {
+            int row = (y / cellSize) * mask.wordsPerRow;
+            int p = offset + y * stride;
+            for (int x = 0; x < pixelWidth; x++, p++) {
+                if (pixels[p] >>> 24 >= threshold) {
+                    int cell = x / cellSize;
+                    mask.bits[row + (cell >>> 6)] |= 1L << cell;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Width in cells.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Height in cells.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isSet(int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Tests a point given as fractions of the image's width and height,
+     * so (0, 0) is its top left corner and (1, 1) its bottom right.
+     */
+    public boolean contains(float u, float v) {
+        // Negated so NaN is rejected too
+        if (!(u >= 0 && u < 1 && v >= 0 && v < 1)) {
+            return false;
+        }
+        // Rounding can carry u * width up to width itself
+        return isSet(Math.min((int) (u * width), width - 1), Math.min((int) (v * height), height - 1));
+    }
+
+    /**
+     * Returns the fraction of cells set.
+     */
+    public float getCoverage() {
+        int set = 0;
+        for (long word : bits) {
+            set += Long.bitCount(word);
+        }
+        return (float) set / (width * height);
+    }
+
+    public int getByteCount() {
+        return bits.length * 8;
+    }
+}
@@ -0,0 +1,105 @@
+package com.a5.cs349.ragdoll.geom;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Where each of a set of images goes when packed into one atlas bitmap.
+ * Images are placed on shelves, tallest first, which wastes little space
+ * for a handful of cut-outs of similar height. The layout only depends on
+ * the image sizes, so it can be recomputed from image headers alone.
+ */
+public final class AtlasLayout {
+    private final int width;
+    private final int height;
+    private final int[] rects;                                          // left, top, right, bottom per image
+
+    private AtlasLayout(int width, int height, int[] rects) {
+        this.width = width;
+        this.height = height;
+        this.rects = rects;
+    }
+
+    /**
+     * @param widths  image widths, in pixels
+     * @param heights image heights, in pixels
+     * @param maxWidth widest the atlas may be
+     * @param padding empty pixels kept around every image, so filtering
+     *                never samples a neighbour
+     */
+    public static AtlasLayout pack(int[] widths, final int[] heights, int maxWidth, int padding) {
+        int count = widths.length;
+        if (heights.length != count) {
+            throw new IllegalArgumentException("Need one height per width");
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            if (widths[i] <= 0 || heights[i] <= 0) {
+                throw new IllegalArgumentException("Image " + i + " is empty");
+            }
+            if (widths[i] + padding * 2 > maxWidth) {
+                throw new IllegalArgumentException("Image " + i + " is wider than the atlas");
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return heights[b] - heights[a];
+            }
+        });
+
+        int[] rects = new int[count * 4];
+        int width = 0;
+        int shelfTop = 0;
+        int shelfHeight = 0;
+        int x = 0;
+        for (int n = 0; n < count; n++) {
+            int i = order[n];
+            int w = widths[i] + padding * 2;
+            int h = heights[i] + padding * 2;
+            if (x + w > maxWidth) {
+                shelfTop += shelfHeight;
+                shelfHeight = 0;
+                x = 0;
+            }
+            int o = i * 4;
+            rects[o] = x + padding;
+            rects[o + 1] = shelfTop + padding;
+            rects[o + 2] = x + padding + widths[i];
+            rects[o + 3] = shelfTop + padding + heights[i];
+            x += w;
+            width = Math.max(width, x);
+            shelfHeight = Math.max(shelfHeight, h);
+        }
+        return new AtlasLayout(width, shelfTop + shelfHeight, rects);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCount() {
+        return rects.length / 4;
+    }
+
+    public int getLeft(int image) {
+        return rects[image * 4];
+    }
+
+    public int getTop(int image) {
+        return rects[image * 4 + 1];
+    }
+
+    public int getRight(int image) {
+        return rects[image * 4 + 2];
+    }
+
+    public int getBottom(int image) {
+        return rects[image * 4 + 3];
+    }
+}
@@ -0,0 +1,73 @@
+package com.a5.cs349.ragdoll.geom;
+
+/**
+ * A mutable axis-aligned bounding box. An empty box has left > right, so it
+ * contains nothing and acts as the identity for union.
+ */
+public final class Bounds {
+    public float left, top, right, bottom;
+
+    public Bounds() {
+        setEmpty();
+    }
+
+    public void setEmpty() {
+        left = Float.POSITIVE_INFINITY;
+        top = Float.POSITIVE_INFINITY;
+        right = Float.NEGATIVE_INFINITY;
+        bottom = Float.NEGATIVE_INFINITY;
+    }
+
+    public boolean isEmpty() {
+        return left > right || top > bottom;
+    }
+
+    public void set(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(Bounds b) {
+        set(b.left, b.top, b.right, b.bottom);
+    }
+
+    public void union(Bounds b) {
+        if (b.left < left) left = b.left;
+        if (b.top < top) top = b.top;
+        if (b.right > right) right = b.right;
+        if (b.bottom > bottom) bottom = b.bottom;
+    }
+
+    public void union(float x, float y) {
+        if (x < left) left = x;
+        if (y < top) top = y;
+        if (x > right) right = x;
+        if (y > bottom) bottom = y;
+    }
+
+    public boolean contains(float x, float y) {
+        return x >= left && x <= right && y >= top && y <= bottom;
+    }
+
+    public boolean intersects(float left, float top, float right, float bottom) {
+        return this.left <= right && left <= this.right
+                && this.top <= bottom && top <= this.bottom;
+    }
+
+    /**
+     * Sets this box to the bounds of the given local box after it is mapped
+     * through t.
+     */
+    public void setTransformed(Affine t, Bounds local) {
+        setEmpty();
+        if (local.isEmpty()) {
+            return;
+        }
+        union(t.mapX(local.left, local.top), t.mapY(local.left, local.top));
+        union(t.mapX(local.right, local.top), t.mapY(local.right, local.top));
+        union(t.mapX(local.right, local.bottom), t.mapY(local.right, local.bottom));
+        union(t.mapX(local.left, local.bottom), t.mapY(local.left, local.bottom));
+    }
+}
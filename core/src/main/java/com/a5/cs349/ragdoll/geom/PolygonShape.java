@@ -0,0 +1,88 @@
+package com.a5.cs349.ragdoll.geom;
+
+/**
+ * An immutable polygon stored as a packed vertex array {x0, y0, x1, y1, ...}.
+ * Edge data and bounds are computed once in the constructor, so contains()
+ * is plain arithmetic with no allocation. Shapes can be shared freely
+ * between sprites.
+ */
+public final class PolygonShape {
+    private static final int EDGE_STRIDE = 4;
+
+    private final float[] vertices;
+    // Per edge: x of the first vertex, y of both vertices, and dx/dy
+    private final float[] edges;
+    private final Bounds bounds = new Bounds();
+
+    /**
+     * @param vertices packed x, y pairs; the polygon is closed implicitly
+     */
+    public PolygonShape(float[] vertices) {
+        if (vertices.length < 6 || vertices.length % 2 != 0) {
+            throw new IllegalArgumentException("A polygon needs at least three x, y pairs");
+        }
+        this.vertices = vertices.clone();
+
+        int count = getVertexCount();
+        edges = new float[count * EDGE_STRIDE];
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            float xi = this.vertices[i * 2];
+            float yi = this.vertices[i * 2 + 1];
+            float xj = this.vertices[j * 2];
+            float yj = this.vertices[j * 2 + 1];
+            int e = i * EDGE_STRIDE;
+            edges[e] = xi;
+            edges[e + 1] = yi;
+            edges[e + 2] = yj;
+            edges[e + 3] = yi != yj ? (xj - xi) / (yj - yi) : 0;
+            bounds.union(xi, yi);
+        }
+    }
+
+    public static PolygonShape rectangle(float left, float top, float right, float bottom) {
+        return new PolygonShape(new float[] {
+                left, top,
+                right, top,
+                right, bottom,
+                left, bottom
+        });
+    }
+
+    public int getVertexCount() {
+        return vertices.length / 2;
+    }
+
+    public float getX(int index) {
+        return vertices[index * 2];
+    }
+
+    public float getY(int index) {
+        return vertices[index * 2 + 1];
+    }
+
+    /**
+     * Returns the local bounds of the polygon. Callers must not modify it.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Even-odd point-in-polygon test against a horizontal ray.
+     */
+    public boolean contains(float x, float y) {
+        if (!bounds.contains(x, y)) {
+            return false;
+        }
+        boolean inside = false;
+        for (int e = 0; e < edges.length; e += EDGE_STRIDE) {
+            float yi = edges[e + 1];
+            float yj = edges[e + 2];
+            if ((yi > y) != (yj > y)
+                    && x < edges[e] + (y - yi) * edges[e + 3]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
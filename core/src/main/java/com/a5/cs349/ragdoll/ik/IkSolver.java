@@ -0,0 +1,266 @@
+package com.a5.cs349.ragdoll.ik;
+
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+/**
+ * Poses a limb chain so that a grabbed point on its end effector, e.g. a
+ * hand or foot, follows the finger.
+ *
+ * The chain runs from the effector up to, but not including, the root,
+ * which is dragged rather than rotated. Each iteration is a damped least
+ * squares step: it turns every joint of the chain at once by the amounts
+ * that best move the grabbed point towards the target, to first order,
+ * and clamps each joint's rotation relative to its parent to its
+ * maxRotate. Joints a step would push past their limit are held still and
+ * the step is solved again for the rest, so the others make up for them.
+ * The damping keeps steps bounded when the limb is stretched straight or
+ * the target is out of reach.
+ *
+ * A solve runs at most ITERATIONS steps; since the skeleton keeps the
+ * pose, the next frame's solve carries on where this one stopped. The
+ * steps work on the pivots and the grabbed point in scratch arrays,
+ * rotating them about each joint as it turns, and only write rotations
+ * into the skeleton; its world transforms are brought up to date once,
+ * by whoever reads them next. Nothing is allocated after construction.
+ *
+ * One solver serves any skeleton with at most as many joints as it has
+ * limits, one grab at a time.
+ */
+public final class IkSolver {
+    public static final int ITERATIONS = 10;                            // Steps per solve
+    public static final float TOLERANCE = 0.5f;                         // Pixels
+    private static final float DAMPING = 5;                             // Pixels
+    private static final double MAX_TURN = Math.toRadians(30);          // Per joint per step
+    private static final float UNLIMITED = 180;
+
+    private final float[] maxRotate;                                    // Degrees either side of the rest pose
+    private final int[] chain;                                          // Effector first
+
+    // Scratch, by chain position
+    private final float[] pivotX;
+    private final float[] pivotY;
+    private final float[] jacobianX;                                    // Motion of the grabbed point per radian
+    private final float[] jacobianY;
+    private final double[] turn;                                        // Radians
+    private final boolean[] locked;
+    private int chainLength;
+
+    private Skeleton skeleton;
+    private float grabX;                                                // In the effector's coordinates
+    private float grabY;
+
+    /**
+     * @param maxRotate each joint's rotation limit in degrees either side
+     *                  of its rest pose, as Sprite.setMaxRotate takes it
+     */
+    public IkSolver(float[] maxRotate) {
+        int n = maxRotate.length;
+        this.maxRotate = maxRotate.clone();
+        chain = new int[n];
+        pivotX = new float[n];
+        pivotY = new float[n];
+        jacobianX = new float[n];
+        jacobianY = new float[n];
+        turn = new double[n];
+        locked = new boolean[n];
+    }
+
+    /**
+     * Solves chains of skeletons instantiated from rig, with the rig's
+     * joint limits.
+     */
+    public IkSolver(RigDefinition rig) {
+        this(limitsOf(rig));
+    }
+
+    private static float[] limitsOf(RigDefinition rig) {
+        float[] limits = new float[rig.getPartCount()];
+        for (int part = 0; part < limits.length; part++) {
+            limits[part] = rig.getMaxRotate(part);
+        }
+        return limits;
+    }
+
+    /**
+     * Starts dragging effector by the world point (x, y), which should lie
+     * on it.
+     *
+     * @return false, grabbing nothing, if effector is a root
+     */
+    public boolean grab(Skeleton skeleton, int effector, float x, float y) {
+        release();
+        if (skeleton.getParent(effector) == Skeleton.NO_PARENT) {
+            return false;
+        }
+        int n = 0;
+        for (int j = effector; skeleton.getParent(j) != Skeleton.NO_PARENT; j = skeleton.getParent(j)) {
+            chain[n++] = j;
+        }
+        this.skeleton = skeleton;
+        chainLength = n;
+        grabX = skeleton.toLocalX(effector, x, y);
+        grabY = skeleton.toLocalY(effector, x, y);
+        return true;
+    }
+
+    public void release() {
+        skeleton = null;
+        chainLength = 0;
+    }
+
+    public boolean isGrabbing() {
+        return skeleton != null;
+    }
+
+    public int getEffector() {
+        return chainLength > 0 ? chain[0] : Skeleton.NO_PARENT;
+    }
+
+    /**
+     * Returns the number of joints the grab turns: the effector and its
+     * ancestors below the root.
+     */
+    public int getChainLength() {
+        return chainLength;
+    }
+
+    /**
+     * Turns the chain towards putting the grabbed point at (targetX,
+     * targetY), for at most ITERATIONS steps.
+     *
+     * @return whether the grabbed point ended up within TOLERANCE of the
+     *         target; false while nothing is grabbed
+     */
+    public boolean solve(float targetX, float targetY) {
+        if (skeleton == null) {
+            return false;
+        }
+        float[] world = skeleton.getWorldTransforms();
+        for (int k = 0; k < chainLength; k++) {
+            pivotX[k] = world[chain[k] * 6 + 4];
+            pivotY[k] = world[chain[k] * 6 + 5];
+        }
+        int o = chain[0] * 6;
+        float effectorX = world[o] * grabX + world[o + 2] * grabY + world[o + 4];
+        float effectorY = world[o + 1] * grabX + world[o + 3] * grabY + world[o + 5];
+
+        float tolerance2 = TOLERANCE * TOLERANCE;
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            float errorX = targetX - effectorX;
+            float errorY = targetY - effectorY;
+            if (errorX * errorX + errorY * errorY <= tolerance2) {
+                return true;
+            }
+            for (int k = 0; k < chainLength; k++) {
+                // Turning joint k swings the grabbed point about its pivot
+                jacobianX[k] = pivotY[k] - effectorY;
+                jacobianY[k] = effectorX - pivotX[k];
+                locked[k] = false;
+            }
+            if (!computeTurns(errorX, errorY)) {
+                // Some joints were pushed past their limits; the rest
+                // make up for them
+                computeTurns(errorX, errorY);
+            }
+
+            // Root end first, so each joint turns about where its pivot is now
+            for (int k = chainLength - 1; k >= 0; k--) {
+                int j = chain[k];
+                double current = wrap(skeleton.getRotation(j));
+                double wanted = clamp(current + Math.toDegrees(turn[k]), maxRotate[j]);
+                double applied = wanted - current;
+                if (applied == 0) {
+                    continue;
+                }
+                float r = (float) (wanted < 0 ? wanted + 360 : wanted);
+                skeleton.setRotation(j, r < 360 ? r : 0);
+
+                double rad = Math.toRadians(applied);
+                float cos = (float) Math.cos(rad);
+                float sin = (float) Math.sin(rad);
+                float px = pivotX[k];
+                float py = pivotY[k];
+                for (int m = 0; m < k; m++) {
+                    float rx = pivotX[m] - px;
+                    float ry = pivotY[m] - py;
+                    pivotX[m] = px + cos * rx - sin * ry;
+                    pivotY[m] = py + sin * rx + cos * ry;
+                }
+                float rx = effectorX - px;
+                float ry = effectorY - py;
+                effectorX = px + cos * rx - sin * ry;
+                effectorY = py + sin * rx + cos * ry;
+            }
+        }
+        float errorX = targetX - effectorX;
+        float errorY = targetY - effectorY;
+        return errorX * errorX + errorY * errorY <= tolerance2;
+    }
+
+    /**
+     * Fills turn with the damped least squares step for the unlocked
+     * joints, J^T (J J^T + DAMPING^2 I)^-1 error, limited to MAX_TURN.
+     *
+     * @return false if the step pushes a joint past its limit, which is
+     *         then locked
+     */
+    private boolean computeTurns(float errorX, float errorY) {
+        // J J^T is 2x2, so the inverse is closed-form
+        double a = DAMPING * DAMPING;
+        double b = 0;
+        double c = DAMPING * DAMPING;
+        for (int k = 0; k < chainLength; k++) {
+            if (!locked[k]) {
+                a += jacobianX[k] * jacobianX[k];
+                b += jacobianX[k] * jacobianY[k];
+                c += jacobianY[k] * jacobianY[k];
+            }
+        }
+        double det = a * c - b * b;
+        double wx = (c * errorX - b * errorY) / det;
+        double wy = (a * errorY - b * errorX) / det;
+
+        boolean withinLimits = true;
+        for (int k = 0; k < chainLength; k++) {
+            if (locked[k]) {
+                turn[k] = 0;
+                continue;
+            }
+            double t = jacobianX[k] * wx + jacobianY[k] * wy;
+            t = Math.max(-MAX_TURN, Math.min(MAX_TURN, t));
+            turn[k] = t;
+            float max = maxRotate[chain[k]];
+            double wanted = wrap(skeleton.getRotation(chain[k])) + Math.toDegrees(t);
+            if (max < UNLIMITED && (wanted > max || wanted < -max)) {
+                locked[k] = true;
+                withinLimits = false;
+            }
+        }
+        return withinLimits;
+    }
+
+    /**
+     * Wraps degrees into (-180, 180].
+     */
+    private static double wrap(double degrees) {
+        double d = degrees % 360;
+        if (d > 180) {
+            d -= 360;
+        } else if (d <= -180) {
+            d += 360;
+        }
+        return d;
+    }
+
+    /**
+     * Wraps degrees into (-180, 180] and clamps them to max either way.
+     */
+    private static double clamp(double degrees, float max) {
+        double d = wrap(degrees);
+        if (max >= UNLIMITED) {
+            return d;
+        }
+        return Math.max(-max, Math.min(max, d));
+    }
+}
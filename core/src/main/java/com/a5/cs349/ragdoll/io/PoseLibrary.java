@@ -0,0 +1,294 @@
+package com.a5.cs349.ragdoll.io;
+
+import com.a5.cs349.ragdoll.anim.Clip;
+import com.a5.cs349.ragdoll.scene.PoseSnapshot;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A read-only library of named poses and clips in the binary format
+ * PoseLibraryWriter streams out. The file is memory mapped and nothing
+ * is parsed when it is opened beyond the header and trailer: entries are
+ * found through the offset table and read in place when asked for, and
+ * clips sample straight out of the mapping.
+ *
+ * Layout, little endian, every field four byte aligned:
+ * <pre>
+ * header   int magic "RDPL", short version, short reserved
+ * entries  int kind, int nameLength, UTF-8 name padded to 4, then
+ *   pose   int skeletonCount, per skeleton int jointCount and
+ *          jointCount records of int joint, float rotation,
+ *          float translateX, float translateY, float scale
+ *   clip   float duration, float sampleRate, int sampleCount,
+ *          int trackCount, per track int (joint &lt;&lt; 8 | channel),
+ *          then trackCount * sampleCount float samples
+ * index    long offset per entry
+ * trailer  long indexOffset, int entryCount, int magic
+ * </pre>
+ * Joints are numbered depth-first, as in Skeleton, which for the ragdoll
+ * is the numbering of CanvasView.BodyPart.
+ *
+ * Views only use absolute reads, so one library can be shared between
+ * threads.
+ */
+public final class PoseLibrary {
+    static final int MAGIC = 0x4C504452;                                // "RDPL" in file order
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 16;
+    static final int POSE_RECORD_SIZE = 20;
+    static final int KIND_POSE = 1;
+    static final int KIND_CLIP = 2;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Clip.Channel[] CHANNELS = Clip.Channel.values();
+
+    private final ByteBuffer data;
+    private final int indexOffset;
+    private final int entryCount;
+
+    private PoseLibrary(ByteBuffer data) throws IOException {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        int size = data.limit();
+        if (size < HEADER_SIZE + TRAILER_SIZE || data.getInt(0) != MAGIC
+                || data.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a pose library");
+        }
+        short version = data.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported pose library version " + version);
+        }
+        long index = data.getLong(size - TRAILER_SIZE);
+        entryCount = data.getInt(size - 8);
+        if (entryCount < 0 || index < HEADER_SIZE || index + entryCount * 8L != size - TRAILER_SIZE) {
+            throw new IOException("Corrupt pose library index");
+        }
+        indexOffset = (int) index;
+    }
+
+    /**
+     * Maps a library file. The mapping outlives the file handle, which is
+     * closed before this returns. Libraries are limited to 2 GB.
+     */
+    public static PoseLibrary open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new PoseLibrary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a library from a buffer holding a whole file, e.g. one read
+     * from an asset. The buffer is used in place.
+     */
+    public static PoseLibrary wrap(ByteBuffer data) throws IOException {
+        return new PoseLibrary(data.slice());
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public boolean isPose(int entry) {
+        return data.getInt(offsetOf(entry)) == KIND_POSE;
+    }
+
+    public boolean isClip(int entry) {
+        return data.getInt(offsetOf(entry)) == KIND_CLIP;
+    }
+
+    public String getName(int entry) {
+        int offset = offsetOf(entry);
+        byte[] name = new byte[data.getInt(offset + 4)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = data.get(offset + 8 + i);
+        }
+        return new String(name, UTF_8);
+    }
+
+    /**
+     * Returns the first entry with the given name, or -1. Compares the
+     * encoded names in place rather than decoding each one.
+     */
+    public int indexOf(String name) {
+        byte[] wanted = name.getBytes(UTF_8);
+        for (int entry = 0; entry < entryCount; entry++) {
+            int offset = offsetOf(entry);
+            if (data.getInt(offset + 4) != wanted.length) {
+                continue;
+            }
+            int i = 0;
+            while (i < wanted.length && data.get(offset + 8 + i) == wanted[i]) {
+                i++;
+            }
+            if (i == wanted.length) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a view of a pose entry. Nothing is read until the view is
+     * used.
+     */
+    public Pose getPose(int entry) {
+        int offset = offsetOf(entry);
+        if (data.getInt(offset) != KIND_POSE) {
+            throw new IllegalArgumentException("Entry " + entry + " is not a pose");
+        }
+        return new Pose(data, bodyOf(offset));
+    }
+
+    /**
+     * Returns a clip entry. Its track table is copied, but its samples are
+     * read from the mapping as it plays.
+     */
+    public Clip getClip(int entry) {
+        int offset = offsetOf(entry);
+        if (data.getInt(offset) != KIND_CLIP) {
+            throw new IllegalArgumentException("Entry " + entry + " is not a clip");
+        }
+        int o = bodyOf(offset);
+        float duration = data.getFloat(o);
+        float sampleRate = data.getFloat(o + 4);
+        int sampleCount = data.getInt(o + 8);
+        int trackCount = data.getInt(o + 12);
+        int[] joints = new int[trackCount];
+        Clip.Channel[] channels = new Clip.Channel[trackCount];
+        for (int track = 0; track < trackCount; track++) {
+            int packed = data.getInt(o + 16 + track * 4);
+            joints[track] = packed >>> 8;
+            channels[track] = CHANNELS[packed & 0xFF];
+        }
+        ByteBuffer samples = data.duplicate();
+        int start = o + 16 + trackCount * 4;
+        samples.limit(start + trackCount * sampleCount * 4).position(start);
+        FloatBuffer floats = samples.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        return Clip.wrap(duration, sampleRate, sampleCount, joints, channels, floats);
+    }
+
+    private int offsetOf(int entry) {
+        if (entry < 0 || entry >= entryCount) {
+            throw new IndexOutOfBoundsException("Entry " + entry + " of " + entryCount);
+        }
+        return (int) data.getLong(indexOffset + entry * 8);
+    }
+
+    /**
+     * Skips an entry's kind and name.
+     */
+    private int bodyOf(int offset) {
+        return offset + 8 + pad(data.getInt(offset + 4));
+    }
+
+    static int pad(int length) {
+        return (length + 3) & ~3;
+    }
+
+    /**
+     * A pose entry read in place: one list of joint records per skeleton
+     * it was saved from.
+     */
+    public static final class Pose {
+        private final ByteBuffer data;
+        private final int offset;
+
+        Pose(ByteBuffer data, int offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+
+        public int getSkeletonCount() {
+            return data.getInt(offset);
+        }
+
+        public int getJointCount(int skeleton) {
+            return data.getInt(recordsOf(skeleton) - 4);
+        }
+
+        /**
+         * Poses the joints the entry has records for, leaving any others
+         * alone.
+         *
+         * @throws IllegalArgumentException if a record is for a joint
+         *                                  target does not have
+         */
+        public void restore(int skeleton, Skeleton target) {
+            int o = recordsOf(skeleton);
+            for (int i = 0, n = data.getInt(o - 4); i < n; i++, o += POSE_RECORD_SIZE) {
+                int joint = data.getInt(o);
+                if (joint >= target.getCount()) {
+                    throw new IllegalArgumentException("Pose has joint " + joint
+                            + " but the skeleton only has " + target.getCount());
+                }
+                target.setRotation(joint, data.getFloat(o + 4));
+                target.setTranslate(joint, data.getFloat(o + 8), data.getFloat(o + 12));
+                target.setScale(joint, data.getFloat(o + 16));
+            }
+        }
+
+        /**
+         * Copies the entry into a snapshot. Joints are numbered from 0 up
+         * to the highest one recorded; any without a record get the rest
+         * pose.
+         */
+        public PoseSnapshot toSnapshot() {
+            int skeletons = getSkeletonCount();
+            int[] jointCounts = new int[skeletons];
+            int total = 0;
+            for (int s = 0, o = offset + 4; s < skeletons; s++) {
+                int n = data.getInt(o);
+                o += 4;
+                for (int i = 0; i < n; i++, o += POSE_RECORD_SIZE) {
+                    jointCounts[s] = Math.max(jointCounts[s], data.getInt(o) + 1);
+                }
+                total += jointCounts[s];
+            }
+            float[] poses = new float[total * Skeleton.POSE_STRIDE];
+            for (int p = 3; p < poses.length; p += Skeleton.POSE_STRIDE) {
+                poses[p] = 1;
+            }
+            int base = 0;
+            for (int s = 0, o = offset + 4; s < skeletons; s++) {
+                int n = data.getInt(o);
+                o += 4;
+                for (int i = 0; i < n; i++, o += POSE_RECORD_SIZE) {
+                    int p = base + data.getInt(o) * Skeleton.POSE_STRIDE;
+                    poses[p] = data.getFloat(o + 8);
+                    poses[p + 1] = data.getFloat(o + 12);
+                    poses[p + 2] = data.getFloat(o + 4);
+                    poses[p + 3] = data.getFloat(o + 16);
+                }
+                base += jointCounts[s] * Skeleton.POSE_STRIDE;
+            }
+            return PoseSnapshot.wrap(jointCounts, poses);
+        }
+
+        /**
+         * Returns the offset of a skeleton's first record, just past its
+         * joint count.
+         */
+        private int recordsOf(int skeleton) {
+            if (skeleton < 0 || skeleton >= getSkeletonCount()) {
+                throw new IndexOutOfBoundsException("Skeleton " + skeleton + " of " + getSkeletonCount());
+            }
+            int o = offset + 4;
+            for (int s = 0; s < skeleton; s++) {
+                o += 4 + data.getInt(o) * POSE_RECORD_SIZE;
+            }
+            return o + 4;
+        }
+    }
+}
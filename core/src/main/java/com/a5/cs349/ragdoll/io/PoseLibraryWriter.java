@@ -0,0 +1,167 @@
+package com.a5.cs349.ragdoll.io;
+
+import com.a5.cs349.ragdoll.anim.Clip;
+import com.a5.cs349.ragdoll.scene.PoseSnapshot;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Streams poses and clips out in the PoseLibrary format. Entries go
+ * straight through a small buffer as they are added, so a library of any
+ * size is written in constant memory apart from its offset table, which
+ * follows the entries when the writer is closed.
+ */
+public final class PoseLibraryWriter implements Closeable {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final WritableByteChannel out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private float[] pose = new float[16 * Skeleton.POSE_STRIDE];        // Reused per skeleton
+
+    private long position;                                              // Bytes written, including the buffer
+    private long[] offsets = new long[64];
+    private int entryCount;
+    private boolean closed;
+
+    public PoseLibraryWriter(OutputStream out) throws IOException {
+        this.out = Channels.newChannel(out);
+        buffer.putInt(PoseLibrary.MAGIC);
+        buffer.putShort(PoseLibrary.VERSION);
+        buffer.putShort((short) 0);
+        position = PoseLibrary.HEADER_SIZE;
+    }
+
+    /**
+     * Adds every skeleton of a snapshot, with a record for each joint.
+     */
+    public void writePose(String name, PoseSnapshot snapshot) throws IOException {
+        beginEntry(PoseLibrary.KIND_POSE, name);
+        int skeletons = snapshot.getSkeletonCount();
+        putInt(skeletons);
+        for (int s = 0; s < skeletons; s++) {
+            int joints = snapshot.getJointCount(s);
+            if (pose.length < joints * Skeleton.POSE_STRIDE) {
+                pose = new float[joints * Skeleton.POSE_STRIDE];
+            }
+            snapshot.copyPose(s, pose, 0);
+            putInt(joints);
+            for (int j = 0; j < joints; j++) {
+                int p = j * Skeleton.POSE_STRIDE;
+                ensure(PoseLibrary.POSE_RECORD_SIZE);
+                buffer.putInt(j);
+                buffer.putFloat(pose[p + 2]);
+                buffer.putFloat(pose[p]);
+                buffer.putFloat(pose[p + 1]);
+                buffer.putFloat(pose[p + 3]);
+                position += PoseLibrary.POSE_RECORD_SIZE;
+            }
+        }
+    }
+
+    /**
+     * Adds a clip's baked samples, so it plays back exactly as it does
+     * now.
+     */
+    public void writeClip(String name, Clip clip) throws IOException {
+        beginEntry(PoseLibrary.KIND_CLIP, name);
+        int tracks = clip.getTrackCount();
+        int samples = clip.getSampleCount();
+        putFloat(clip.getDuration());
+        putFloat(clip.getSampleRate());
+        putInt(samples);
+        putInt(tracks);
+        for (int track = 0; track < tracks; track++) {
+            putInt(clip.getTrackJoint(track) << 8 | clip.getTrackChannel(track).ordinal());
+        }
+        for (int track = 0; track < tracks; track++) {
+            for (int s = 0; s < samples; s++) {
+                putFloat(clip.getSample(track, s));
+            }
+        }
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Writes the offset table and trailer and closes the underlying
+     * stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long indexOffset = position;
+            for (int i = 0; i < entryCount; i++) {
+                ensure(8);
+                buffer.putLong(offsets[i]);
+                position += 8;
+            }
+            ensure(PoseLibrary.TRAILER_SIZE);
+            buffer.putLong(indexOffset);
+            buffer.putInt(entryCount);
+            buffer.putInt(PoseLibrary.MAGIC);
+            position += PoseLibrary.TRAILER_SIZE;
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void beginEntry(int kind, String name) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (entryCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, entryCount * 2);
+        }
+        offsets[entryCount++] = position;
+        byte[] encoded = name.getBytes(PoseLibrary.UTF_8);
+        putInt(kind);
+        putInt(encoded.length);
+        int padded = PoseLibrary.pad(encoded.length);
+        for (int i = 0; i < padded; i++) {
+            ensure(1);
+            buffer.put(i < encoded.length ? encoded[i] : 0);
+        }
+        position += padded;
+    }
+
+    private void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+        position += 4;
+    }
+
+    private void putFloat(float value) throws IOException {
+        ensure(4);
+        buffer.putFloat(value);
+        position += 4;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,57 @@
+package com.a5.cs349.ragdoll.io;
+
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads rig files by name and keeps every rig it has read, so each one is
+ * read once and later loads, e.g. switching back to a character, cost a
+ * map lookup. Definitions are immutable, so one loader can be shared by
+ * every view and thread.
+ */
+public final class RigLoader {
+    /**
+     * Opens a rig file by name, e.g. from the app's assets.
+     */
+    public interface Source {
+        InputStream open(String name) throws IOException;
+    }
+
+    private final Source source;
+    private final RigReader.ImageResolver images;
+    private final Map<String, RigDefinition> rigs = new HashMap<>();
+
+    public RigLoader(Source source, RigReader.ImageResolver images) {
+        this.source = source;
+        this.images = images;
+    }
+
+    /**
+     * Returns the rig in the named file, reading it on the first call.
+     */
+    public synchronized RigDefinition load(String name) throws IOException {
+        RigDefinition rig = rigs.get(name);
+        if (rig != null) {
+            return rig;
+        }
+        InputStream in = source.open(name);
+        try {
+            rig = RigReader.read(new InputStreamReader(in, PoseLibrary.UTF_8), images);
+        } catch (IOException e) {
+            throw new IOException(name + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+        rigs.put(name, rig);
+        return rig;
+    }
+
+    public synchronized boolean isLoaded(String name) {
+        return rigs.containsKey(name);
+    }
+}
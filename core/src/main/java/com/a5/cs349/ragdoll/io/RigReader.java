@@ -0,0 +1,257 @@
+package com.a5.cs349.ragdoll.io;
+
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a RigDefinition from the line-based rig format, one line at a
+ * time: each part is added to the definition as soon as its lines are
+ * read, and only the image names are handed out, so the geometry is
+ * complete before any image is decoded.
+ *
+ * A rig file is a version line followed by its parts, depth-first:
+ * <pre>
+ * ragdoll-rig 1
+ * part torso -                     name, then the parent's name or - for the root
+ *     draggable                    dragging moves the rig instead of turning the part
+ *     polygon -83 -57 -40 80 ...   hit shape, packed x, y pairs
+ *     image scyther_body -268 -287 230 287
+ * part left_upper_leg torso
+ *     offset -80.8 173.4           joint position in the parent's coordinates
+ *     limit 90                     largest turn either way, in degrees
+ *     scalable
+ *     rect -91.2 -101.4 22.8 54.6  hit rectangle, left top right bottom
+ *     image scyther_left_upper_leg -91 -101 23 55
+ * </pre>
+ * A part needs a hit shape; the rest is optional, with the defaults of
+ * RigDefinition.Builder. An image is a name and the rectangle, in part
+ * coordinates, it is drawn into. Everything after a # is a comment.
+ */
+public final class RigReader {
+    static final String MAGIC = "ragdoll-rig";
+    static final int VERSION = 1;
+    private static final Pattern SPACE = Pattern.compile("\\s+");
+
+    /**
+     * Turns image names into the keys RigDefinition.getImage returns, e.g.
+     * resource ids.
+     */
+    public interface ImageResolver {
+        int resolve(String image) throws IOException;
+    }
+
+    private final BufferedReader in;
+    private final ImageResolver images;
+    private final RigDefinition.Builder builder = new RigDefinition.Builder();
+    private final Map<String, Integer> parts = new HashMap<>();
+    private int lineNumber;
+
+    // The part being read, added to the builder once its lines are done
+    private String name;
+    private int parent;
+    private PolygonShape shape;
+    private float offsetX;
+    private float offsetY;
+    private float limit;
+    private boolean scalable;
+    private boolean draggable;
+    private int image;
+    private float[] imageBounds;
+
+    private RigReader(Reader in, ImageResolver images) {
+        this.in = new BufferedReader(in);
+        this.images = images;
+    }
+
+    /**
+     * Reads a whole rig. The reader is not closed.
+     *
+     * @throws IOException if in fails, or does not hold a valid rig
+     */
+    public static RigDefinition read(Reader in, ImageResolver images) throws IOException {
+        return new RigReader(in, images).read();
+    }
+
+    private RigDefinition read() throws IOException {
+        String[] header = nextLine();
+        if (header == null || header.length != 2 || !MAGIC.equals(header[0])) {
+            throw error("Not a rig");
+        }
+        if (parseInt(header[1]) != VERSION) {
+            throw error("Unsupported rig version " + header[1]);
+        }
+        String[] fields;
+        while ((fields = nextLine()) != null) {
+            String keyword = fields[0];
+            if (keyword.equals("part")) {
+                expect(fields, 3);
+                endPart();
+                beginPart(fields[1], fields[2]);
+                continue;
+            }
+            if (name == null) {
+                throw error(keyword + " before the first part");
+            }
+            switch (keyword) {
+                case "offset":
+                    expect(fields, 3);
+                    offsetX = parseFloat(fields[1]);
+                    offsetY = parseFloat(fields[2]);
+                    break;
+                case "limit":
+                    expect(fields, 2);
+                    limit = parseFloat(fields[1]);
+                    break;
+                case "scalable":
+                    expect(fields, 1);
+                    scalable = true;
+                    break;
+                case "draggable":
+                    expect(fields, 1);
+                    draggable = true;
+                    break;
+                case "rect":
+                    expect(fields, 5);
+                    setShape(PolygonShape.rectangle(parseFloat(fields[1]), parseFloat(fields[2]),
+                            parseFloat(fields[3]), parseFloat(fields[4])));
+                    break;
+                case "polygon":
+                    if (fields.length < 7 || fields.length % 2 == 0) {
+                        throw error("polygon needs at least three x, y pairs");
+                    }
+                    float[] vertices = new float[fields.length - 1];
+                    for (int i = 0; i < vertices.length; i++) {
+                        vertices[i] = parseFloat(fields[i + 1]);
+                    }
+                    setShape(new PolygonShape(vertices));
+                    break;
+                case "image":
+                    expect(fields, 6);
+                    image = images.resolve(fields[1]);
+                    imageBounds = new float[4];
+                    for (int i = 0; i < 4; i++) {
+                        imageBounds[i] = parseFloat(fields[i + 2]);
+                    }
+                    break;
+                default:
+                    throw error("Unknown keyword " + keyword);
+            }
+        }
+        endPart();
+        if (parts.isEmpty()) {
+            throw error("A rig needs at least one part");
+        }
+        return builder.build();
+    }
+
+    private void beginPart(String partName, String parentName) throws IOException {
+        if (parts.containsKey(partName)) {
+            throw error("Part " + partName + " defined twice");
+        }
+        if (parentName.equals("-")) {
+            parent = Skeleton.NO_PARENT;
+        } else {
+            Integer p = parts.get(parentName);
+            if (p == null) {
+                throw error("Parent " + parentName + " of " + partName + " is not defined above it");
+            }
+            parent = p;
+        }
+        name = partName;
+        shape = null;
+        offsetX = 0;
+        offsetY = 0;
+        limit = 180;
+        scalable = false;
+        draggable = false;
+        image = RigDefinition.NO_IMAGE;
+        imageBounds = null;
+    }
+
+    private void endPart() throws IOException {
+        if (name == null) {
+            return;
+        }
+        if (shape == null) {
+            throw error("Part " + name + " has no rect or polygon");
+        }
+        int part;
+        try {
+            part = builder.addPart(parent, shape);
+        } catch (IllegalArgumentException e) {
+            throw error("Part " + name + " is out of depth-first order");
+        }
+        builder.setOffset(part, offsetX, offsetY)
+                .setMaxRotate(part, limit)
+                .setScalable(part, scalable)
+                .setDraggable(part, draggable);
+        if (imageBounds != null) {
+            builder.setImage(part, image, imageBounds[0], imageBounds[1], imageBounds[2], imageBounds[3]);
+        }
+        parts.put(name, part);
+        name = null;
+    }
+
+    private void setShape(PolygonShape s) throws IOException {
+        if (shape != null) {
+            throw error("Part " + name + " has more than one hit shape");
+        }
+        shape = s;
+    }
+
+    /**
+     * Returns the next line with anything on it, split into fields, or
+     * null at the end.
+     */
+    private String[] nextLine() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                return SPACE.split(line);
+            }
+        }
+        return null;
+    }
+
+    private void expect(String[] fields, int count) throws IOException {
+        if (fields.length != count) {
+            throw error(fields[0] + " takes " + (count - 1) + " values, not " + (fields.length - 1)
+                    + ": " + Arrays.toString(fields));
+        }
+    }
+
+    private float parseFloat(String field) throws IOException {
+        try {
+            return Float.parseFloat(field);
+        } catch (NumberFormatException e) {
+            throw error("Not a number: " + field);
+        }
+    }
+
+    private int parseInt(String field) throws IOException {
+        try {
+            return Integer.parseInt(field);
+        } catch (NumberFormatException e) {
+            throw error("Not an integer: " + field);
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("Line " + lineNumber + ": " + message);
+    }
+}
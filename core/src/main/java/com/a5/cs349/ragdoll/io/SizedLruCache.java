@@ -0,0 +1,117 @@
+package com.a5.cs349.ragdoll.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache that keeps the values it was given most recently used first,
+ * dropping the least recently used ones whenever their total size goes
+ * over a budget. Sizes are in whatever unit sizeOf returns, e.g. bytes.
+ *
+ * A value larger than the whole budget is never kept. Evicted values are
+ * only dropped from the cache, not released: whoever still holds one may
+ * keep using it.
+ *
+ * Thread safe.
+ */
+public abstract class SizedLruCache<K, V> {
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long size;
+    private long evictions;
+
+    protected SizedLruCache(long budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * Returns the size of a value. It must not change while it is cached.
+     */
+    protected abstract long sizeOf(K key, V value);
+
+    /**
+     * Returns the value cached under key, marking it most recently used,
+     * or null.
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches value under key, replacing any value cached under it, then
+     * evicts down to the budget.
+     *
+     * @return false if the value alone is over the budget, so was not kept
+     */
+    public synchronized boolean put(K key, V value) {
+        long valueSize = sizeOf(key, value);
+        if (valueSize < 0) {
+            throw new IllegalStateException("Negative size " + valueSize + " for " + key);
+        }
+        V previous = entries.remove(key);
+        if (previous != null) {
+            size -= sizeOf(key, previous);
+        }
+        if (valueSize > budget) {
+            return false;
+        }
+        entries.put(key, value);
+        size += valueSize;
+        trim();
+        return true;
+    }
+
+    public synchronized V remove(K key) {
+        V value = entries.remove(key);
+        if (value != null) {
+            size -= sizeOf(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Changes the budget, evicting at once if the cache is now over it.
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Negative budget " + budget);
+        }
+        this.budget = budget;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the total size of the cached values.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (size > budget && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            size -= sizeOf(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.a5.cs349.ragdoll.metrics;
+
+import com.a5.cs349.ragdoll.anim.Clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times each phase of a frame, and the latency from a touch to the first
+ * frame presented after it, into LatencyHistograms.
+ *
+ * A phase is timed by bracketing it:
+ *
+ *     long start = metrics.begin();
+ *     ...
+ *     metrics.end(FrameMetrics.Phase.DRAW, start);
+ *
+ * Disabled by default. While disabled, begin returns without reading the
+ * clock and end and the other hooks return after one volatile read, so
+ * the calls can stay in production code. Safe to call from any thread.
+ */
+public final class FrameMetrics {
+    public enum Phase {
+        /** Handling a MotionEvent, hit testing included. */
+        INPUT,
+        /** Finding the sprite under a touch. */
+        HIT_TEST,
+        /** Applying batched input and stepping animation and physics. */
+        UPDATE,
+        /** Traversing the sprites to draw them. */
+        DRAW
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final long OFF = Long.MIN_VALUE;
+    private static final double NANOS_PER_MS = 1e6;
+
+    private final Clock clock;
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // The time of the oldest touch not yet presented, or 0 if none.
+    private final AtomicLong pendingInput = new AtomicLong();
+    private volatile boolean enabled;
+
+    public FrameMetrics() {
+        this(Clock.SYSTEM);
+    }
+
+    public FrameMetrics(Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            pendingInput.set(0);
+        }
+    }
+
+    /**
+     * Starts timing a phase, returning the token to pass to end.
+     */
+    public long begin() {
+        return enabled ? clock.nanoTime() : OFF;
+    }
+
+    /**
+     * Records the time since begin returned start, unless metrics were
+     * disabled then.
+     */
+    public void end(Phase phase, long start) {
+        if (start != OFF) {
+            phases[phase.ordinal()].record(clock.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Notes a touch made at eventNanos, on the same clock as this one. Only
+     * the oldest touch since the last presented frame counts, since it
+     * waited longest.
+     */
+    public void onInput(long eventNanos) {
+        if (enabled && eventNanos != 0) {
+            pendingInput.compareAndSet(0, eventNanos);
+        }
+    }
+
+    /**
+     * Notes that a frame reached the screen, recording the latency of the
+     * touch it showed, if any.
+     */
+    public void onPresented() {
+        if (enabled) {
+            long input = pendingInput.getAndSet(0);
+            if (input != 0) {
+                latency.record(clock.nanoTime() - input);
+            }
+        }
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Returns the touch-to-present latencies.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : phases) {
+            histogram.reset();
+        }
+        latency.reset();
+        pendingInput.set(0);
+    }
+
+    /**
+     * Appends one line per phase, then one for latency, each giving the
+     * p50, p99 and max in milliseconds.
+     */
+    public StringBuilder appendSummary(StringBuilder out) {
+        for (Phase phase : PHASES) {
+            appendLine(out, phase.name(), phases[phase.ordinal()]);
+        }
+        appendLine(out, "LATENCY", latency);
+        return out;
+    }
+
+    private static void appendLine(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(name).append(" p50 ");
+        appendMillis(out, histogram.getPercentile(50));
+        out.append(" p99 ");
+        appendMillis(out, histogram.getPercentile(99));
+        out.append(" max ");
+        appendMillis(out, histogram.getMax());
+        out.append(" ms (").append(histogram.getCount()).append(")\n");
+    }
+
+    // Two decimals without going through Double.toString or a Formatter.
+    private static void appendMillis(StringBuilder out, long nanos) {
+        long hundredths = Math.round(nanos / (NANOS_PER_MS / 100));
+        out.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    @Override
+    public String toString() {
+        return appendSummary(new StringBuilder()).toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.a5.cs349.ragdoll.metrics;
+
+/**
+ * Counts the touch input that reaches the view against the updates it
+ * actually causes. With batching, many events and samples should collapse
+ * into at most a few updates per frame.
+ *
+ * Not thread safe; record and read from the UI thread.
+ */
+public final class InputMetrics {
+    private long events;
+    private long samples;
+    private long frames;
+    private long updates;
+    private int frameEvents;
+    private int frameSamples;
+    private int lastFrameEvents;
+    private int lastFrameSamples;
+    private int lastFrameUpdates;
+    private int maxFrameEvents;
+
+    /**
+     * Records one MotionEvent carrying the given number of samples,
+     * historical ones included.
+     */
+    public void onEvent(int sampleCount) {
+        events++;
+        samples += sampleCount;
+        frameEvents++;
+        frameSamples += sampleCount;
+    }
+
+    /**
+     * Records a batch being applied, and the number of updates (drag,
+     * rotate or scale steps) it ran.
+     */
+    public void onBatch(int updateCount) {
+        frames++;
+        updates += updateCount;
+        lastFrameEvents = frameEvents;
+        lastFrameSamples = frameSamples;
+        lastFrameUpdates = updateCount;
+        maxFrameEvents = Math.max(maxFrameEvents, frameEvents);
+        frameEvents = 0;
+        frameSamples = 0;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public int getLastFrameEvents() {
+        return lastFrameEvents;
+    }
+
+    public int getLastFrameSamples() {
+        return lastFrameSamples;
+    }
+
+    public int getLastFrameUpdates() {
+        return lastFrameUpdates;
+    }
+
+    public int getMaxFrameEvents() {
+        return maxFrameEvents;
+    }
+
+    /**
+     * Updates applied per event received; below 1 means batching saved
+     * work.
+     */
+    public float getUpdatesPerEvent() {
+        return events == 0 ? 0 : (float) updates / events;
+    }
+
+    public void reset() {
+        events = 0;
+        samples = 0;
+        frames = 0;
+        updates = 0;
+        frameEvents = 0;
+        frameSamples = 0;
+        lastFrameEvents = 0;
+        lastFrameSamples = 0;
+        lastFrameUpdates = 0;
+        maxFrameEvents = 0;
+    }
+
+    @Override
+    public String toString() {
+        return events + " events (" + samples + " samples) -> " + updates + " updates over "
+                + frames + " frames, max " + maxFrameEvents + " events/frame";
+    }
+}
@@ -0,0 +1,106 @@
+package com.a5.cs349.ragdoll.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in nanoseconds into log-linear buckets: every power of
+ * two is split into SUB_BUCKETS equal buckets, so a percentile read back
+ * is within 1 / SUB_BUCKETS of the true value, from nanoseconds up to the
+ * full range of a long, in under a thousand counters.
+ *
+ * Lock free: any number of threads may record while another reads.
+ * Recording is a few shifts and one atomic increment, and never
+ * allocates. A read taken while others record sees each count either
+ * before or after a given record, not a consistent snapshot.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BITS + 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration; negative ones count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the longest duration recorded, exactly.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration that percent of the recorded ones are at or
+     * below, e.g. 50 for the median, rounded up to its bucket's upper
+     * bound but never above getMax. Returns 0 if nothing was recorded.
+     */
+    public long getPercentile(double percent) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each; above that, the top
+     * SUB_BITS + 1 bits of the value pick the bucket.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> SUB_BITS) - 1;
+        long mantissa = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        long bound = ((mantissa + 1) << shift) - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+
+    @Override
+    public String toString() {
+        return "p50 " + getPercentile(50) + " ns, p99 " + getPercentile(99) + " ns, max "
+                + getMax() + " ns over " + getCount();
+    }
+}
@@ -0,0 +1,221 @@
+package com.a5.cs349.ragdoll.physics;
+
+import com.a5.cs349.ragdoll.anim.Clock;
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps a set of VerletBodies at a fixed rate against a clock. However
+ * unevenly update is called, the bodies only ever advance in whole
+ * STEP_SECONDS steps, so the simulation behaves the same at any frame
+ * rate; time left over carries into the next update.
+ *
+ * Given a pool, update splits the bodies into chunks and steps the chunks
+ * in parallel, returning once every one is done. A body only reads and
+ * writes its own particles and skeleton, and always takes the same steps
+ * in the same order, so the result is bit for bit the same on any number
+ * of threads. Bodies must therefore not share a skeleton.
+ *
+ * Not thread safe otherwise; add, update and touch the bodies' skeletons
+ * from one thread.
+ */
+public final class PhysicsWorld {
+    public static final float STEP_SECONDS = 1f / 120;
+    public static final float DEFAULT_GRAVITY = 2000;                   // Pixels per second squared
+    private static final long STEP_NANOS = (long) (STEP_SECONDS * 1e9);
+    private static final int MAX_STEPS_PER_UPDATE = 8;                  // Beyond this, fall behind instead
+    private static final int CHUNKS_PER_THREAD = 4;                     // So held and sleeping bodies even out
+
+    private final Clock clock;
+    private final ForkJoinPool pool;                                    // Null to step on the calling thread
+    private final Bounds limits = new Bounds();
+    private float gravityX = 0;
+    private float gravityY = DEFAULT_GRAVITY;
+
+    private int count = 0;
+    private VerletBody[] bodies = new VerletBody[8];
+
+    private long lastNanos;
+    private long pendingNanos;
+    private boolean idle;
+
+    private int steps;                                                  // Due in the update running now
+    private StepChunk[] chunks = new StepChunk[0];
+    private final StepAll stepAll = new StepAll();
+
+    public PhysicsWorld(Clock clock) {
+        this(clock, null);
+    }
+
+    /**
+     * @param pool steps the bodies in parallel, or null to step them one
+     *             after another on the thread calling update
+     */
+    public PhysicsWorld(Clock clock, ForkJoinPool pool) {
+        this.clock = clock;
+        this.pool = pool;
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        lastNanos = clock.nanoTime();
+        idle = true;
+    }
+
+    /**
+     * Sets the box no particle may leave, e.g. the view, whose bottom
+     * edge is the floor.
+     */
+    public void setLimits(float left, float top, float right, float bottom) {
+        limits.set(left, top, right, bottom);
+    }
+
+    public void setGravity(float x, float y) {
+        gravityX = x;
+        gravityY = y;
+    }
+
+    public void add(VerletBody body) {
+        if (count == bodies.length) {
+            bodies = Arrays.copyOf(bodies, count * 2);
+        }
+        bodies[count++] = body;
+    }
+
+    public void remove(VerletBody body) {
+        for (int i = 0; i < count; i++) {
+            if (bodies[i] == body) {
+                System.arraycopy(bodies, i + 1, bodies, i, count - i - 1);
+                bodies[--count] = null;
+                return;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(bodies, 0, count, null);
+        count = 0;
+    }
+
+    public int getBodyCount() {
+        return count;
+    }
+
+    public VerletBody getBody(int i) {
+        return bodies[i];
+    }
+
+    /**
+     * Returns the body simulating skeleton, or null.
+     */
+    public VerletBody find(Skeleton skeleton) {
+        for (int i = 0; i < count; i++) {
+            if (bodies[i].getSkeleton() == skeleton) {
+                return bodies[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs every fixed step due since the last update. Time that passed
+     * with nothing simulating, e.g. while every body was held or asleep,
+     * is skipped rather than caught up.
+     *
+     * @return whether any body is still moving
+     */
+    public boolean update() {
+        long now = clock.nanoTime();
+        pendingNanos = idle ? 0 : pendingNanos + now - lastNanos;
+        lastNanos = now;
+        steps = (int) Math.min(pendingNanos / STEP_NANOS, MAX_STEPS_PER_UPDATE);
+        pendingNanos = steps == MAX_STEPS_PER_UPDATE ? 0 : pendingNanos - steps * STEP_NANOS;
+
+        boolean simulating;
+        if (pool == null || count < 2) {
+            simulating = stepRange(0, count);
+        } else {
+            simulating = stepParallel();
+        }
+        idle = !simulating;
+        return simulating;
+    }
+
+    /**
+     * Takes the steps due on bodies from up to but not including to.
+     *
+     * @return whether any of them is still moving
+     */
+    private boolean stepRange(int from, int to) {
+        boolean simulating = false;
+        for (int i = from; i < to; i++) {
+            VerletBody body = bodies[i];
+            if (!body.isSimulating()) {
+                continue;
+            }
+            for (int s = 0; s < steps; s++) {
+                body.step(STEP_SECONDS, gravityX, gravityY, limits);
+            }
+            simulating |= body.isSimulating();
+        }
+        return simulating;
+    }
+
+    private boolean stepParallel() {
+        int chunkCount = Math.min(count, pool.getParallelism() * CHUNKS_PER_THREAD);
+        if (chunks.length != chunkCount) {
+            // Only when bodies come or go, never frame to frame
+            chunks = new StepChunk[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                chunks[c] = new StepChunk();
+            }
+        }
+        for (int c = 0; c < chunkCount; c++) {
+            chunks[c].from = (int) ((long) count * c / chunkCount);
+            chunks[c].to = (int) ((long) count * (c + 1) / chunkCount);
+            chunks[c].reinitialize();
+        }
+        stepAll.reinitialize();
+        pool.invoke(stepAll);
+
+        boolean simulating = false;
+        for (int c = 0; c < chunkCount; c++) {
+            simulating |= chunks[c].simulating;
+        }
+        return simulating;
+    }
+
+    /**
+     * Forks every chunk but the first, steps that one itself, then joins
+     * the rest.
+     */
+    private final class StepAll extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (int c = chunks.length - 1; c > 0; c--) {
+                chunks[c].fork();
+            }
+            chunks[0].invoke();
+            for (int c = 1; c < chunks.length; c++) {
+                chunks[c].join();
+            }
+        }
+    }
+
+    private final class StepChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int from;
+        int to;
+        boolean simulating;
+
+        @Override
+        protected void compute() {
+            simulating = stepRange(from, to);
+        }
+    }
+}
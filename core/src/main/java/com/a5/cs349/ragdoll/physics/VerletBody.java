@@ -0,0 +1,462 @@
+package com.a5.cs349.ragdoll.physics;
+
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+
+/**
+ * One skeleton simulated as a ragdoll with position-based Verlet
+ * integration.
+ *
+ * Every joint becomes a rigid body made of two particles: its pivot (the
+ * joint's origin) and a tip at a corner of its hit bounds, as far from
+ * the pivot as its children allow. Distance constraints keep each body's
+ * tip at its length, and pin every child's pivot to its parent's pivot,
+ * its parent's tip and its previous sibling's pivot, which holds it in
+ * the parent's frame the way the scene graph does. An angular constraint keeps each joint's rotation
+ * relative to its parent within its maxRotate. At the end of every step
+ * the bodies' angles are written into the skeleton as joint rotations,
+ * clamped to the limits, and the root's pivot as its translation, so the
+ * skeleton stays the only pose anything draws or hit tests.
+ *
+ * All state lives in primitive arrays sized up front; step does not
+ * allocate.
+ */
+public final class VerletBody {
+    private static final int ITERATIONS = 8;
+    private static final float DAMPING = 0.99f;                        // Velocity kept per step
+    private static final float FRICTION = 0.8f;                        // Sliding velocity kept on contact
+    private static final float STATIC_FRICTION = 0.5f;                 // Slower sliding than this stops, pixels per step
+    private static final float MIN_TIP = 8;                             // Tip distance for joints without bounds
+    private static final float MIN_PIN_SIN = 0.25f;                    // Children's pivots this far off a tip's line
+    private static final float SLEEP_DISTANCE = 0.15f;                 // Pixels per step
+    private static final int SLEEP_STEPS = 60;
+    private static final float PI = (float) Math.PI;
+    private static final float TWO_PI = 2 * PI;
+
+    private final Skeleton skeleton;
+    private final int jointCount;
+    private final int[] parent;
+    private final float[] maxRotate;                                    // Radians; PI or more is unlimited
+    private final float[] tipX;                                         // In the joint's coordinates
+    private final float[] tipY;
+    private final float[] turnShare;                                    // Of a limit correction the joint takes
+
+    // Particle 2j is joint j's pivot, 2j + 1 its tip
+    private final float[] x;
+    private final float[] y;
+    private final float[] prevX;
+    private final float[] prevY;
+
+    private final int constraintCount;
+    private final int[] constraintA;
+    private final int[] constraintB;
+    private final float[] restLength;
+
+    private final float[] side;                                         // Which side of its parent's axis a pivot sits
+    private final float[] bias;                                         // Body angle minus world rotation, radians
+    private final float[] worldAngle;                                   // Scratch for writePose
+
+    private boolean held;
+    private boolean awake;
+    private int stillSteps;
+
+    /**
+     * @param maxRotate each joint's rotation limit in degrees either side
+     *                  of its rest pose, as Sprite.setMaxRotate takes it
+     */
+    public VerletBody(Skeleton skeleton, float[] maxRotate) {
+        this.skeleton = skeleton;
+        jointCount = skeleton.getCount();
+        parent = new int[jointCount];
+        this.maxRotate = new float[jointCount];
+        tipX = new float[jointCount];
+        tipY = new float[jointCount];
+        turnShare = new float[jointCount];
+        x = new float[jointCount * 2];
+        y = new float[jointCount * 2];
+        prevX = new float[jointCount * 2];
+        prevY = new float[jointCount * 2];
+        side = new float[jointCount];
+        bias = new float[jointCount];
+        worldAngle = new float[jointCount];
+
+        Bounds b = new Bounds();
+        int[] lastChild = new int[jointCount];
+        int constraints = 0;
+        for (int j = 0; j < jointCount; j++) {
+            parent[j] = skeleton.getParent(j);
+            this.maxRotate[j] = (float) Math.toRadians(maxRotate[j]);
+            lastChild[j] = Skeleton.NO_PARENT;
+            setTip(j, b);
+            constraints += 1;
+            int p = parent[j];
+            if (p != Skeleton.NO_PARENT) {
+                constraints += lastChild[p] == Skeleton.NO_PARENT ? 2 : 3;
+                lastChild[p] = j;
+            }
+        }
+
+        for (int j = 0; j < jointCount; j++) {
+            int p = parent[j];
+            if (p != Skeleton.NO_PARENT) {
+                float child = tipX[j] * tipX[j] + tipY[j] * tipY[j];
+                float own = tipX[p] * tipX[p] + tipY[p] * tipY[p];
+                turnShare[j] = own / (own + child);
+            }
+        }
+
+        constraintCount = constraints;
+        constraintA = new int[constraints];
+        constraintB = new int[constraints];
+        restLength = new float[constraints];
+        int c = 0;
+        for (int j = 0; j < jointCount; j++) {
+            lastChild[j] = Skeleton.NO_PARENT;
+        }
+        for (int j = 0; j < jointCount; j++) {
+            c = addConstraint(c, 2 * j, 2 * j + 1);
+            int p = parent[j];
+            if (p != Skeleton.NO_PARENT) {
+                c = addConstraint(c, 2 * p, 2 * j);
+                c = addConstraint(c, 2 * p + 1, 2 * j);
+                if (lastChild[p] != Skeleton.NO_PARENT) {
+                    c = addConstraint(c, 2 * lastChild[p], 2 * j);
+                }
+                lastChild[p] = j;
+            }
+        }
+        sync();
+    }
+
+    /**
+     * Picks a joint's tip: the corner of its hit bounds farthest from the
+     * pivot, which gives the body's angle the longest lever, unless one of
+     * its children's pivots lies near the line from the pivot to it. The
+     * two distances pinning that child to the joint then hold it only
+     * loosely across the line, and the child swings the joint about, so
+     * the longest corner keeping every child's pivot well off its line is
+     * taken instead.
+     */
+    private void setTip(int joint, Bounds b) {
+        float bestX = 0;
+        float bestY = MIN_TIP;
+        float bestLength = MIN_TIP * MIN_TIP;
+        float bestSin = -1;
+        skeleton.getLocalBounds(joint, b);
+        for (int corner = 0; corner < 4 && !b.isEmpty(); corner++) {
+            float cx = (corner & 1) == 0 ? b.right : b.left;
+            float cy = (corner & 2) == 0 ? b.bottom : b.top;
+            float length = cx * cx + cy * cy;
+            if (length < MIN_TIP * MIN_TIP) {
+                continue;
+            }
+            float sin = Math.min(childSin(joint, cx, cy), MIN_PIN_SIN);
+            if (sin > bestSin || sin == bestSin && length > bestLength) {
+                bestX = cx;
+                bestY = cy;
+                bestLength = length;
+                bestSin = sin;
+            }
+        }
+        tipX[joint] = bestX;
+        tipY[joint] = bestY;
+    }
+
+    /**
+     * Returns the smallest sine of the angle between a joint's axis, pivot
+     * to (tipX, tipY), and the offset of any of its children's pivots, or
+     * 1 if it has no children off its pivot.
+     */
+    private float childSin(int joint, float tipX, float tipY) {
+        float sin = 1;
+        float tipLength = (float) Math.sqrt(tipX * tipX + tipY * tipY);
+        for (int child = joint + 1; child < jointCount; child++) {
+            if (skeleton.getParent(child) != joint) {
+                continue;
+            }
+            float dx = skeleton.getTranslateX(child);
+            float dy = skeleton.getTranslateY(child);
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            if (length < 1e-3f) {
+                continue;
+            }
+            sin = Math.min(sin, Math.abs(tipX * dy - tipY * dx) / (tipLength * length));
+        }
+        return sin;
+    }
+
+    /**
+     * Simulates a skeleton instantiated from rig, with the rig's joint
+     * limits.
+     */
+    public VerletBody(Skeleton skeleton, RigDefinition rig) {
+        this(skeleton, limitsOf(rig));
+    }
+
+    private static float[] limitsOf(RigDefinition rig) {
+        float[] limits = new float[rig.getPartCount()];
+        for (int part = 0; part < limits.length; part++) {
+            limits[part] = rig.getMaxRotate(part);
+        }
+        return limits;
+    }
+
+    private int addConstraint(int c, int a, int b) {
+        constraintA[c] = a;
+        constraintB[c] = b;
+        return c + 1;
+    }
+
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * Whether the body is being stepped: it is neither held nor asleep.
+     */
+    public boolean isSimulating() {
+        return awake && !held;
+    }
+
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * Takes the body out of the simulation while something else, such as
+     * a drag, poses the skeleton. Letting go picks up the skeleton's pose
+     * as it is then, at rest, and lets it fall from there.
+     */
+    public void setHeld(boolean held) {
+        if (this.held && !held) {
+            sync();
+        }
+        this.held = held;
+    }
+
+    /**
+     * Restarts the simulation from the skeleton's current pose, at rest.
+     * Call after posing the skeleton by other means.
+     */
+    public void sync() {
+        readPose();
+        for (int j = 0; j < jointCount; j++) {
+            bias[j] = bodyAngle(j) - (float) Math.toRadians(skeleton.getWorldRotation(j));
+            side[j] = parent[j] == Skeleton.NO_PARENT ? 0 : Math.signum(cross(parent[j], j));
+        }
+        System.arraycopy(x, 0, prevX, 0, x.length);
+        System.arraycopy(y, 0, prevY, 0, y.length);
+        for (int c = 0; c < constraintCount; c++) {
+            float dx = x[constraintB[c]] - x[constraintA[c]];
+            float dy = y[constraintB[c]] - y[constraintA[c]];
+            restLength[c] = (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        awake = true;
+        stillSteps = 0;
+    }
+
+    /**
+     * Advances the simulation by dt seconds under the given acceleration,
+     * keeping the particles inside limits, and poses the skeleton to
+     * match. Does nothing unless isSimulating.
+     */
+    public void step(float dt, float gravityX, float gravityY, Bounds limits) {
+        if (!isSimulating()) {
+            return;
+        }
+        float ax = gravityX * dt * dt;
+        float ay = gravityY * dt * dt;
+        for (int i = 0, n = jointCount * 2; i < n; i++) {
+            float vx = (x[i] - prevX[i]) * DAMPING;
+            float vy = (y[i] - prevY[i]) * DAMPING;
+            prevX[i] = x[i];
+            prevY[i] = y[i];
+            x[i] += vx + ax;
+            y[i] += vy + ay;
+        }
+        for (int k = 0; k < ITERATIONS; k++) {
+            satisfyDistances();
+            unflip();
+            satisfyLimits();
+            collide(limits);
+        }
+        writePose();
+
+        float moved = 0;
+        for (int i = 0, n = jointCount * 2; i < n; i++) {
+            if (y[i] >= limits.bottom || y[i] <= limits.top) {
+                prevX[i] = x[i] - friction(x[i] - prevX[i]);
+            }
+            if (x[i] >= limits.right || x[i] <= limits.left) {
+                prevY[i] = y[i] - friction(y[i] - prevY[i]);
+            }
+            moved = Math.max(moved, Math.abs(x[i] - prevX[i]) + Math.abs(y[i] - prevY[i]));
+        }
+        if (moved < SLEEP_DISTANCE) {
+            if (++stillSteps >= SLEEP_STEPS) {
+                awake = false;
+            }
+        } else {
+            stillSteps = 0;
+        }
+    }
+
+    /**
+     * Returns what is left of a velocity sliding along a limit.
+     */
+    private static float friction(float v) {
+        return Math.abs(v) < STATIC_FRICTION ? 0 : v * FRICTION;
+    }
+
+    private void satisfyDistances() {
+        for (int c = 0; c < constraintCount; c++) {
+            int a = constraintA[c];
+            int b = constraintB[c];
+            float dx = x[b] - x[a];
+            float dy = y[b] - y[a];
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            if (length < 1e-6f) {
+                continue;
+            }
+            // Equal masses: each end takes half the correction
+            float k = (length - restLength[c]) / length * 0.5f;
+            x[a] += dx * k;
+            y[a] += dy * k;
+            x[b] -= dx * k;
+            y[b] -= dy * k;
+        }
+    }
+
+    /**
+     * Two distances pin a child's pivot to its parent up to a mirror image
+     * across the parent's axis. A hard knock can push a pivot through that
+     * axis, where the distances would happily hold it; reflect it back.
+     */
+    private void unflip() {
+        for (int j = 0; j < jointCount; j++) {
+            int p = parent[j];
+            if (side[j] == 0 || Math.signum(cross(p, j)) != -side[j]) {
+                continue;
+            }
+            int pivot = 2 * p;
+            float ax = x[pivot + 1] - x[pivot];
+            float ay = y[pivot + 1] - y[pivot];
+            float dx = x[2 * j] - x[pivot];
+            float dy = y[2 * j] - y[pivot];
+            float k = 2 * (ax * dx + ay * dy) / (ax * ax + ay * ay);
+            x[2 * j] = x[pivot] + ax * k - dx;
+            y[2 * j] = y[pivot] + ay * k - dy;
+        }
+    }
+
+    /**
+     * Returns the cross product of parent's axis (pivot to tip) with the
+     * offset from parent's pivot to child's.
+     */
+    private float cross(int parent, int child) {
+        int pivot = 2 * parent;
+        float ax = x[pivot + 1] - x[pivot];
+        float ay = y[pivot + 1] - y[pivot];
+        return ax * (y[2 * child] - y[pivot]) - ay * (x[2 * child] - x[pivot]);
+    }
+
+    /**
+     * Turns any joint past its limit back onto it, splitting the turn
+     * between the joint's body and its parent's so the shorter one turns
+     * more. Turning a long body, such as a hand, as far as the short
+     * forearm holding it would throw its tip across the view.
+     */
+    private void satisfyLimits() {
+        for (int j = 0; j < jointCount; j++) {
+            int p = parent[j];
+            if (p == Skeleton.NO_PARENT || maxRotate[j] >= PI) {
+                continue;
+            }
+            float local = wrap(bodyAngle(j) - bodyAngle(p) - bias[j] + bias[p]);
+            float correction;
+            if (local > maxRotate[j]) {
+                correction = maxRotate[j] - local;
+            } else if (local < -maxRotate[j]) {
+                correction = -maxRotate[j] - local;
+            } else {
+                continue;
+            }
+            float share = turnShare[j];
+            turnTip(j, correction * share);
+            turnTip(p, -correction * (1 - share));
+        }
+    }
+
+    private void turnTip(int joint, float radians) {
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        int pivot = 2 * joint;
+        int tip = pivot + 1;
+        float dx = x[tip] - x[pivot];
+        float dy = y[tip] - y[pivot];
+        x[tip] = x[pivot] + dx * cos - dy * sin;
+        y[tip] = y[pivot] + dx * sin + dy * cos;
+    }
+
+    private void collide(Bounds limits) {
+        for (int i = 0, n = jointCount * 2; i < n; i++) {
+            x[i] = Math.max(limits.left, Math.min(x[i], limits.right));
+            y[i] = Math.max(limits.top, Math.min(y[i], limits.bottom));
+        }
+    }
+
+    private float bodyAngle(int joint) {
+        int pivot = 2 * joint;
+        return (float) Math.atan2(y[pivot + 1] - y[pivot], x[pivot + 1] - x[pivot]);
+    }
+
+    /**
+     * Wraps an angle into [-PI, PI).
+     */
+    private static float wrap(float radians) {
+        return radians - TWO_PI * (float) Math.floor((radians + PI) / TWO_PI);
+    }
+
+    /**
+     * Poses the skeleton as the bodies lie: every joint's rotation, kept in
+     * [0, 360) as Skeleton.rotate keeps it, and the root's translation.
+     * The constraints are solved iteratively, so a joint can end a step a
+     * little past its limit; the rotation written is clamped to it.
+     */
+    private void writePose() {
+        for (int j = 0; j < jointCount; j++) {
+            worldAngle[j] = bodyAngle(j) - bias[j];
+            int p = parent[j];
+            float local = p == Skeleton.NO_PARENT ? worldAngle[j] : wrap(worldAngle[j] - worldAngle[p]);
+            if (p != Skeleton.NO_PARENT && maxRotate[j] < PI) {
+                local = Math.max(-maxRotate[j], Math.min(local, maxRotate[j]));
+                worldAngle[j] = worldAngle[p] + local;
+            }
+            float degrees = (float) Math.toDegrees(wrap(local));
+            if (degrees < 0) {
+                degrees += 360;
+            }
+            skeleton.setRotation(j, degrees);
+            if (p == Skeleton.NO_PARENT) {
+                skeleton.setTranslate(j, x[2 * j], y[2 * j]);
+            }
+        }
+    }
+
+    /**
+     * Puts every particle where the skeleton's pose has it.
+     */
+    private void readPose() {
+        float[] world = skeleton.getWorldTransforms();
+        for (int j = 0; j < jointCount; j++) {
+            int o = j * 6;
+            float px = world[o + 4];
+            float py = world[o + 5];
+            x[2 * j] = px;
+            y[2 * j] = py;
+            x[2 * j + 1] = world[o] * tipX[j] + world[o + 2] * tipY[j] + px;
+            y[2 * j + 1] = world[o + 1] * tipX[j] + world[o + 3] * tipY[j] + py;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.a5.cs349.ragdoll.scene;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands whole-scene draw poses from the thread that updates the scene to
+ * the thread that draws it, without locks and without either side ever
+ * seeing a frame that is still being written.
+ *
+ * Every Writer and every Reader owns one Frame, and one more sits in a
+ * shared slot holding the latest published pose. Publishing and acquiring
+ * are a single atomic exchange with that slot, so a frame always belongs
+ * to exactly one party: the writer filling it, the slot, or the reader
+ * drawing it. Any number of writers and readers can share a buffer; each
+ * extra one costs one more frame.
+ */
+public final class PoseBuffer {
+    private static final int AFFINE = 6;
+
+    private final AtomicReference<Frame> latest = new AtomicReference<>(new Frame());
+    private final AtomicLong sequence = new AtomicLong();
+
+    public Writer newWriter() {
+        return new Writer();
+    }
+
+    public Reader newReader() {
+        return new Reader();
+    }
+
+    /**
+     * The draw transforms of every joint in a scene, at one instant. A
+     * reader may use a frame until its next acquire; nothing else touches
+     * it meanwhile.
+     */
+    public static final class Frame {
+        private volatile long sequence;                                 // Readers peek at it before taking the frame
+        private int jointCount;
+        private float[] transforms = new float[16 * AFFINE];
+        private int[] parts = new int[16];
+
+        /**
+         * Increases with every publish; 0 for the empty frame readers
+         * start with.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public int getJointCount() {
+            return jointCount;
+        }
+
+        /**
+         * Returns the packed draw transforms, six floats (a, b, c, d, tx,
+         * ty) per joint, with each joint's image stretch already applied.
+         * Callers must not modify it.
+         */
+        public float[] getTransforms() {
+            return transforms;
+        }
+
+        /**
+         * Returns which part of its skeleton a joint is, i.e. which image
+         * to draw for it.
+         */
+        public int getPart(int joint) {
+            return parts[joint];
+        }
+
+        private void ensureCapacity(int joints) {
+            if (joints > parts.length) {
+                int capacity = Math.max(joints, parts.length * 2);
+                transforms = Arrays.copyOf(transforms, capacity * AFFINE);
+                parts = Arrays.copyOf(parts, capacity);
+            }
+        }
+    }
+
+    /**
+     * Fills a private frame, then publishes it. Not thread safe; use one
+     * writer per thread.
+     */
+    public final class Writer {
+        private Frame back = new Frame();
+
+        private Writer() {
+        }
+
+        /**
+         * Starts a new frame with no joints.
+         */
+        public void begin() {
+            back.jointCount = 0;
+        }
+
+        /**
+         * Appends one joint's draw transform.
+         */
+        public void addJoint(int part, float a, float b, float c, float d, float tx, float ty) {
+            int j = back.jointCount;
+            back.ensureCapacity(j + 1);
+            int o = j * AFFINE;
+            float[] t = back.transforms;
+            t[o] = a;
+            t[o + 1] = b;
+            t[o + 2] = c;
+            t[o + 3] = d;
+            t[o + 4] = tx;
+            t[o + 5] = ty;
+            back.parts[j] = part;
+            back.jointCount = j + 1;
+        }
+
+        /**
+         * Appends every joint of skeleton, in order, with the transform
+         * Sprite.draw would use for it.
+         */
+        public void addSkeleton(Skeleton skeleton) {
+            float[] world = skeleton.getWorldTransforms();
+            for (int j = 0, n = skeleton.getCount(); j < n; j++) {
+                int o = j * AFFINE;
+                float scale = skeleton.getEffectiveScale(j);
+                addJoint(j, world[o], world[o + 1], world[o + 2] * scale, world[o + 3] * scale,
+                        world[o + 4], world[o + 5]);
+            }
+        }
+
+        /**
+         * Makes the frame built since begin the latest one. The writer gets
+         * an unused frame back to fill next.
+         *
+         * @return the published frame's sequence number
+         */
+        public long publish() {
+            long s = sequence.incrementAndGet();
+            back.sequence = s;
+            back = latest.getAndSet(back);
+            return s;
+        }
+    }
+
+    /**
+     * Takes the latest published frame. Not thread safe; use one reader per
+     * thread.
+     */
+    public final class Reader {
+        private Frame front = new Frame();
+
+        private Reader() {
+        }
+
+        /**
+         * Returns the newest frame published, or the frame returned last
+         * time if nothing newer has been. With several readers, another
+         * reader may have left an older frame in the slot, so a reader can
+         * occasionally step back a frame; it never gets a partial one.
+         */
+        public Frame acquire() {
+            if (latest.get().sequence > front.sequence) {
+                front = latest.getAndSet(front);
+            }
+            return front;
+        }
+    }
+}
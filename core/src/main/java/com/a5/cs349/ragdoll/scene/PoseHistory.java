@@ -0,0 +1,333 @@
+package com.a5.cs349.ragdoll.scene;
+
+import java.util.Arrays;
+
+/**
+ * Undo and redo for pose edits, one entry per gesture. An entry holds only
+ * the channels (translate x or y, rotation or scale of one joint) the
+ * gesture changed, each as the value before and after it, so a drag that
+ * turned one limb costs 16 bytes however big the scene is.
+ *
+ * Entries go into a ring of int records of bounded size; once it is full
+ * the oldest entries are dropped. Undoing or redoing an entry sets its
+ * channels and nothing else, so it takes time in proportion to what the
+ * gesture changed, and poses changed since by anything else are left
+ * alone.
+ *
+ * Skeletons are named by an id, e.g. their ragdoll's index, that must
+ * stay valid for as long as their entries are kept; call clear when they
+ * are renumbered. Not thread safe.
+ */
+public final class PoseHistory {
+    /**
+     * Finds the skeleton with a given id when undoing or redoing.
+     */
+    public interface Target {
+        /**
+         * @return null if the skeleton is gone, skipping its changes
+         */
+        Skeleton getSkeleton(int id);
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    public static final int DEFAULT_MAX_CHANGES = 16384;
+
+    private static final int RECORD = 4;                                // id, joint * STRIDE + channel, before, after
+    private static final int STRIDE = Skeleton.POSE_STRIDE;
+    private static final int TRANSLATE_X = 0;
+    private static final int TRANSLATE_Y = 1;
+    private static final int ROTATION = 2;
+    private static final int SCALE = 3;
+
+    private final int[] records;                                        // Ring of RECORD ints per change
+    private final int[] entryStart;                                     // Ring of entries: first record
+    private final int[] entryLength;                                    // and number of records
+    private int first;                                                  // Oldest entry
+    private int size;                                                   // Entries kept
+    private int cursor;                                                 // Entries that can be undone
+    private int used;                                                   // Ints of records kept
+    private int write;                                                  // Next int endGesture writes
+
+    // The gesture being recorded: the pose of each skeleton it touched, as
+    // it was when first touched
+    private boolean recording;
+    private int trackedCount;
+    private int[] trackedIds = new int[4];
+    private Skeleton[] trackedSkeletons = new Skeleton[4];
+    private float[][] before = new float[4][];
+    private float[] after = new float[0];
+
+    public PoseHistory() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHANGES);
+    }
+
+    /**
+     * @param maxEntries most gestures kept
+     * @param maxChanges most channel changes kept, over all the entries
+     */
+    public PoseHistory(int maxEntries, int maxChanges) {
+        if (maxEntries <= 0 || maxChanges <= 0) {
+            throw new IllegalArgumentException("History needs room for entries and changes");
+        }
+        records = new int[maxChanges * RECORD];
+        entryStart = new int[maxEntries];
+        entryLength = new int[maxEntries];
+    }
+
+    /**
+     * Starts recording a gesture. Skeletons it changes must be tracked
+     * before they are changed.
+     */
+    public void beginGesture() {
+        untrack();
+        recording = true;
+    }
+
+    /**
+     * Notes the current pose of a skeleton the gesture is about to change.
+     * Does nothing if it is already tracked, or no gesture is being
+     * recorded.
+     */
+    public void track(int id, Skeleton skeleton) {
+        if (!recording) {
+            return;
+        }
+        for (int i = 0; i < trackedCount; i++) {
+            if (trackedIds[i] == id) {
+                return;
+            }
+        }
+        if (trackedCount == trackedIds.length) {
+            int capacity = trackedCount * 2;
+            trackedIds = Arrays.copyOf(trackedIds, capacity);
+            trackedSkeletons = Arrays.copyOf(trackedSkeletons, capacity);
+            before = Arrays.copyOf(before, capacity);
+        }
+        int n = skeleton.getCount() * STRIDE;
+        int t = trackedCount++;
+        if (before[t] == null || before[t].length < n) {
+            before[t] = new float[n];
+        }
+        skeleton.getPose(before[t], 0);
+        trackedIds[t] = id;
+        trackedSkeletons[t] = skeleton;
+    }
+
+    /**
+     * Ends the gesture, adding an entry for whatever it changed in the
+     * tracked skeletons. Anything that could be redone is dropped.
+     *
+     * @return false if nothing changed, or the changes alone are more than
+     *         the history holds, in which case no entry is added and the
+     *         entries already kept, redo included, are left as they are
+     */
+    public boolean endGesture() {
+        if (!recording) {
+            return false;
+        }
+        recording = false;
+        int changes = 0;
+        for (int t = 0; t < trackedCount; t++) {
+            changes += diff(t, false);
+        }
+        int ints = changes * RECORD;
+        if (changes == 0 || ints > records.length) {
+            untrack();
+            return false;
+        }
+        truncate();
+        while (size > 0 && (used + ints > records.length || size == entryStart.length)) {
+            dropOldest();
+        }
+        int e = (first + size) % entryStart.length;
+        entryStart[e] = size == 0 ? 0 : end(lastEntry());
+        entryLength[e] = changes;
+        size++;
+        cursor = size;
+        used += ints;
+        write = entryStart[e];
+        for (int t = 0; t < trackedCount; t++) {
+            diff(t, true);
+        }
+        untrack();
+        return true;
+    }
+
+    /**
+     * Compares a tracked skeleton's pose now against its pose when
+     * tracked, writing a record per changed channel if asked to.
+     *
+     * @return the number of channels that changed
+     */
+    private int diff(int t, boolean record) {
+        Skeleton skeleton = trackedSkeletons[t];
+        int n = skeleton.getCount() * STRIDE;
+        if (after.length < n) {
+            after = new float[n];
+        }
+        skeleton.getPose(after, 0);
+        float[] was = before[t];
+        int changes = 0;
+        for (int i = 0; i < n; i++) {
+            int a = Float.floatToRawIntBits(was[i]);
+            int b = Float.floatToRawIntBits(after[i]);
+            if (a == b) {
+                continue;
+            }
+            changes++;
+            if (record) {
+                put(trackedIds[t]);
+                put(i);
+                put(a);
+                put(b);
+            }
+        }
+        return changes;
+    }
+
+    private void put(int value) {
+        records[write] = value;
+        write = (write + 1) % records.length;
+    }
+
+    public boolean canUndo() {
+        return cursor > 0;
+    }
+
+    public boolean canRedo() {
+        return cursor < size;
+    }
+
+    /**
+     * Returns the number of entries that can be undone.
+     */
+    public int getUndoCount() {
+        return cursor;
+    }
+
+    public int getRedoCount() {
+        return size - cursor;
+    }
+
+    /**
+     * Puts back the channels the last gesture not yet undone changed.
+     *
+     * @return false if there is nothing to undo
+     */
+    public boolean undo(Target target) {
+        if (cursor == 0) {
+            return false;
+        }
+        cursor--;
+        apply((first + cursor) % entryStart.length, target, 2);
+        return true;
+    }
+
+    /**
+     * Makes the last gesture undone again.
+     *
+     * @return false if there is nothing to redo
+     */
+    public boolean redo(Target target) {
+        if (cursor == size) {
+            return false;
+        }
+        apply((first + cursor) % entryStart.length, target, 3);
+        cursor++;
+        return true;
+    }
+
+    /**
+     * Forgets every entry, and any gesture being recorded.
+     */
+    public void clear() {
+        first = 0;
+        size = 0;
+        cursor = 0;
+        used = 0;
+        untrack();
+        recording = false;
+    }
+
+    /**
+     * Returns the bytes the entries kept take up.
+     */
+    public int getByteCount() {
+        return used * 4;
+    }
+
+    /**
+     * Sets every channel of an entry to the value at field of its records:
+     * 2 for the value before the gesture, 3 for after.
+     */
+    private void apply(int entry, Target target, int field) {
+        int r = entryStart[entry];
+        Skeleton skeleton = null;
+        int skeletonId = -1;
+        for (int i = 0, n = entryLength[entry]; i < n; i++, r = (r + RECORD) % records.length) {
+            int id = records[r];
+            if (i == 0 || id != skeletonId) {
+                skeleton = target.getSkeleton(id);
+                skeletonId = id;
+            }
+            if (skeleton == null) {
+                continue;                                               // Removed since
+            }
+            int channel = records[r + 1];
+            float value = Float.intBitsToFloat(records[r + field]);
+            int joint = channel / STRIDE;
+            switch (channel % STRIDE) {
+                case TRANSLATE_X:
+                    skeleton.setTranslate(joint, value, skeleton.getTranslateY(joint));
+                    break;
+                case TRANSLATE_Y:
+                    skeleton.setTranslate(joint, skeleton.getTranslateX(joint), value);
+                    break;
+                case ROTATION:
+                    skeleton.setRotation(joint, value);
+                    break;
+                case SCALE:
+                    skeleton.setScale(joint, value);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Forgets the skeletons tracked, so they can be collected.
+     */
+    private void untrack() {
+        for (int i = 0; i < trackedCount; i++) {
+            trackedSkeletons[i] = null;
+        }
+        trackedCount = 0;
+    }
+
+    /**
+     * Drops every entry that could be redone.
+     */
+    private void truncate() {
+        while (size > cursor) {
+            size--;
+            used -= entryLength[(first + size) % entryStart.length] * RECORD;
+        }
+    }
+
+    private void dropOldest() {
+        used -= entryLength[first] * RECORD;
+        first = (first + 1) % entryStart.length;
+        size--;
+        cursor--;
+    }
+
+    private int lastEntry() {
+        return (first + size - 1) % entryStart.length;
+    }
+
+    /**
+     * Returns the int just past an entry's records.
+     */
+    private int end(int entry) {
+        return (entryStart[entry] + entryLength[entry] * RECORD) % records.length;
+    }
+}
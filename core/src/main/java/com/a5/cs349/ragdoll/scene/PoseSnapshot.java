@@ -0,0 +1,87 @@
+package com.a5.cs349.ragdoll.scene;
+
+import java.util.List;
+
+/**
+ * The local poses of a list of skeletons, packed into one float array.
+ * Capturing or restoring a pose is a copy of Skeleton.POSE_STRIDE floats
+ * per joint; shapes, bounds and images are left alone, since they never
+ * change after a skeleton is built.
+ */
+public final class PoseSnapshot {
+    private final int[] jointCounts;
+    private final float[] poses;
+
+    private PoseSnapshot(int[] jointCounts, float[] poses) {
+        this.jointCounts = jointCounts;
+        this.poses = poses;
+    }
+
+    public static PoseSnapshot capture(List<Skeleton> skeletons) {
+        int n = skeletons.size();
+        int[] jointCounts = new int[n];
+        int total = 0;
+        for (int s = 0; s < n; s++) {
+            jointCounts[s] = skeletons.get(s).getCount();
+            total += jointCounts[s];
+        }
+        float[] poses = new float[total * Skeleton.POSE_STRIDE];
+        int offset = 0;
+        for (int s = 0; s < n; s++) {
+            skeletons.get(s).getPose(poses, offset);
+            offset += jointCounts[s] * Skeleton.POSE_STRIDE;
+        }
+        return new PoseSnapshot(jointCounts, poses);
+    }
+
+    /**
+     * Creates a snapshot from poses laid out as capture would, POSE_STRIDE
+     * floats per joint, skeleton after skeleton. Neither array is copied.
+     */
+    public static PoseSnapshot wrap(int[] jointCounts, float[] poses) {
+        int total = 0;
+        for (int count : jointCounts) {
+            total += count;
+        }
+        if (poses.length != total * Skeleton.POSE_STRIDE) {
+            throw new IllegalArgumentException("Expected " + total * Skeleton.POSE_STRIDE
+                    + " pose values, got " + poses.length);
+        }
+        return new PoseSnapshot(jointCounts, poses);
+    }
+
+    public int getSkeletonCount() {
+        return jointCounts.length;
+    }
+
+    public int getJointCount(int skeleton) {
+        return jointCounts[skeleton];
+    }
+
+    /**
+     * Copies one skeleton's poses, POSE_STRIDE floats per joint, into out.
+     */
+    public void copyPose(int skeleton, float[] out, int offset) {
+        System.arraycopy(poses, offsetOf(skeleton), out, offset, jointCounts[skeleton] * Skeleton.POSE_STRIDE);
+    }
+
+    /**
+     * Poses target like the skeleton captured at the given position, which
+     * must have had the same number of joints.
+     */
+    public void restore(int skeleton, Skeleton target) {
+        if (target.getCount() != jointCounts[skeleton]) {
+            throw new IllegalArgumentException("Snapshot has " + jointCounts[skeleton]
+                    + " joints for skeleton " + skeleton + ", not " + target.getCount());
+        }
+        target.setPose(poses, offsetOf(skeleton));
+    }
+
+    private int offsetOf(int skeleton) {
+        int offset = 0;
+        for (int s = 0; s < skeleton; s++) {
+            offset += jointCounts[s] * Skeleton.POSE_STRIDE;
+        }
+        return offset;
+    }
+}
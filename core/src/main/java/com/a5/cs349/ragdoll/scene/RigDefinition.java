@@ -0,0 +1,217 @@
+package com.a5.cs349.ragdoll.scene;
+
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+
+import java.util.Arrays;
+
+/**
+ * The shared, immutable description of a character: its parts, how they
+ * hang together, their rest pose, hit shapes, joint limits and images.
+ * Any number of ragdolls can be instantiated from one definition; each
+ * instance only owns a Skeleton holding its pose.
+ *
+ * Parts are numbered in depth-first order, the same order their joints
+ * have in every instance.
+ */
+public final class RigDefinition implements Skeleton.HitTester {
+    public static final int NO_IMAGE = 0;
+
+    private final int partCount;
+    private final int[] parents;
+    private final float[] offsetX;
+    private final float[] offsetY;
+    private final float[] maxRotate;
+    private final boolean[] scalable;
+    private final boolean[] draggable;
+    private final PolygonShape[] shapes;
+    private final int[] images;
+    private final float[] imageBounds;                                  // left, top, right, bottom per part
+
+    private RigDefinition(Builder b) {
+        partCount = b.count;
+        parents = Arrays.copyOf(b.parents, partCount);
+        offsetX = Arrays.copyOf(b.offsetX, partCount);
+        offsetY = Arrays.copyOf(b.offsetY, partCount);
+        maxRotate = Arrays.copyOf(b.maxRotate, partCount);
+        scalable = Arrays.copyOf(b.scalable, partCount);
+        draggable = Arrays.copyOf(b.draggable, partCount);
+        shapes = Arrays.copyOf(b.shapes, partCount);
+        images = Arrays.copyOf(b.images, partCount);
+        imageBounds = Arrays.copyOf(b.imageBounds, partCount * 4);
+    }
+
+    public int getPartCount() {
+        return partCount;
+    }
+
+    public int getParent(int part) {
+        return parents[part];
+    }
+
+    public float getOffsetX(int part) {
+        return offsetX[part];
+    }
+
+    public float getOffsetY(int part) {
+        return offsetY[part];
+    }
+
+    public float getMaxRotate(int part) {
+        return maxRotate[part];
+    }
+
+    public boolean isScalable(int part) {
+        return scalable[part];
+    }
+
+    /**
+     * Whether dragging the part moves it (and the rig) rather than
+     * rotating it about its joint.
+     */
+    public boolean isDraggable(int part) {
+        return draggable[part];
+    }
+
+    public PolygonShape getShape(int part) {
+        return shapes[part];
+    }
+
+    /**
+     * Returns the opaque key of the part's image, or NO_IMAGE.
+     */
+    public int getImage(int part) {
+        return images[part];
+    }
+
+    /**
+     * Copies the rectangle, in part coordinates, that the part's image is
+     * drawn into.
+     */
+    public void getImageBounds(int part, Bounds out) {
+        int o = part * 4;
+        out.set(imageBounds[o], imageBounds[o + 1], imageBounds[o + 2], imageBounds[o + 3]);
+    }
+
+    /**
+     * Creates a new skeleton in the rest pose, with hit bounds set from the
+     * part shapes. The root is placed at (x, y).
+     */
+    public Skeleton instantiate(float x, float y) {
+        Skeleton skeleton = new Skeleton(partCount);
+        for (int part = 0; part < partCount; part++) {
+            int joint = skeleton.addJoint(parents[part]);
+            skeleton.setTranslate(joint, offsetX[part], offsetY[part]);
+            skeleton.setScalable(joint, scalable[part]);
+            Bounds b = shapes[part].getBounds();
+            skeleton.setLocalBounds(joint, b.left, b.top, b.right, b.bottom);
+            int o = part * 4;
+            skeleton.setLocalDrawBounds(joint,
+                    imageBounds[o], imageBounds[o + 1], imageBounds[o + 2], imageBounds[o + 3]);
+        }
+        skeleton.translate(0, x, y);
+        return skeleton;
+    }
+
+    /**
+     * Tests a world point against the part's hit shape, for skeletons
+     * instantiated from this definition.
+     */
+    @Override
+    public boolean hit(Skeleton skeleton, int joint, float x, float y) {
+        return shapes[joint].contains(skeleton.toLocalX(joint, x, y), skeleton.toLocalY(joint, x, y));
+    }
+
+    public static final class Builder {
+        private int count = 0;
+        private int[] parents = new int[16];
+        private int[] subtreeEnd = new int[16];
+        private float[] offsetX = new float[16];
+        private float[] offsetY = new float[16];
+        private float[] maxRotate = new float[16];
+        private boolean[] scalable = new boolean[16];
+        private boolean[] draggable = new boolean[16];
+        private PolygonShape[] shapes = new PolygonShape[16];
+        private int[] images = new int[16];
+        private float[] imageBounds = new float[16 * 4];
+
+        /**
+         * Adds a part with the given hit shape. Like Skeleton.addJoint,
+         * parts must be added depth-first.
+         *
+         * @return the part's index
+         */
+        public int addPart(int parent, PolygonShape shape) {
+            if (parent != Skeleton.NO_PARENT
+                    && (parent < 0 || parent >= count || subtreeEnd[parent] != count)) {
+                throw new IllegalArgumentException("Parts must be added depth-first; "
+                        + parent + " is not on the path to the last part");
+            }
+            if (count == parents.length) {
+                int capacity = count * 2;
+                parents = Arrays.copyOf(parents, capacity);
+                subtreeEnd = Arrays.copyOf(subtreeEnd, capacity);
+                offsetX = Arrays.copyOf(offsetX, capacity);
+                offsetY = Arrays.copyOf(offsetY, capacity);
+                maxRotate = Arrays.copyOf(maxRotate, capacity);
+                scalable = Arrays.copyOf(scalable, capacity);
+                draggable = Arrays.copyOf(draggable, capacity);
+                shapes = Arrays.copyOf(shapes, capacity);
+                images = Arrays.copyOf(images, capacity);
+                imageBounds = Arrays.copyOf(imageBounds, capacity * 4);
+            }
+            int part = count++;
+            parents[part] = parent;
+            subtreeEnd[part] = part + 1;
+            for (int p = parent; p != Skeleton.NO_PARENT; p = parents[p]) {
+                subtreeEnd[p] = part + 1;
+            }
+            shapes[part] = shape;
+            maxRotate[part] = 180;
+            Bounds b = shape.getBounds();
+            setImage(part, NO_IMAGE, b.left, b.top, b.right, b.bottom);
+            return part;
+        }
+
+        /**
+         * Sets the part's joint position in its parent's coordinates.
+         */
+        public Builder setOffset(int part, float x, float y) {
+            offsetX[part] = x;
+            offsetY[part] = y;
+            return this;
+        }
+
+        public Builder setMaxRotate(int part, float degrees) {
+            maxRotate[part] = degrees;
+            return this;
+        }
+
+        public Builder setScalable(int part, boolean isScalable) {
+            scalable[part] = isScalable;
+            return this;
+        }
+
+        public Builder setDraggable(int part, boolean isDraggable) {
+            draggable[part] = isDraggable;
+            return this;
+        }
+
+        public Builder setImage(int part, int image, float left, float top, float right, float bottom) {
+            images[part] = image;
+            int o = part * 4;
+            imageBounds[o] = left;
+            imageBounds[o + 1] = top;
+            imageBounds[o + 2] = right;
+            imageBounds[o + 3] = bottom;
+            return this;
+        }
+
+        public RigDefinition build() {
+            if (count == 0) {
+                throw new IllegalStateException("A rig needs at least one part");
+            }
+            return new RigDefinition(this);
+        }
+    }
+}
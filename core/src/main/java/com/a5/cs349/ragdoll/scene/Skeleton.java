@@ -0,0 +1,713 @@
+package com.a5.cs349.ragdoll.scene;
+
+import com.a5.cs349.ragdoll.geom.Affine;
+import com.a5.cs349.ragdoll.geom.Bounds;
+
+import java.util.Arrays;
+
+/**
+ * Pose state for a tree of joints, stored as parallel primitive arrays
+ * (structure of arrays) rather than as a tree of objects.
+ *
+ * Joints are kept in depth-first order: every joint comes after its parent,
+ * and a joint's subtree is the contiguous range [joint, getSubtreeEnd(joint)).
+ * That lets world transforms be computed in one forward pass, subtree bounds
+ * in one backward pass, and whole subtrees be skipped by jumping an index.
+ *
+ * Every joint stores a true parent-relative pose: translate is the joint's
+ * origin in its parent's coordinates and rotation (in degrees) is relative
+ * to its parent. Rotating, translating or scaling a joint therefore touches
+ * only that joint; descendants pick the change up when the world pass
+ * composes world = parentWorld * S(1, parentScale) * T(translate) * R(rotation),
+ * where the scale is applied to the offset only, so limbs are never sheared.
+ *
+ * Scale stretches a joint along its own y axis. It moves the joint's
+ * children along with it and is inherited by scalable children, but it is
+ * not part of the world transform handed out for hit testing: it only
+ * applies to the joint's own image (see getEffectiveScale).
+ */
+public class Skeleton {
+    public static final int NO_PARENT = -1;
+    public static final float MIN_SCALE = 0.2f;
+    public static final float MAX_SCALE = 5;
+    public static final int POSE_STRIDE = 4;                            // translateX, translateY, rotation, scale
+
+    /**
+     * Narrow-phase test used by hitTest once a joint's bounds contain the
+     * point.
+     */
+    public interface HitTester {
+        boolean hit(Skeleton skeleton, int joint, float x, float y);
+    }
+
+    private static final int AFFINE = 6;                                // a, b, c, d, tx, ty
+    private static final int BOX = 4;                                   // left, top, right, bottom
+    private static final int CLEAN = Integer.MAX_VALUE;
+
+    private int count = 0;
+
+    private int[] parent;
+    private int[] subtreeEnd;
+    private Object[] tags;
+
+    // Local pose
+    private float[] translateX;
+    private float[] translateY;
+    private float[] rotation;
+    private float[] rotationCos;                                        // Cached so the world pass needs no trig
+    private float[] rotationSin;
+    private float[] scale;
+    private boolean[] scalable;
+    private float[] effectiveScale;                                     // scale times inherited scale
+
+    // Derived state, valid after updateWorldTransforms()
+    private float[] world;
+    private float[] inverseWorld;
+    private float[] localBounds;
+    private boolean[] boundsScaled;                                     // Hit bounds stretch like the image
+    private float[] worldBounds;
+    private float[] subtreeBounds;
+    private float[] localDrawBounds;
+    private float[] drawBounds;                                         // Drawn with the effective scale
+    private float[] subtreeDrawBounds;
+    private final float[] damage = new float[BOX];                      // Drawn area changed since collectDamage
+    private boolean[] dirty;
+    private boolean[] boundsDirty;
+    private int firstDirty = CLEAN;
+
+    public Skeleton() {
+        this(16);
+    }
+
+    public Skeleton(int capacity) {
+        allocate(Math.max(capacity, 1));
+        setEmpty(damage, 0);
+    }
+
+    /**
+     * Appends a joint with an identity pose.
+     *
+     * @param parentJoint the parent, or NO_PARENT for a root. To keep the
+     *                    depth-first order, the parent's subtree must end at
+     *                    the last joint added so far.
+     * @return the new joint's index
+     */
+    public int addJoint(int parentJoint) {
+        if (parentJoint != NO_PARENT
+                && (parentJoint < 0 || parentJoint >= count || subtreeEnd[parentJoint] != count)) {
+            throw new IllegalArgumentException("Joints must be added depth-first; "
+                    + parentJoint + " is not on the path to the last joint");
+        }
+        ensureCapacity(count + 1);
+        int joint = count++;
+        parent[joint] = parentJoint;
+        subtreeEnd[joint] = joint + 1;
+        for (int p = parentJoint; p != NO_PARENT; p = parent[p]) {
+            subtreeEnd[p] = joint + 1;
+        }
+        tags[joint] = null;
+        translateX[joint] = 0;
+        translateY[joint] = 0;
+        rotation[joint] = 0;
+        rotationCos[joint] = 1;
+        rotationSin[joint] = 0;
+        scale[joint] = 1;
+        scalable[joint] = false;
+        effectiveScale[joint] = 1;
+        setEmpty(localBounds, joint);
+        boundsScaled[joint] = false;
+        setEmpty(localDrawBounds, joint);
+        setEmpty(drawBounds, joint);
+        setEmpty(subtreeDrawBounds, joint);
+        markDirty(joint);
+        return joint;
+    }
+
+    /**
+     * Appends every joint of other, in order, with other's roots becoming
+     * children of parentJoint. Poses, bounds and tags are copied.
+     *
+     * @return the index in this skeleton of other's first joint
+     */
+    public int attach(Skeleton other, int parentJoint) {
+        int base = count;
+        for (int j = 0; j < other.count; j++) {
+            int p = other.parent[j];
+            int joint = addJoint(p == NO_PARENT ? parentJoint : base + p);
+            tags[joint] = other.tags[j];
+            translateX[joint] = other.translateX[j];
+            translateY[joint] = other.translateY[j];
+            setRotation(joint, other.rotation[j]);
+            scale[joint] = other.scale[j];
+            scalable[joint] = other.scalable[j];
+            System.arraycopy(other.localBounds, j * BOX, localBounds, joint * BOX, BOX);
+            boundsScaled[joint] = other.boundsScaled[j];
+            System.arraycopy(other.localDrawBounds, j * BOX, localDrawBounds, joint * BOX, BOX);
+        }
+        return base;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getParent(int joint) {
+        return parent[joint];
+    }
+
+    /**
+     * Returns one past the last joint in joint's subtree.
+     */
+    public int getSubtreeEnd(int joint) {
+        return subtreeEnd[joint];
+    }
+
+    /**
+     * Attaches an arbitrary object to a joint, e.g. the view drawing it.
+     */
+    public void setTag(int joint, Object tag) {
+        tags[joint] = tag;
+    }
+
+    public Object getTag(int joint) {
+        return tags[joint];
+    }
+
+    public float getTranslateX(int joint) {
+        return translateX[joint];
+    }
+
+    public float getTranslateY(int joint) {
+        return translateY[joint];
+    }
+
+    public void setTranslate(int joint, float x, float y) {
+        translateX[joint] = x;
+        translateY[joint] = y;
+        markDirty(joint);
+    }
+
+    public void translate(int joint, float dx, float dy) {
+        setTranslate(joint, translateX[joint] + dx, translateY[joint] + dy);
+    }
+
+    public float getRotation(int joint) {
+        return rotation[joint];
+    }
+
+    /**
+     * Sets a joint's rotation relative to its parent without moving its
+     * descendants' offsets.
+     */
+    public void setRotation(int joint, float degrees) {
+        rotation[joint] = degrees;
+        double rad = Math.toRadians(degrees);
+        rotationCos[joint] = (float) Math.cos(rad);
+        rotationSin[joint] = (float) Math.sin(rad);
+        markDirty(joint);
+    }
+
+    /**
+     * Rotates a joint about its own origin; its subtree follows through
+     * composition. The result is kept in [0, 360).
+     */
+    public void rotate(int joint, float degrees) {
+        float r = (rotation[joint] + degrees) % 360;
+        if (r < 0) {
+            r += 360;
+        }
+        setRotation(joint, r);
+    }
+
+    /**
+     * Moves a joint by a world-space offset, converting it into the
+     * parent's coordinates first.
+     */
+    public void translateInWorld(int joint, float dx, float dy) {
+        int p = parent[joint];
+        if (p == NO_PARENT) {
+            translate(joint, dx, dy);
+            return;
+        }
+        updateWorldTransforms();
+        // The parent's world transform is a pure rotation plus translation,
+        // so its inverse linear part is the transpose
+        int po = p * AFFINE;
+        float lx = world[po] * dx + world[po + 1] * dy;
+        float ly = world[po + 2] * dx + world[po + 3] * dy;
+        translate(joint, lx, ly / effectiveScale[p]);
+    }
+
+    public float getScale(int joint) {
+        return scale[joint];
+    }
+
+    public boolean isScalable(int joint) {
+        return scalable[joint];
+    }
+
+    public void setScalable(int joint, boolean isScalable) {
+        scalable[joint] = isScalable;
+        markDirty(joint);
+    }
+
+    /**
+     * Returns the joint's scale combined with the scale it inherits: a
+     * scalable joint inherits its parent's effective scale.
+     */
+    public float getEffectiveScale(int joint) {
+        updateWorldTransforms();
+        return effectiveScale[joint];
+    }
+
+    public void setScale(int joint, float s) {
+        scale[joint] = s;
+        markDirty(joint);
+    }
+
+    /**
+     * Stretches a scalable joint along its y axis. Its children's offsets
+     * and scalable descendants follow through composition.
+     *
+     * @return false if the joint is not scalable or would leave
+     *         [MIN_SCALE, MAX_SCALE], in which case nothing changes
+     */
+    public boolean scale(int joint, float factor) {
+        float s = scale[joint] * factor;
+        if (!scalable[joint] || s > MAX_SCALE || s < MIN_SCALE) {
+            return false;
+        }
+        setScale(joint, s);
+        return true;
+    }
+
+    /**
+     * Returns the sum of the rotations from the root down to joint. Does
+     * not need the world transforms to be up to date.
+     */
+    public float getWorldRotation(int joint) {
+        float degrees = 0;
+        for (int j = joint; j != NO_PARENT; j = parent[j]) {
+            degrees += rotation[j];
+        }
+        return degrees;
+    }
+
+    /**
+     * Copies every joint's local pose (translation, rotation and scale,
+     * POSE_STRIDE floats per joint) into out, starting at offset.
+     */
+    public void getPose(float[] out, int offset) {
+        for (int i = 0; i < count; i++) {
+            int o = offset + i * POSE_STRIDE;
+            out[o] = translateX[i];
+            out[o + 1] = translateY[i];
+            out[o + 2] = rotation[i];
+            out[o + 3] = scale[i];
+        }
+    }
+
+    /**
+     * Replaces every joint's local pose with one written by getPose.
+     */
+    public void setPose(float[] pose, int offset) {
+        for (int i = 0; i < count; i++) {
+            int o = offset + i * POSE_STRIDE;
+            translateX[i] = pose[o];
+            translateY[i] = pose[o + 1];
+            scale[i] = pose[o + 3];
+            setRotation(i, pose[o + 2]);
+        }
+    }
+
+    /**
+     * Sets the box, in the joint's own coordinates, that encloses its hit
+     * area. Joints without local bounds have empty world bounds.
+     */
+    public void setLocalBounds(int joint, float left, float top, float right, float bottom) {
+        int o = joint * BOX;
+        localBounds[o] = left;
+        localBounds[o + 1] = top;
+        localBounds[o + 2] = right;
+        localBounds[o + 3] = bottom;
+        markDirty(joint);
+    }
+
+    /**
+     * Makes the joint's hit bounds stretch with its image, by the effective
+     * scale along its y axis, e.g. when it is hit tested against the
+     * image's pixels rather than a fixed shape.
+     */
+    public void setBoundsScaled(int joint, boolean scaled) {
+        boundsScaled[joint] = scaled;
+        markDirty(joint);
+    }
+
+    public boolean isBoundsScaled(int joint) {
+        return boundsScaled[joint];
+    }
+
+    public void getLocalBounds(int joint, Bounds out) {
+        int o = joint * BOX;
+        out.set(localBounds[o], localBounds[o + 1], localBounds[o + 2], localBounds[o + 3]);
+    }
+
+    /**
+     * Sets the box, in the joint's own coordinates, that its image is drawn
+     * into. Unlike the hit bounds, it is stretched by the effective scale.
+     */
+    public void setLocalDrawBounds(int joint, float left, float top, float right, float bottom) {
+        int o = joint * BOX;
+        localDrawBounds[o] = left;
+        localDrawBounds[o + 1] = top;
+        localDrawBounds[o + 2] = right;
+        localDrawBounds[o + 3] = bottom;
+        markDirty(joint);
+    }
+
+    /**
+     * Brings world transforms, their inverses and all bounds up to date.
+     * One forward pass recomputes every joint that changed or whose parent
+     * changed; one backward pass refreshes subtree bounds along the way
+     * to the roots. Does nothing if no joint changed.
+     */
+    public void updateWorldTransforms() {
+        if (firstDirty == CLEAN) {
+            return;
+        }
+        for (int i = firstDirty; i < count; i++) {
+            int p = parent[i];
+            if (!dirty[i] && (p == NO_PARENT || !dirty[p])) {
+                continue;
+            }
+            dirty[i] = true;
+            computeWorld(i, p);
+            boundsDirty[i] = true;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            if (!boundsDirty[i]) {
+                continue;
+            }
+            int o = i * BOX;
+            System.arraycopy(worldBounds, o, subtreeBounds, o, BOX);
+            System.arraycopy(drawBounds, o, subtreeDrawBounds, o, BOX);
+            for (int c = i + 1, end = subtreeEnd[i]; c < end; c = subtreeEnd[c]) {
+                union(subtreeBounds, o, subtreeBounds, c * BOX);
+                union(subtreeDrawBounds, o, subtreeDrawBounds, c * BOX);
+            }
+            int p = parent[i];
+            if (p != NO_PARENT) {
+                boundsDirty[p] = true;
+            }
+            boundsDirty[i] = false;
+        }
+        Arrays.fill(dirty, firstDirty, count, false);
+        firstDirty = CLEAN;
+    }
+
+    private void computeWorld(int i, int p) {
+        float cos = rotationCos[i];
+        float sin = rotationSin[i];
+        int o = i * AFFINE;
+        float a, b, c, d, tx, ty;
+        if (p == NO_PARENT) {
+            a = cos;
+            b = sin;
+            c = -sin;
+            d = cos;
+            tx = translateX[i];
+            ty = translateY[i];
+            effectiveScale[i] = scale[i];
+        } else {
+            int po = p * AFFINE;
+            float pa = world[po], pb = world[po + 1], pc = world[po + 2], pd = world[po + 3];
+            a = pa * cos + pc * sin;
+            b = pb * cos + pd * sin;
+            c = pc * cos - pa * sin;
+            d = pd * cos - pb * sin;
+            // Our offset is stretched along the parent's y axis with its image
+            float ox = translateX[i];
+            float oy = translateY[i] * effectiveScale[p];
+            tx = pa * ox + pc * oy + world[po + 4];
+            ty = pb * ox + pd * oy + world[po + 5];
+            effectiveScale[i] = scalable[i] ? scale[i] * effectiveScale[p] : scale[i];
+        }
+        world[o] = a;
+        world[o + 1] = b;
+        world[o + 2] = c;
+        world[o + 3] = d;
+        world[o + 4] = tx;
+        world[o + 5] = ty;
+
+        float det = a * d - b * c;
+        float inv = det != 0 ? 1 / det : 0;
+        inverseWorld[o] = d * inv;
+        inverseWorld[o + 1] = -b * inv;
+        inverseWorld[o + 2] = -c * inv;
+        inverseWorld[o + 3] = a * inv;
+        inverseWorld[o + 4] = (c * ty - d * tx) * inv;
+        inverseWorld[o + 5] = (b * tx - a * ty) * inv;
+
+        // The image is stretched along our y axis
+        float es = effectiveScale[i];
+        int bo = i * BOX;
+        float left = localBounds[bo], top = localBounds[bo + 1];
+        float right = localBounds[bo + 2], bottom = localBounds[bo + 3];
+        float hc = boundsScaled[i] ? c * es : c;
+        float hd = boundsScaled[i] ? d * es : d;
+        setEmpty(worldBounds, i);
+        if (left <= right && top <= bottom) {
+            unionPoint(worldBounds, bo, a * left + hc * top + tx, b * left + hd * top + ty);
+            unionPoint(worldBounds, bo, a * right + hc * top + tx, b * right + hd * top + ty);
+            unionPoint(worldBounds, bo, a * right + hc * bottom + tx, b * right + hd * bottom + ty);
+            unionPoint(worldBounds, bo, a * left + hc * bottom + tx, b * left + hd * bottom + ty);
+        }
+
+        c *= es;
+        d *= es;
+        left = localDrawBounds[bo];
+        top = localDrawBounds[bo + 1];
+        right = localDrawBounds[bo + 2];
+        bottom = localDrawBounds[bo + 3];
+        setEmpty(drawBounds, i);
+        if (left <= right && top <= bottom) {
+            unionPoint(drawBounds, bo, a * left + c * top + tx, b * left + d * top + ty);
+            unionPoint(drawBounds, bo, a * right + c * top + tx, b * right + d * top + ty);
+            unionPoint(drawBounds, bo, a * right + c * bottom + tx, b * right + d * bottom + ty);
+            unionPoint(drawBounds, bo, a * left + c * bottom + tx, b * left + d * bottom + ty);
+            union(damage, 0, drawBounds, bo);
+        }
+    }
+
+    /**
+     * Returns the packed world transforms, six floats (a, b, c, d, tx, ty)
+     * per joint, brought up to date first. Callers must not modify it.
+     */
+    public float[] getWorldTransforms() {
+        updateWorldTransforms();
+        return world;
+    }
+
+    public void getWorldTransform(int joint, Affine out) {
+        updateWorldTransforms();
+        int o = joint * AFFINE;
+        out.set(world[o], world[o + 1], world[o + 2], world[o + 3], world[o + 4], world[o + 5]);
+    }
+
+    public void getInverseWorldTransform(int joint, Affine out) {
+        updateWorldTransforms();
+        int o = joint * AFFINE;
+        out.set(inverseWorld[o], inverseWorld[o + 1], inverseWorld[o + 2], inverseWorld[o + 3],
+                inverseWorld[o + 4], inverseWorld[o + 5]);
+    }
+
+    public float getWorldX(int joint) {
+        updateWorldTransforms();
+        return world[joint * AFFINE + 4];
+    }
+
+    public float getWorldY(int joint) {
+        updateWorldTransforms();
+        return world[joint * AFFINE + 5];
+    }
+
+    /**
+     * Maps a world point into joint's coordinates (x component).
+     */
+    public float toLocalX(int joint, float x, float y) {
+        updateWorldTransforms();
+        int o = joint * AFFINE;
+        return inverseWorld[o] * x + inverseWorld[o + 2] * y + inverseWorld[o + 4];
+    }
+
+    /**
+     * Maps a world point into joint's coordinates (y component).
+     */
+    public float toLocalY(int joint, float x, float y) {
+        updateWorldTransforms();
+        int o = joint * AFFINE;
+        return inverseWorld[o + 1] * x + inverseWorld[o + 3] * y + inverseWorld[o + 5];
+    }
+
+    public void getWorldBounds(int joint, Bounds out) {
+        updateWorldTransforms();
+        int o = joint * BOX;
+        out.set(worldBounds[o], worldBounds[o + 1], worldBounds[o + 2], worldBounds[o + 3]);
+    }
+
+    public void getSubtreeBounds(int joint, Bounds out) {
+        updateWorldTransforms();
+        int o = joint * BOX;
+        out.set(subtreeBounds[o], subtreeBounds[o + 1], subtreeBounds[o + 2], subtreeBounds[o + 3]);
+    }
+
+    public boolean worldBoundsContain(int joint, float x, float y) {
+        updateWorldTransforms();
+        return contains(worldBounds, joint * BOX, x, y);
+    }
+
+    public boolean subtreeBoundsContain(int joint, float x, float y) {
+        updateWorldTransforms();
+        return contains(subtreeBounds, joint * BOX, x, y);
+    }
+
+    public boolean worldBoundsIntersect(int joint, float left, float top, float right, float bottom) {
+        updateWorldTransforms();
+        return intersects(worldBounds, joint * BOX, left, top, right, bottom);
+    }
+
+    public boolean subtreeBoundsIntersect(int joint, float left, float top, float right, float bottom) {
+        updateWorldTransforms();
+        return intersects(subtreeBounds, joint * BOX, left, top, right, bottom);
+    }
+
+    public void getDrawBounds(int joint, Bounds out) {
+        updateWorldTransforms();
+        int o = joint * BOX;
+        out.set(drawBounds[o], drawBounds[o + 1], drawBounds[o + 2], drawBounds[o + 3]);
+    }
+
+    public void getSubtreeDrawBounds(int joint, Bounds out) {
+        updateWorldTransforms();
+        int o = joint * BOX;
+        out.set(subtreeDrawBounds[o], subtreeDrawBounds[o + 1], subtreeDrawBounds[o + 2], subtreeDrawBounds[o + 3]);
+    }
+
+    public boolean drawBoundsIntersect(int joint, float left, float top, float right, float bottom) {
+        updateWorldTransforms();
+        return intersects(drawBounds, joint * BOX, left, top, right, bottom);
+    }
+
+    public boolean subtreeDrawBoundsIntersect(int joint, float left, float top, float right, float bottom) {
+        updateWorldTransforms();
+        return intersects(subtreeDrawBounds, joint * BOX, left, top, right, bottom);
+    }
+
+    /**
+     * Adds the world-space area whose drawing changed since the last call
+     * to out, then forgets it. The area covers every changed joint's draw
+     * bounds both before and after the change.
+     *
+     * @return false if nothing changed
+     */
+    public boolean collectDamage(Bounds out) {
+        updateWorldTransforms();
+        if (damage[0] > damage[2]) {
+            return false;
+        }
+        out.union(damage[0], damage[1]);
+        out.union(damage[2], damage[3]);
+        setEmpty(damage, 0);
+        return true;
+    }
+
+    /**
+     * Finds the joint hit by a world point: the first one in a depth-first,
+     * children-before-parent walk of joint's subtree.
+     *
+     * This is a forward scan that skips any subtree whose bounds miss the
+     * point. A later hit only wins if it is inside the current hit's
+     * subtree, so the scan can stop as soon as it leaves that subtree.
+     *
+     * @return the joint that was hit, or NO_PARENT
+     */
+    public int hitTest(int joint, float x, float y, HitTester tester) {
+        updateWorldTransforms();
+        int hit = NO_PARENT;
+        int i = joint;
+        int end = subtreeEnd[joint];
+        while (i < end) {
+            if (hit != NO_PARENT && i >= subtreeEnd[hit]) {
+                break;
+            }
+            if (!contains(subtreeBounds, i * BOX, x, y)) {
+                i = subtreeEnd[i];
+                continue;
+            }
+            if (contains(worldBounds, i * BOX, x, y) && tester.hit(this, i, x, y)) {
+                hit = i;
+            }
+            i++;
+        }
+        return hit;
+    }
+
+    private void markDirty(int joint) {
+        if (!dirty[joint]) {
+            // Where the subtree was last drawn; where it ends up is added
+            // when the world transforms are recomputed
+            union(damage, 0, subtreeDrawBounds, joint * BOX);
+        }
+        dirty[joint] = true;
+        if (joint < firstDirty) {
+            firstDirty = joint;
+        }
+    }
+
+    private static void setEmpty(float[] boxes, int joint) {
+        int o = joint * BOX;
+        boxes[o] = Float.POSITIVE_INFINITY;
+        boxes[o + 1] = Float.POSITIVE_INFINITY;
+        boxes[o + 2] = Float.NEGATIVE_INFINITY;
+        boxes[o + 3] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void unionPoint(float[] boxes, int o, float x, float y) {
+        if (x < boxes[o]) boxes[o] = x;
+        if (y < boxes[o + 1]) boxes[o + 1] = y;
+        if (x > boxes[o + 2]) boxes[o + 2] = x;
+        if (y > boxes[o + 3]) boxes[o + 3] = y;
+    }
+
+    private static void union(float[] boxes, int o, float[] other, int oo) {
+        if (other[oo] < boxes[o]) boxes[o] = other[oo];
+        if (other[oo + 1] < boxes[o + 1]) boxes[o + 1] = other[oo + 1];
+        if (other[oo + 2] > boxes[o + 2]) boxes[o + 2] = other[oo + 2];
+        if (other[oo + 3] > boxes[o + 3]) boxes[o + 3] = other[oo + 3];
+    }
+
+    private static boolean contains(float[] boxes, int o, float x, float y) {
+        return x >= boxes[o] && x <= boxes[o + 2] && y >= boxes[o + 1] && y <= boxes[o + 3];
+    }
+
+    private static boolean intersects(float[] boxes, int o,
+                                      float left, float top, float right, float bottom) {
+        return boxes[o] <= right && left <= boxes[o + 2]
+                && boxes[o + 1] <= bottom && top <= boxes[o + 3];
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > parent.length) {
+            allocate(Math.max(needed, parent.length * 2));
+        }
+    }
+
+    private void allocate(int capacity) {
+        parent = parent == null ? new int[capacity] : Arrays.copyOf(parent, capacity);
+        subtreeEnd = subtreeEnd == null ? new int[capacity] : Arrays.copyOf(subtreeEnd, capacity);
+        tags = tags == null ? new Object[capacity] : Arrays.copyOf(tags, capacity);
+        translateX = grow(translateX, capacity);
+        translateY = grow(translateY, capacity);
+        rotation = grow(rotation, capacity);
+        rotationCos = grow(rotationCos, capacity);
+        rotationSin = grow(rotationSin, capacity);
+        scale = grow(scale, capacity);
+        scalable = scalable == null ? new boolean[capacity] : Arrays.copyOf(scalable, capacity);
+        effectiveScale = grow(effectiveScale, capacity);
+        world = grow(world, capacity * AFFINE);
+        inverseWorld = grow(inverseWorld, capacity * AFFINE);
+        localBounds = grow(localBounds, capacity * BOX);
+        boundsScaled = boundsScaled == null ? new boolean[capacity] : Arrays.copyOf(boundsScaled, capacity);
+        worldBounds = grow(worldBounds, capacity * BOX);
+        subtreeBounds = grow(subtreeBounds, capacity * BOX);
+        localDrawBounds = grow(localDrawBounds, capacity * BOX);
+        drawBounds = grow(drawBounds, capacity * BOX);
+        subtreeDrawBounds = grow(subtreeDrawBounds, capacity * BOX);
+        dirty = dirty == null ? new boolean[capacity] : Arrays.copyOf(dirty, capacity);
+        boundsDirty = boundsDirty == null ? new boolean[capacity] : Arrays.copyOf(boundsDirty, capacity);
+    }
+
+    private static float[] grow(float[] array, int length) {
+        return array == null ? new float[length] : Arrays.copyOf(array, length);
+    }
+}
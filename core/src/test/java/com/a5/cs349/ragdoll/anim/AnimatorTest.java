@@ -0,0 +1,131 @@
+package com.a5.cs349.ragdoll.anim;
+
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays clips against a ManualClock, so every frame lands at a known time.
+ */
+public class AnimatorTest {
+    private static final long FRAME_NANOS = 16666667;
+
+    private ManualClock clock;
+    private Animator animator;
+    private Clip swing;
+    private Clip nod;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        animator = new Animator(clock);
+        swing = new Clip.Builder()
+                .key(1, Clip.Channel.ROTATION, 0, 0)
+                .key(1, Clip.Channel.ROTATION, 1, 60, Easing.EASE_IN_OUT)
+                .key(1, Clip.Channel.ROTATION, 2, 0, Easing.EASE_IN_OUT)
+                .build();
+        nod = new Clip.Builder()
+                .key(2, Clip.Channel.ROTATION, 0, 0)
+                .key(2, Clip.Channel.ROTATION, 0.5f, 20)
+                .build();
+    }
+
+    private static Skeleton rig() {
+        Skeleton skeleton = new Skeleton(3);
+        int root = skeleton.addJoint(Skeleton.NO_PARENT);
+        skeleton.addJoint(root);
+        skeleton.addJoint(root);
+        return skeleton;
+    }
+
+    @Test
+    public void playsInClockTime() {
+        Skeleton skeleton = rig();
+        animator.play(swing, skeleton, false);
+        clock.advanceSeconds(0.5f);
+        assertTrue(animator.update());
+        assertEquals(30, skeleton.getRotation(1), 0.1f);
+        clock.advanceSeconds(0.5f);
+        animator.update();
+        assertEquals(60, skeleton.getRotation(1), 0.1f);
+    }
+
+    @Test
+    public void finishedClipsStopAtTheirLastFrame() {
+        Skeleton skeleton = rig();
+        animator.play(nod, skeleton, false);
+        clock.advanceSeconds(3);
+        assertFalse(animator.update());
+        assertEquals(20, skeleton.getRotation(2), 1e-3);
+        assertFalse(animator.isPlaying(skeleton));
+    }
+
+    @Test
+    public void loopingClipsWrap() {
+        Skeleton skeleton = rig();
+        animator.play(swing, skeleton, true);
+        clock.advanceSeconds(2.5f);
+        assertTrue(animator.update());
+        assertEquals(30, skeleton.getRotation(1), 0.1f);
+    }
+
+    @Test
+    public void speedScalesClipTime() {
+        Skeleton skeleton = rig();
+        animator.play(swing, skeleton, 2, false);
+        clock.advanceSeconds(0.5f);
+        animator.update();
+        assertEquals(60, skeleton.getRotation(1), 0.1f);
+    }
+
+    @Test
+    public void manyClipsOnManyRigs() {
+        Skeleton[] rigs = new Skeleton[200];
+        for (int r = 0; r < rigs.length; r++) {
+            rigs[r] = rig();
+            animator.play(swing, rigs[r], true);
+            animator.play(nod, rigs[r], false);
+        }
+        assertEquals(400, animator.getPlayingCount());
+        clock.advanceSeconds(1);
+        animator.update();
+        assertEquals(200, animator.getPlayingCount());
+        for (Skeleton s : rigs) {
+            assertEquals(60, s.getRotation(1), 0.1f);
+            assertEquals(20, s.getRotation(2), 1e-3);
+        }
+        animator.stop(rigs[0]);
+        assertFalse(animator.isPlaying(rigs[0]));
+        assertEquals(199, animator.getPlayingCount());
+    }
+
+    @Test
+    public void updateDoesNotAllocate() {
+        final Skeleton[] rigs = new Skeleton[50];
+        for (int r = 0; r < rigs.length; r++) {
+            rigs[r] = rig();
+            animator.play(swing, rigs[r], true);
+        }
+        for (int f = 0; f < 20000; f++) {
+            clock.advance(FRAME_NANOS);
+            animator.update();
+        }
+
+        long allocated = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int f = 0; f < 2000; f++) {
+                    clock.advance(FRAME_NANOS);
+                    animator.update();
+                    for (Skeleton s : rigs) {
+                        s.updateWorldTransforms();
+                    }
+                }
+            }
+        });
+        assertEquals("bytes allocated over 2000 frames", 0, allocated);
+    }
+}
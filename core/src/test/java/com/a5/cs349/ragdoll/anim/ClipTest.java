@@ -0,0 +1,86 @@
+package com.a5.cs349.ragdoll.anim;
+
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClipTest {
+    private static final int ARM = 1;
+
+    @Test
+    public void linearKeysInterpolate() {
+        Clip clip = new Clip.Builder()
+                .key(ARM, Clip.Channel.ROTATION, 0, 0)
+                .key(ARM, Clip.Channel.ROTATION, 1, 90)
+                .build();
+        assertEquals(1, clip.getDuration(), 0);
+        assertEquals(1, clip.getTrackCount());
+        assertEquals(0, clip.sample(0, 0), 1e-4);
+        assertEquals(45, clip.sample(0, 0.5f), 1e-3);
+        assertEquals(90, clip.sample(0, 1), 1e-4);
+        // Clamped outside the clip
+        assertEquals(90, clip.sample(0, 5), 1e-4);
+        assertEquals(0, clip.sample(0, -1), 1e-4);
+    }
+
+    @Test
+    public void easingShapesTheSegmentEndingAtItsKey() {
+        Clip clip = new Clip.Builder()
+                .key(ARM, Clip.Channel.ROTATION, 0, 0)
+                .key(ARM, Clip.Channel.ROTATION, 1, 100, Easing.EASE_IN)
+                .key(ARM, Clip.Channel.ROTATION, 2, 0, Easing.EASE_OUT)
+                .build();
+        assertEquals(25, clip.sample(0, 0.5f), 0.5f);
+        assertEquals(25, clip.sample(0, 1.5f), 0.5f);
+        assertEquals(100, clip.sample(0, 1), 1e-3);
+    }
+
+    @Test
+    public void stepHoldsUntilTheKey() {
+        Clip clip = new Clip.Builder()
+                .key(ARM, Clip.Channel.TRANSLATE_X, 0, 10)
+                .key(ARM, Clip.Channel.TRANSLATE_X, 1, 20, Easing.STEP)
+                .build(10);
+        assertEquals(10, clip.sample(0, 0.85f), 1e-4);
+        assertEquals(20, clip.sample(0, 1), 1e-4);
+    }
+
+    @Test
+    public void keysMayBeAddedInAnyOrder() {
+        Clip clip = new Clip.Builder()
+                .key(2, Clip.Channel.SCALE, 1, 2)
+                .key(ARM, Clip.Channel.ROTATION, 0.5f, 30)
+                .key(2, Clip.Channel.SCALE, 0, 1)
+                .build();
+        assertEquals(2, clip.getTrackCount());
+        assertEquals(ARM, clip.getTrackJoint(0));
+        assertEquals(Clip.Channel.SCALE, clip.getTrackChannel(1));
+        assertEquals(1.5f, clip.sample(1, 0.5f), 1e-3);
+        // A track holds its only key for the whole clip
+        assertEquals(30, clip.sample(0, 0), 1e-4);
+    }
+
+    @Test
+    public void applyDrivesOnlyKeyedChannels() {
+        Skeleton skeleton = new Skeleton();
+        int root = skeleton.addJoint(Skeleton.NO_PARENT);
+        int arm = skeleton.addJoint(root);
+        skeleton.setTranslate(arm, 40, 50);
+        Clip clip = new Clip.Builder()
+                .key(arm, Clip.Channel.TRANSLATE_Y, 0, 0)
+                .key(arm, Clip.Channel.TRANSLATE_Y, 1, 100)
+                .key(arm, Clip.Channel.ROTATION, 1, 30)
+                .build();
+        clip.apply(skeleton, 0.25f);
+        assertEquals(40, skeleton.getTranslateX(arm), 0);
+        assertEquals(25, skeleton.getTranslateY(arm), 1e-3);
+        assertEquals(30, skeleton.getRotation(arm), 0);
+        assertEquals(0, skeleton.getRotation(root), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsEmptyClips() {
+        new Clip.Builder().build();
+    }
+}
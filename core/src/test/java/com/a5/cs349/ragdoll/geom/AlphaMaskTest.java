@@ -0,0 +1,119 @@
+package com.a5.cs349.ragdoll.geom;
+
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlphaMaskTest {
+    private static final int OPAQUE = 0xff336699;
+    private static final int HALF = 0x80336699;
+    private static final int CLEAR = 0x00ffffff;
+
+    /**
+     * An opaque disc on a clear square, with a half transparent rim, so its
+     * corners are clear like a cut-out limb's.
+     */
+    private static int[] disc(int size) {
+        int[] pixels = new int[size * size];
+        float r = size / 2f;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float dx = x + 0.5f - r;
+                float dy = y + 0.5f - r;
+                float d = (float) Math.sqrt(dx * dx + dy * dy);
+                pixels[y * size + x] = d < r - 1 ? OPAQUE : d < r ? HALF : CLEAR;
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void fullResolutionMatchesEveryPixel() {
+        int size = 150;                                                 // Rows span three longs
+        int[] pixels = disc(size);
+        AlphaMask mask = AlphaMask.fromArgb(pixels, 0, size, size, size, 1, 0x80);
+        assertEquals(size, mask.getWidth());
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                assertEquals(x + ", " + y, pixels[y * size + x] != CLEAR, mask.isSet(x, y));
+                float u = (x + 0.5f) / size;
+                float v = (y + 0.5f) / size;
+                assertEquals(x + ", " + y, pixels[y * size + x] != CLEAR, mask.contains(u, v));
+            }
+        }
+        assertFalse("corner", mask.contains(0, 0));
+        assertTrue("centre", mask.contains(0.5f, 0.5f));
+    }
+
+    @Test
+    public void thresholdDropsFaintPixels() {
+        int size = 40;
+        AlphaMask mask = AlphaMask.fromArgb(disc(size), 0, size, size, size, 1, 0x81);
+        AlphaMask withRim = AlphaMask.fromArgb(disc(size), 0, size, size, size, 1, 0x80);
+        assertTrue(mask.getCoverage() < withRim.getCoverage());
+    }
+
+    @Test
+    public void coarseCellsNeverMissAnOpaquePixel() {
+        int size = 97;                                                  // Not a multiple of the cell
+        int[] pixels = disc(size);
+        AlphaMask mask = AlphaMask.fromArgb(pixels, 0, size, size, size, 4, 0x80);
+        assertEquals(25, mask.getWidth());
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (pixels[y * size + x] != CLEAR) {
+                    assertTrue(x + ", " + y, mask.isSet(x / 4, y / 4));
+                }
+            }
+        }
+        assertFalse(mask.isSet(0, 0));
+        assertTrue(mask.getByteCount() < size * size / 8);
+    }
+
+    @Test
+    public void readsARegionOfALargerImage() {
+        int stride = 200;
+        int[] atlas = new int[stride * 100];
+        int[] disc = disc(50);
+        for (int y = 0; y < 50; y++) {
+            System.arraycopy(disc, y * 50, atlas, (y + 30) * stride + 120, 50);
+        }
+        AlphaMask region = AlphaMask.fromArgb(atlas, 30 * stride + 120, stride, 50, 50, 1, 0x80);
+        AlphaMask alone = AlphaMask.fromArgb(disc, 0, 50, 50, 50, 1, 0x80);
+        for (int y = 0; y < 50; y++) {
+            for (int x = 0; x < 50; x++) {
+                assertEquals(alone.isSet(x, y), region.isSet(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void pointsOutsideTheImageMiss() {
+        AlphaMask mask = AlphaMask.fromArgb(new int[] {OPAQUE, OPAQUE, OPAQUE, OPAQUE}, 0, 2, 2, 2, 1, 1);
+        assertTrue(mask.contains(0, 0));
+        assertTrue(mask.contains(0.99999994f, 0.99999994f));
+        assertFalse(mask.contains(1, 0.5f));
+        assertFalse(mask.contains(-0.001f, 0.5f));
+        assertFalse(mask.contains(0.5f, Float.NaN));
+    }
+
+    @Test
+    public void lookupsDoNotAllocate() {
+        int size = 256;
+        final AlphaMask mask = AlphaMask.fromArgb(disc(size), 0, size, size, size, 2, 0x80);
+        final int[] hits = new int[1];
+        Runnable lookups = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++) {
+                    hits[0] += mask.contains((i % 317) / 317f, (i % 311) / 311f) ? 1 : 0;
+                }
+            }
+        };
+        lookups.run();
+        long allocated = Allocations.measure(lookups);
+        assertTrue(hits[0] > 0);
+        assertEquals("bytes allocated over 100000 lookups", 0, allocated);
+    }
+}
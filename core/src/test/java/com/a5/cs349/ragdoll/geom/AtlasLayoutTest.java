@@ -0,0 +1,47 @@
+package com.a5.cs349.ragdoll.geom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AtlasLayoutTest {
+    private static final int[] WIDTHS = {300, 120, 80, 200, 150, 60, 250};
+    private static final int[] HEIGHTS = {340, 90, 200, 160, 150, 60, 100};
+
+    @Test
+    public void imagesKeepTheirSizeAndDoNotOverlap() {
+        AtlasLayout layout = AtlasLayout.pack(WIDTHS, HEIGHTS, 512, 2);
+        assertEquals(WIDTHS.length, layout.getCount());
+        for (int i = 0; i < layout.getCount(); i++) {
+            assertEquals(WIDTHS[i], layout.getRight(i) - layout.getLeft(i));
+            assertEquals(HEIGHTS[i], layout.getBottom(i) - layout.getTop(i));
+            assertTrue(layout.getLeft(i) >= 2 && layout.getTop(i) >= 2);
+            assertTrue(layout.getRight(i) <= layout.getWidth() - 2);
+            assertTrue(layout.getBottom(i) <= layout.getHeight() - 2);
+            for (int j = 0; j < i; j++) {
+                // Padding is kept on both sides, so neighbours are at least 4 apart
+                boolean apart = layout.getRight(i) + 4 <= layout.getLeft(j)
+                        || layout.getRight(j) + 4 <= layout.getLeft(i)
+                        || layout.getBottom(i) + 4 <= layout.getTop(j)
+                        || layout.getBottom(j) + 4 <= layout.getTop(i);
+                assertTrue("images " + i + " and " + j + " overlap", apart);
+            }
+        }
+        assertTrue(layout.getWidth() <= 512);
+    }
+
+    @Test
+    public void layoutDependsOnlyOnSizes() {
+        AtlasLayout a = AtlasLayout.pack(WIDTHS, HEIGHTS, 512, 1);
+        AtlasLayout b = AtlasLayout.pack(WIDTHS.clone(), HEIGHTS.clone(), 512, 1);
+        for (int i = 0; i < a.getCount(); i++) {
+            assertEquals(a.getLeft(i), b.getLeft(i));
+            assertEquals(a.getTop(i), b.getTop(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsImagesWiderThanTheAtlas() {
+        AtlasLayout.pack(new int[] {600}, new int[] {10}, 512, 0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.a5.cs349.ragdoll.geom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PolygonShapeTest {
+    // A "U" shape: concave, with a notch between x = 10 and x = 20 above y = 10
+    private static final float[] U_SHAPE = {
+            0, 0, 10, 0, 10, 10, 20, 10, 20, 0, 30, 0, 30, 30, 0, 30
+    };
+
+    @Test
+    public void rectangleContainsInterior() {
+        PolygonShape rect = PolygonShape.rectangle(-10, -5, 10, 5);
+        assertTrue(rect.contains(0, 0));
+        assertTrue(rect.contains(9.9f, -4.9f));
+        assertFalse(rect.contains(11, 0));
+        assertFalse(rect.contains(0, -6));
+    }
+
+    @Test
+    public void concaveNotchIsOutside() {
+        PolygonShape u = new PolygonShape(U_SHAPE);
+        assertTrue(u.contains(5, 5));
+        assertTrue(u.contains(25, 5));
+        assertTrue(u.contains(15, 20));
+        assertFalse(u.contains(15, 5));
+    }
+
+    @Test
+    public void boundsAreComputedOnce() {
+        PolygonShape u = new PolygonShape(U_SHAPE);
+        Bounds b = u.getBounds();
+        assertEquals(0, b.left, 0);
+        assertEquals(0, b.top, 0);
+        assertEquals(30, b.right, 0);
+        assertEquals(30, b.bottom, 0);
+        assertSame(b, u.getBounds());
+        assertEquals(8, u.getVertexCount());
+    }
+
+    @Test
+    public void verticesAreCopied() {
+        float[] vertices = { 0, 0, 10, 0, 0, 10 };
+        PolygonShape triangle = new PolygonShape(vertices);
+        vertices[2] = 100;
+        assertEquals(10, triangle.getX(1), 0);
+        assertFalse(triangle.contains(50, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDegenerateInput() {
+        new PolygonShape(new float[] { 0, 0, 1, 1 });
+    }
+}
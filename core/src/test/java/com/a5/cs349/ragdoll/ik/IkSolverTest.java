@@ -0,0 +1,213 @@
+package com.a5.cs349.ragdoll.ik;
+
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import com.a5.cs349.ragdoll.scene.TestRigs;
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IkSolverTest {
+    private static final int RIGHT_FOOT = 6;
+    private static final int[] EFFECTORS = {TestRigs.LEFT_HAND, TestRigs.RIGHT_HAND, TestRigs.LEFT_FOOT, RIGHT_FOOT};
+    private static final int MAX_FRAMES = 10;
+
+    private RigDefinition rig;
+    private Skeleton skeleton;
+    private IkSolver solver;
+    private final Bounds b = new Bounds();
+
+    @Before
+    public void setUp() {
+        rig = TestRigs.scyther();
+        skeleton = rig.instantiate(540, 900);
+        solver = new IkSolver(rig);
+    }
+
+    private static float wrapDegrees(float degrees) {
+        float d = degrees % 360;
+        return d > 180 ? d - 360 : d < -180 ? d + 360 : d;
+    }
+
+    private float centreX(int joint) {
+        skeleton.getLocalBounds(joint, b);
+        return (b.left + b.right) / 2;
+    }
+
+    private float centreY(int joint) {
+        skeleton.getLocalBounds(joint, b);
+        return (b.top + b.bottom) / 2;
+    }
+
+    /**
+     * Maps a point in joint's coordinates to world coordinates.
+     */
+    private static float worldX(Skeleton skeleton, int joint, float x, float y) {
+        float[] world = skeleton.getWorldTransforms();
+        int o = joint * 6;
+        return world[o] * x + world[o + 2] * y + world[o + 4];
+    }
+
+    private static float worldY(Skeleton skeleton, int joint, float x, float y) {
+        float[] world = skeleton.getWorldTransforms();
+        int o = joint * 6;
+        return world[o + 1] * x + world[o + 3] * y + world[o + 5];
+    }
+
+    /**
+     * Grabs effector by the centre of its hit bounds.
+     */
+    private void grabCentre(Skeleton skeleton, int effector) {
+        float x = centreX(effector);
+        float y = centreY(effector);
+        assertTrue(solver.grab(skeleton, effector,
+                worldX(skeleton, effector, x, y), worldY(skeleton, effector, x, y)));
+    }
+
+    /**
+     * Poses target like skeleton, then turns every joint of effector's
+     * chain by up to spread degrees, within its limit.
+     */
+    private void perturb(Skeleton target, int effector, float spread, Random random) {
+        float[] pose = new float[skeleton.getCount() * Skeleton.POSE_STRIDE];
+        skeleton.getPose(pose, 0);
+        target.setPose(pose, 0);
+        for (int j = effector; target.getParent(j) != Skeleton.NO_PARENT; j = target.getParent(j)) {
+            float max = Math.min(rig.getMaxRotate(j), 180);
+            float r = wrapDegrees(target.getRotation(j)) + (random.nextFloat() * 2 - 1) * spread;
+            target.setRotation(j, Math.max(-max, Math.min(max, r)));
+        }
+    }
+
+    /**
+     * Poses target like skeleton, but with every joint of effector's chain
+     * anywhere within its limit.
+     */
+    private void poseAnywhere(Skeleton target, int effector, Random random) {
+        perturb(target, effector, 0, random);
+        for (int j = effector; target.getParent(j) != Skeleton.NO_PARENT; j = target.getParent(j)) {
+            float max = Math.min(rig.getMaxRotate(j), 180);
+            target.setRotation(j, (random.nextFloat() * 2 - 1) * max);
+        }
+    }
+
+    /**
+     * Solves for the effector's centre in target, frame by frame.
+     *
+     * @return the frames it took, or MAX_FRAMES + 1 if it never got there
+     */
+    private int reach(Skeleton target, int effector) {
+        float cx = centreX(effector);
+        float cy = centreY(effector);
+        float tx = worldX(target, effector, cx, cy);
+        float ty = worldY(target, effector, cx, cy);
+        grabCentre(skeleton, effector);
+        for (int frame = 1; frame <= MAX_FRAMES; frame++) {
+            if (solver.solve(tx, ty)) {
+                assertEquals(tx, worldX(skeleton, effector, cx, cy), 2 * IkSolver.TOLERANCE);
+                assertEquals(ty, worldY(skeleton, effector, cx, cy), 2 * IkSolver.TOLERANCE);
+                return frame;
+            }
+        }
+        return MAX_FRAMES + 1;
+    }
+
+    private void assertWithinLimits() {
+        for (int j = 1; j < skeleton.getCount(); j++) {
+            float r = skeleton.getRotation(j);
+            assertTrue("joint " + j + " at " + r,
+                    Math.abs(wrapDegrees(r)) <= rig.getMaxRotate(j) + 1e-3);
+            assertTrue(r >= 0 && r < 360);
+        }
+    }
+
+    @Test
+    public void chainRunsFromTheEffectorToBelowTheRoot() {
+        grabCentre(skeleton, TestRigs.LEFT_HAND);
+        assertEquals(3, solver.getChainLength());
+        assertEquals(TestRigs.LEFT_HAND, solver.getEffector());
+        assertFalse(solver.grab(skeleton, TestRigs.TORSO, 540, 900));
+        assertFalse(solver.isGrabbing());
+        assertFalse(solver.solve(0, 0));
+    }
+
+    @Test
+    public void followsADragFrameByFrame() {
+        // A finger moves the hand a few degrees' worth of arm per frame
+        Random random = new Random(3);
+        Skeleton target = rig.instantiate(540, 900);
+        for (int trial = 0; trial < 400; trial++) {
+            int effector = EFFECTORS[trial % EFFECTORS.length];
+            perturb(target, effector, 10, random);
+            assertTrue("trial " + trial, reach(target, effector) <= 2);
+            assertWithinLimits();
+        }
+    }
+
+    @Test
+    public void reachesMostPosesFromRestWithinTenFrames() {
+        // Jumping straight to an arbitrary pose can leave the limb against
+        // a limit on the wrong side of the target, which a local solver
+        // cannot get around, so only most must be reached. The Scyther's
+        // feet, far longer than the short legs they turn on, are the ones
+        // that get stuck
+        Random random = new Random(4);
+        Skeleton rest = rig.instantiate(540, 900);
+        float[] restPose = new float[rest.getCount() * Skeleton.POSE_STRIDE];
+        rest.getPose(restPose, 0);
+        Skeleton target = rig.instantiate(540, 900);
+        int trials = 400;
+        int reached = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            skeleton.setPose(restPose, 0);
+            int effector = EFFECTORS[trial % EFFECTORS.length];
+            poseAnywhere(target, effector, random);
+            int frames = reach(target, effector);
+            reached += frames <= MAX_FRAMES ? 1 : 0;
+            assertWithinLimits();
+        }
+        assertTrue(reached >= trials * 80 / 100);
+    }
+
+    @Test
+    public void outOfReachTargetsKeepEveryJointWithinItsLimit() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 500; trial++) {
+            grabCentre(skeleton, EFFECTORS[trial % EFFECTORS.length]);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            float x = 540 + 3000 * (float) Math.cos(angle);
+            float y = 900 + 3000 * (float) Math.sin(angle);
+            assertFalse(solver.solve(x, y));
+            assertWithinLimits();
+        }
+        // Only the chains move
+        assertEquals(0, skeleton.getRotation(TestRigs.TORSO), 0);
+        assertEquals(0, skeleton.getRotation(TestRigs.HEAD), 0);
+        assertEquals(540, skeleton.getTranslateX(TestRigs.TORSO), 0);
+        assertEquals(900, skeleton.getTranslateY(TestRigs.TORSO), 0);
+    }
+
+    @Test
+    public void solveDoesNotAllocate() {
+        grabCentre(skeleton, TestRigs.LEFT_HAND);
+        for (int i = 0; i < 5000; i++) {
+            solver.solve(240 + i % 400, 700 + i % 300);
+        }
+
+        long allocated = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    solver.solve(240 + i % 400, 700 + i % 300);
+                    skeleton.updateWorldTransforms();
+                }
+            }
+        });
+        assertEquals("bytes allocated over 1000 solves", 0, allocated);
+    }
+}
@@ -0,0 +1,196 @@
+package com.a5.cs349.ragdoll.io;
+
+import com.a5.cs349.ragdoll.anim.Clip;
+import com.a5.cs349.ragdoll.anim.Easing;
+import com.a5.cs349.ragdoll.scene.PoseSnapshot;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PoseLibraryTest {
+    private static final int PARTS = 14;                                // CanvasView.BodyPart
+
+    private static File newFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".rdpl");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static Skeleton ragdoll() {
+        Skeleton skeleton = new Skeleton(PARTS);
+        int torso = skeleton.addJoint(Skeleton.NO_PARENT);
+        for (int limb = 0; limb < 4; limb++) {
+            int upper = skeleton.addJoint(torso);
+            int lower = skeleton.addJoint(upper);
+            skeleton.addJoint(lower);
+        }
+        skeleton.addJoint(torso);
+        return skeleton;
+    }
+
+    private static void randomize(Skeleton skeleton, Random random) {
+        for (int j = 0; j < skeleton.getCount(); j++) {
+            skeleton.setTranslate(j, random.nextFloat() * 500, random.nextFloat() * 500);
+            skeleton.setRotation(j, random.nextFloat() * 90 - 45);
+            skeleton.setScale(j, 0.5f + random.nextFloat());
+        }
+    }
+
+    private static float[] poseOf(Skeleton skeleton) {
+        float[] pose = new float[skeleton.getCount() * Skeleton.POSE_STRIDE];
+        skeleton.getPose(pose, 0);
+        return pose;
+    }
+
+    @Test
+    public void posesRoundTripExactly() throws IOException {
+        Random random = new Random(1);
+        Skeleton a = ragdoll();
+        Skeleton b = ragdoll();
+        randomize(a, random);
+        randomize(b, random);
+        File file = newFile("poses");
+        PoseLibraryWriter writer = new PoseLibraryWriter(new FileOutputStream(file));
+        writer.writePose("two", PoseSnapshot.capture(Arrays.asList(a, b)));
+        writer.writePose("one", PoseSnapshot.capture(Collections.singletonList(b)));
+        writer.close();
+
+        PoseLibrary library = PoseLibrary.open(file);
+        assertEquals(2, library.getEntryCount());
+        assertEquals("one", library.getName(1));
+        assertEquals(1, library.indexOf("one"));
+        assertEquals(-1, library.indexOf("three"));
+        assertTrue(library.isPose(0));
+
+        PoseLibrary.Pose two = library.getPose(0);
+        assertEquals(2, two.getSkeletonCount());
+        assertEquals(PARTS, two.getJointCount(1));
+        Skeleton restored = ragdoll();
+        two.restore(1, restored);
+        assertArrayEquals(poseOf(b), poseOf(restored), 0);
+
+        PoseSnapshot snapshot = two.toSnapshot();
+        snapshot.restore(0, restored);
+        assertArrayEquals(poseOf(a), poseOf(restored), 0);
+    }
+
+    @Test
+    public void clipsPlayBackFromTheMapping() throws IOException {
+        Clip clip = new Clip.Builder()
+                .key(7, Clip.Channel.ROTATION, 0, 0)
+                .key(7, Clip.Channel.ROTATION, 1, 80, Easing.EASE_IN_OUT)
+                .key(13, Clip.Channel.SCALE, 0.5f, 1.5f)
+                .build(30);
+        File file = newFile("clips");
+        PoseLibraryWriter writer = new PoseLibraryWriter(new FileOutputStream(file));
+        writer.writePose("rest", PoseSnapshot.capture(Collections.singletonList(ragdoll())));
+        writer.writeClip("wave", clip);
+        writer.close();
+
+        Clip loaded = PoseLibrary.open(file).getClip(1);
+        assertEquals(clip.getDuration(), loaded.getDuration(), 0);
+        assertEquals(clip.getSampleCount(), loaded.getSampleCount());
+        assertEquals(2, loaded.getTrackCount());
+        assertEquals(13, loaded.getTrackJoint(1));
+        assertEquals(Clip.Channel.SCALE, loaded.getTrackChannel(1));
+        for (float t = 0; t <= 1.2f; t += 0.05f) {
+            assertEquals(clip.sample(0, t), loaded.sample(0, t), 0);
+            assertEquals(clip.sample(1, t), loaded.sample(1, t), 0);
+        }
+    }
+
+    @Test
+    public void restoreLeavesJointsWithoutRecordsAlone() throws IOException {
+        Skeleton small = new Skeleton();
+        int root = small.addJoint(Skeleton.NO_PARENT);
+        small.addJoint(root);
+        small.setRotation(1, 30);
+        File file = newFile("partial");
+        PoseLibraryWriter writer = new PoseLibraryWriter(new FileOutputStream(file));
+        writer.writePose("arm", PoseSnapshot.capture(Collections.singletonList(small)));
+        writer.close();
+
+        Skeleton target = ragdoll();
+        target.setRotation(5, 12);
+        PoseLibrary.open(file).getPose(0).restore(0, target);
+        assertEquals(30, target.getRotation(1), 0);
+        assertEquals(12, target.getRotation(5), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherVersions() throws IOException {
+        File file = newFile("future");
+        new PoseLibraryWriter(new FileOutputStream(file)).close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(4);
+        raf.write(PoseLibrary.VERSION + 1);
+        raf.close();
+        PoseLibrary.open(file);
+    }
+
+    /**
+     * Writes count random poses of one ragdoll, named pose0 onwards.
+     *
+     * @return each pose written, by entry
+     */
+    private static float[][] writePoses(File file, int count, Random random) throws IOException {
+        Skeleton skeleton = ragdoll();
+        float[][] poses = new float[count][];
+        PoseLibraryWriter writer = new PoseLibraryWriter(new FileOutputStream(file));
+        for (int i = 0; i < count; i++) {
+            randomize(skeleton, random);
+            poses[i] = poseOf(skeleton);
+            writer.writePose("pose" + i, PoseSnapshot.capture(Collections.singletonList(skeleton)));
+        }
+        writer.close();
+        return poses;
+    }
+
+    @Test
+    public void tenThousandPosesRoundTrip() throws IOException {
+        int count = 10000;
+        File file = newFile("large");
+        float[][] expected = writePoses(file, count, new Random(2));
+
+        PoseLibrary library = PoseLibrary.open(file);
+        assertEquals(count, library.getEntryCount());
+        Skeleton target = ragdoll();
+        for (int i = 0; i < count; i += 97) {
+            library.getPose(i).restore(0, target);
+            assertArrayEquals(expected[i], poseOf(target), 0);
+        }
+        assertEquals(9999, library.indexOf("pose9999"));
+    }
+
+    @Test
+    public void openReadsNothingButTheHeaderAndTrailer() throws IOException {
+        int count = 100;
+        File file = newFile("corrupt");
+        float[][] expected = writePoses(file, count, new Random(3));
+        // Overwrite every entry but the last, up to the index
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() - PoseLibrary.TRAILER_SIZE);
+        long index = Long.reverseBytes(raf.readLong());
+        raf.seek(index + (count - 1) * 8L);
+        long last = Long.reverseBytes(raf.readLong());
+        raf.seek(PoseLibrary.HEADER_SIZE);
+        raf.write(new byte[(int) last - PoseLibrary.HEADER_SIZE]);
+        raf.close();
+
+        PoseLibrary library = PoseLibrary.open(file);
+        assertEquals(count, library.getEntryCount());
+        assertEquals(count - 1, library.indexOf("pose" + (count - 1)));
+        Skeleton target = ragdoll();
+        library.getPose(count - 1).restore(0, target);
+        assertArrayEquals(expected[count - 1], poseOf(target), 0);
+    }
+}
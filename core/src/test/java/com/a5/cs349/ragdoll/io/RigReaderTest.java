@@ -0,0 +1,146 @@
+package com.a5.cs349.ragdoll.io;
+
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RigReaderTest {
+    private static final String ARM = ""
+            + "ragdoll-rig 1\n"
+            + "# A torso with a two-bone arm\n"
+            + "part torso -\n"
+            + "    draggable\n"
+            + "    polygon -10 -20  10 -20  0 20\n"
+            + "    image body -12 -22 12 22\n"
+            + "\n"
+            + "part upper torso   # hangs off the torso\n"
+            + "    offset 5 -15\n"
+            + "    limit 90\n"
+            + "    scalable\n"
+            + "    rect -2 0 2 30\n"
+            + "    image upper -3 -1 3 31\n"
+            + "part lower upper\n"
+            + "    offset 0 30\n"
+            + "    rect -2 0 2 25\n";
+
+    private static final RigReader.ImageResolver NAMES = new RigReader.ImageResolver() {
+        @Override
+        public int resolve(String image) {
+            return image.length();
+        }
+    };
+
+    private static RigDefinition read(String text) throws IOException {
+        return RigReader.read(new StringReader(text), NAMES);
+    }
+
+    private static void assertRejected(String text, String message) {
+        try {
+            read(text);
+            fail("Read " + text);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void readsEveryField() throws IOException {
+        RigDefinition rig = read(ARM);
+
+        assertEquals(3, rig.getPartCount());
+        assertEquals(Skeleton.NO_PARENT, rig.getParent(0));
+        assertEquals(0, rig.getParent(1));
+        assertEquals(1, rig.getParent(2));
+
+        assertTrue(rig.isDraggable(0));
+        assertFalse(rig.isDraggable(1));
+        assertTrue(rig.isScalable(1));
+        assertFalse(rig.isScalable(2));
+        assertEquals(180, rig.getMaxRotate(0), 0);
+        assertEquals(90, rig.getMaxRotate(1), 0);
+        assertEquals(5, rig.getOffsetX(1), 0);
+        assertEquals(-15, rig.getOffsetY(1), 0);
+        assertEquals(30, rig.getOffsetY(2), 0);
+
+        assertEquals(3, rig.getShape(0).getVertexCount());
+        assertTrue(rig.getShape(0).contains(0, 0));
+        assertFalse(rig.getShape(0).contains(9, 15));
+        assertEquals(4, rig.getShape(1).getVertexCount());
+
+        Bounds bounds = new Bounds();
+        assertEquals("body".length(), rig.getImage(0));
+        rig.getImageBounds(1, bounds);
+        assertEquals(-3, bounds.left, 0);
+        assertEquals(31, bounds.bottom, 0);
+        // Without an image, a part is drawn into its hit shape's bounds
+        assertEquals(RigDefinition.NO_IMAGE, rig.getImage(2));
+        rig.getImageBounds(2, bounds);
+        assertEquals(25, bounds.bottom, 0);
+    }
+
+    @Test
+    public void instancesHitWhereTheShapesAre() throws IOException {
+        RigDefinition rig = read(ARM);
+        Skeleton skeleton = rig.instantiate(100, 100);
+        assertEquals(0, skeleton.hitTest(0, 100, 100, rig));
+        // The lower arm hangs from (105, 85) + (0, 30)
+        assertEquals(2, skeleton.hitTest(0, 105, 125, rig));
+    }
+
+    @Test
+    public void rejectsMalformedRigs() {
+        assertRejected("", "Not a rig");
+        assertRejected("ragdoll-rig 2\n", "version");
+        assertRejected("ragdoll-rig 1\n", "at least one part");
+        assertRejected("ragdoll-rig 1\noffset 1 2\n", "before the first part");
+        assertRejected("ragdoll-rig 1\npart a -\n", "no rect or polygon");
+        assertRejected("ragdoll-rig 1\npart a -\nrect 0 0 1\n", "Line 3");
+        assertRejected("ragdoll-rig 1\npart a -\nrect 0 0 1 x\n", "Not a number: x");
+        assertRejected("ragdoll-rig 1\npart a -\nrect 0 0 1 1\nrect 0 0 1 1\n", "more than one");
+        assertRejected("ragdoll-rig 1\npart a b\n", "not defined above");
+        assertRejected("ragdoll-rig 1\npart a -\nrect 0 0 1 1\npart a a\n", "defined twice");
+        assertRejected("ragdoll-rig 1\npart a -\nrect 0 0 1 1\nspin 3\n", "Unknown keyword spin");
+        assertRejected("ragdoll-rig 1\npart a -\npolygon 0 0 1 1\n", "three x, y pairs");
+        // b is done once c starts below a, so d cannot hang off it
+        assertRejected("ragdoll-rig 1\npart a -\nrect 0 0 1 1\npart b a\nrect 0 0 1 1\n"
+                + "part c a\nrect 0 0 1 1\npart d b\nrect 0 0 1 1\n", "depth-first");
+    }
+
+    @Test
+    public void loaderReadsEachRigOnce() throws IOException {
+        final List<String> opened = new ArrayList<>();
+        RigLoader loader = new RigLoader(new RigLoader.Source() {
+            @Override
+            public InputStream open(String name) throws IOException {
+                opened.add(name);
+                if (!name.equals("arm.rig")) {
+                    throw new IOException("No asset " + name);
+                }
+                return new ByteArrayInputStream(ARM.getBytes(PoseLibrary.UTF_8));
+            }
+        }, NAMES);
+
+        assertFalse(loader.isLoaded("arm.rig"));
+        RigDefinition first = loader.load("arm.rig");
+        assertSame(first, loader.load("arm.rig"));
+        assertTrue(loader.isLoaded("arm.rig"));
+        assertEquals(1, opened.size());
+
+        try {
+            loader.load("leg.rig");
+            fail("Loaded a rig that is not there");
+        } catch (IOException expected) {
+        }
+        assertFalse(loader.isLoaded("leg.rig"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.a5.cs349.ragdoll.io;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SizedLruCacheTest {
+    /**
+     * Caches byte arrays, sized by their length.
+     */
+    private static SizedLruCache<String, byte[]> cache(long budget) {
+        return new SizedLruCache<String, byte[]>(budget) {
+            @Override
+            protected long sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() {
+        SizedLruCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        assertNotNull(cache.get("a"));                                  // b is now the eldest
+        cache.put("c", new byte[40]);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void replacingAValueResizes() {
+        SizedLruCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[10]);
+        assertEquals(1, cache.getCount());
+        assertEquals(10, cache.getSize());
+        assertEquals(10, cache.remove("a").length);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void valueOverTheBudgetIsNotKept() {
+        SizedLruCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[40]);
+        assertFalse(cache.put("huge", new byte[101]));
+        assertNull(cache.get("huge"));
+        assertNotNull(cache.get("a"));
+        assertEquals(40, cache.getSize());
+    }
+
+    @Test
+    public void loweringTheBudgetEvictsAtOnce() {
+        SizedLruCache<String, byte[]> cache = cache(100);
+        for (int i = 0; i < 5; i++) {
+            cache.put("k" + i, new byte[20]);
+        }
+        cache.setBudget(50);
+        assertEquals(2, cache.getCount());
+        assertNotNull(cache.get("k3"));
+        assertNotNull(cache.get("k4"));
+        assertTrue(cache.getSize() <= cache.getBudget());
+    }
+
+    @Test
+    public void neverGoesOverBudgetUnderConcurrentUse() throws InterruptedException {
+        final SizedLruCache<String, byte[]> cache = cache(1000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        String key = "k" + (i * 7 + id) % 64;
+                        if (cache.get(key) == null) {
+                            cache.put(key, new byte[(i + id) % 100]);
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(cache.getSize() <= 1000);
+    }
+}
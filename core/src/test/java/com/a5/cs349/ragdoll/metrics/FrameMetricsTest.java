@@ -0,0 +1,90 @@
+package com.a5.cs349.ragdoll.metrics;
+
+import com.a5.cs349.ragdoll.anim.ManualClock;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times phases against a ManualClock, so every duration is known.
+ */
+public class FrameMetricsTest {
+    private ManualClock clock;
+    private FrameMetrics metrics;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        clock.advance(1000000000L);
+        metrics = new FrameMetrics(clock);
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        long start = metrics.begin();
+        clock.advance(500);
+        metrics.end(FrameMetrics.Phase.DRAW, start);
+        metrics.onInput(clock.nanoTime());
+        metrics.onPresented();
+
+        for (FrameMetrics.Phase phase : FrameMetrics.Phase.values()) {
+            assertEquals(phase.name(), 0, metrics.getHistogram(phase).getCount());
+        }
+        assertEquals(0, metrics.getLatency().getCount());
+    }
+
+    @Test
+    public void phasesAreTimedApart() {
+        metrics.setEnabled(true);
+        long input = metrics.begin();
+        clock.advance(100);
+        long hit = metrics.begin();
+        clock.advance(10);
+        metrics.end(FrameMetrics.Phase.HIT_TEST, hit);
+        metrics.end(FrameMetrics.Phase.INPUT, input);
+
+        assertEquals(110, metrics.getHistogram(FrameMetrics.Phase.INPUT).getMax());
+        assertEquals(10, metrics.getHistogram(FrameMetrics.Phase.HIT_TEST).getMax());
+        assertEquals(0, metrics.getHistogram(FrameMetrics.Phase.DRAW).getCount());
+    }
+
+    @Test
+    public void phaseBegunWhileDisabledIsDropped() {
+        long start = metrics.begin();
+        metrics.setEnabled(true);
+        clock.advance(100);
+        metrics.end(FrameMetrics.Phase.UPDATE, start);
+        assertEquals(0, metrics.getHistogram(FrameMetrics.Phase.UPDATE).getCount());
+    }
+
+    @Test
+    public void latencyRunsFromOldestTouchToPresent() {
+        metrics.setEnabled(true);
+        long touch = clock.nanoTime();
+        metrics.onInput(touch);
+        clock.advance(4000000);
+        metrics.onInput(clock.nanoTime());
+        clock.advance(12000000);
+        metrics.onPresented();
+        // Nothing new to show
+        clock.advance(16000000);
+        metrics.onPresented();
+
+        assertEquals(1, metrics.getLatency().getCount());
+        assertEquals(16000000, metrics.getLatency().getMax());
+    }
+
+    @Test
+    public void summaryHasALinePerPhaseAndLatency() {
+        metrics.setEnabled(true);
+        long start = metrics.begin();
+        clock.advance(1234567);
+        metrics.end(FrameMetrics.Phase.DRAW, start);
+
+        String summary = metrics.toString();
+        assertEquals(FrameMetrics.Phase.values().length + 1, summary.split("\n").length);
+        assertTrue(summary, summary.contains("DRAW p50 1.23 p99 1.23 max 1.23 ms (1)"));
+        assertTrue(summary, summary.contains("LATENCY p50 0.00"));
+    }
+}
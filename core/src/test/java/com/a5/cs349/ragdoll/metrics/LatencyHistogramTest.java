@@ -0,0 +1,109 @@
+package com.a5.cs349.ragdoll.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    private static final double TOLERANCE = 1.0 / LatencyHistogram.SUB_BUCKETS;
+
+    @Test
+    public void emptyReadsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        long previousBound = -1;
+        int previousIndex = -1;
+        for (long v = 0; v < 1 << 16; v++) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue("index of " + v, index >= previousIndex);
+            assertTrue(v + " within its bucket", v <= LatencyHistogram.upperBoundOf(index));
+            if (index != previousIndex) {
+                assertEquals("first value of bucket " + index, previousBound + 1, v);
+                previousBound = LatencyHistogram.upperBoundOf(index);
+                previousIndex = index;
+            }
+        }
+        int last = LatencyHistogram.indexOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(last));
+    }
+
+    @Test
+    public void percentilesAreWithinABucket() {
+        Random random = new Random(7);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around a millisecond, like frame phases
+            values[i] = (long) (1e6 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double p : new double[] {1, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(values.length * p / 100) - 1];
+            long read = histogram.getPercentile(p);
+            assertTrue("p" + p + " " + read + " below " + exact, read >= exact);
+            assertTrue("p" + p + " " + read + " too far above " + exact,
+                    read <= exact * (1 + TOLERANCE));
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        histogram.record(40);
+        assertEquals(40, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        final int threads = 4;
+        final int perThread = 200000;
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] recorders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long base = t * 1000;
+            recorders[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(base + i % 1000);
+                    }
+                }
+            });
+            recorders[t].start();
+        }
+        start.countDown();
+        for (Thread t : recorders) {
+            t.join();
+        }
+
+        assertEquals((long) threads * perThread, histogram.getCount());
+        assertEquals((threads - 1) * 1000 + 999, histogram.getMax());
+    }
+}
@@ -0,0 +1,101 @@
+package com.a5.cs349.ragdoll.physics;
+
+import com.a5.cs349.ragdoll.anim.ManualClock;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import com.a5.cs349.ragdoll.scene.TestRigs;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Steps whole scenes of ragdolls through PhysicsWorld, on the calling
+ * thread and on pools of 1, 2, 4 and 8 threads, which must agree bit for
+ * bit. PhysicsWorldBenchmark measures the speedup.
+ */
+public class PhysicsWorldTest {
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final float WIDTH = 1080;
+    private static final float HEIGHT = 1920;
+    private static final long FRAME_NANOS = 16666667;                  // Two steps per update
+
+    private static final class Scene {
+        final ManualClock clock = new ManualClock();
+        final PhysicsWorld world;
+        final Skeleton[] skeletons;
+
+        Scene(RigDefinition rig, int n, ForkJoinPool pool) {
+            world = new PhysicsWorld(clock, pool);
+            world.setLimits(0, 0, WIDTH, HEIGHT);
+            skeletons = new Skeleton[n];
+            int columns = (int) Math.ceil(Math.sqrt(n));
+            for (int i = 0; i < n; i++) {
+                Skeleton skeleton = rig.instantiate((i % columns + 0.5f) * WIDTH / columns, 600);
+                // Every ragdoll lands differently
+                skeleton.setRotation(TestRigs.TORSO, i * 7 % 40 - 20);
+                skeleton.setRotation(TestRigs.LEFT_ARM, i * 13 % 90);
+                skeletons[i] = skeleton;
+                world.add(new VerletBody(skeleton, rig));
+            }
+            world.update();
+        }
+
+        void run(int frames) {
+            for (int f = 0; f < frames; f++) {
+                clock.advance(FRAME_NANOS);
+                world.update();
+            }
+        }
+
+        float[] pose() {
+            float[] pose = new float[skeletons.length * skeletons[0].getCount() * Skeleton.POSE_STRIDE];
+            for (int i = 0; i < skeletons.length; i++) {
+                skeletons[i].getPose(pose, i * skeletons[i].getCount() * Skeleton.POSE_STRIDE);
+            }
+            return pose;
+        }
+    }
+
+    @Test
+    public void resultsMatchBitForBitOnAnyThreadCount() {
+        RigDefinition rig = TestRigs.scyther();
+        Scene reference = new Scene(rig, 37, null);
+        reference.run(240);
+        float[] expected = reference.pose();
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                Scene scene = new Scene(rig, 37, pool);
+                scene.run(240);
+                float[] actual = scene.pose();
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(threads + " threads, value " + i,
+                            Float.floatToIntBits(expected[i]), Float.floatToIntBits(actual[i]));
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void parallelUpdateReportsWhenEveryBodyHasSettled() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Scene scene = new Scene(TestRigs.scyther(), 5, pool);
+            boolean simulating = true;
+            for (int f = 0; f < 60 * 20 && simulating; f++) {
+                scene.clock.advance(FRAME_NANOS);
+                simulating = scene.world.update();
+            }
+            assertFalse("still moving after 20 s", simulating);
+            for (int i = 0; i < scene.world.getBodyCount(); i++) {
+                assertFalse(scene.world.getBody(i).isSimulating());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
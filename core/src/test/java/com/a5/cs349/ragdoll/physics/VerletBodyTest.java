@@ -0,0 +1,186 @@
+package com.a5.cs349.ragdoll.physics;
+
+import com.a5.cs349.ragdoll.anim.ManualClock;
+import com.a5.cs349.ragdoll.geom.Bounds;
+import com.a5.cs349.ragdoll.geom.PolygonShape;
+import com.a5.cs349.ragdoll.scene.RigDefinition;
+import com.a5.cs349.ragdoll.scene.Skeleton;
+import com.a5.cs349.ragdoll.scene.TestRigs;
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VerletBodyTest {
+    private static final float FLOOR = 1900;
+
+    private RigDefinition rig;
+    private Skeleton skeleton;
+    private VerletBody body;
+    private Bounds limits;
+
+    @Before
+    public void setUp() {
+        rig = TestRigs.scyther();
+        skeleton = rig.instantiate(540, 600);
+        body = new VerletBody(skeleton, rig);
+        limits = new Bounds();
+        limits.set(0, 0, 1080, FLOOR);
+    }
+
+    private void step(int steps) {
+        for (int s = 0; s < steps; s++) {
+            body.step(PhysicsWorld.STEP_SECONDS, 0, PhysicsWorld.DEFAULT_GRAVITY, limits);
+        }
+    }
+
+    private static float wrapDegrees(float degrees) {
+        float d = degrees % 360;
+        return d > 180 ? d - 360 : d < -180 ? d + 360 : d;
+    }
+
+    @Test
+    public void stepWithoutForcesKeepsThePose() {
+        skeleton.setRotation(TestRigs.LEFT_ARM, 40);
+        skeleton.setRotation(TestRigs.HEAD, 340);
+        body.sync();
+        // The view's edges would catch the arm's corners
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        body.step(PhysicsWorld.STEP_SECONDS, 0, 0, limits);
+        assertEquals(40, skeleton.getRotation(TestRigs.LEFT_ARM), 1e-3);
+        assertEquals(340, skeleton.getRotation(TestRigs.HEAD), 1e-3);
+        assertEquals(0, wrapDegrees(skeleton.getRotation(TestRigs.TORSO)), 1e-3);
+        assertEquals(540, skeleton.getTranslateX(TestRigs.TORSO), 1e-3);
+        assertEquals(600, skeleton.getTranslateY(TestRigs.TORSO), 1e-3);
+    }
+
+    @Test
+    public void fallsUnderGravity() {
+        step(12);
+        // 0.1 s of free fall from rest is about g t^2 / 2
+        assertEquals(600 + PhysicsWorld.DEFAULT_GRAVITY * 0.01f / 2,
+                skeleton.getTranslateY(TestRigs.TORSO), 5);
+        assertEquals(540, skeleton.getTranslateX(TestRigs.TORSO), 1e-2);
+    }
+
+    @Test
+    public void collapsesOnTheFloorWithinItsJointLimits() {
+        // Knock it off balance so it does not land flat
+        skeleton.setRotation(TestRigs.TORSO, 20);
+        body.sync();
+        for (int second = 0; second < 15 && body.isSimulating(); second++) {
+            step(120);
+            for (int j = 1; j < skeleton.getCount(); j++) {
+                float max = rig.getMaxRotate(j);
+                assertTrue("joint " + j + " at " + skeleton.getRotation(j),
+                        Math.abs(wrapDegrees(skeleton.getRotation(j))) <= max + 1e-3);
+            }
+        }
+        assertFalse("still moving after 15 s", body.isSimulating());
+        Bounds b = new Bounds();
+        for (int j = 0; j < skeleton.getCount(); j++) {
+            // The pose is written from the bodies' angles, which the
+            // constraints leave a little unsolved over the long arms
+            assertTrue("joint " + j + " at " + skeleton.getWorldY(j), skeleton.getWorldY(j) <= FLOOR + 2);
+        }
+        skeleton.getWorldBounds(TestRigs.TORSO, b);
+        assertTrue("torso did not reach the floor", b.bottom > FLOOR - 600);
+    }
+
+    @Test
+    public void aLongHandOnAShortForearmIsNotThrown() {
+        // The Scyther's right arm: the hand is five times the forearm's
+        // length, and its pivot lies close to the line from the elbow to
+        // the forearm's far corner
+        RigDefinition.Builder b = new RigDefinition.Builder();
+        int torso = b.addPart(Skeleton.NO_PARENT, PolygonShape.rectangle(-83, -57, 62, 191));
+        int upper = b.addPart(torso, PolygonShape.rectangle(-11.4f, -60, 102.6f, 60));
+        b.setOffset(upper, 79.4f, -45);
+        int lower = b.addPart(upper, PolygonShape.rectangle(-4.4f, 0, 43.6f, 82));
+        b.setOffset(lower, 50.4f, 39);
+        b.setMaxRotate(lower, 135);
+        int hand = b.addPart(lower, PolygonShape.rectangle(-16, -21.85f, 304, 424.15f));
+        b.setOffset(hand, 31, 78.85f);
+        b.setMaxRotate(hand, 35);
+        RigDefinition arm = b.build();
+        skeleton = arm.instantiate(540, 600);
+        body = new VerletBody(skeleton, arm);
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, FLOOR);
+        for (int s = 0; s < 15 * 120 && body.isSimulating(); s++) {
+            step(1);
+            assertTrue("thrown up to " + skeleton.getTranslateY(torso), skeleton.getTranslateY(torso) >= 600);
+        }
+        assertFalse("still moving after 15 s", body.isSimulating());
+    }
+
+    @Test
+    public void syncWakesASleepingBody() {
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, FLOOR);
+        step(1800);
+        assertFalse(body.isSimulating());
+        float y = skeleton.getTranslateY(TestRigs.TORSO);
+        step(10);
+        assertEquals(y, skeleton.getTranslateY(TestRigs.TORSO), 0);
+        skeleton.setTranslate(TestRigs.TORSO, 540, 600);
+        body.sync();
+        assertTrue(body.isSimulating());
+        step(10);
+        assertTrue(skeleton.getTranslateY(TestRigs.TORSO) > 600);
+    }
+
+    @Test
+    public void heldBodiesStayPutAndFallFromWhereTheyAreLetGo() {
+        // Let go with nothing but the floor in reach
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, FLOOR);
+        body.setHeld(true);
+        step(60);
+        assertEquals(600, skeleton.getTranslateY(TestRigs.TORSO), 0);
+        skeleton.setTranslate(TestRigs.TORSO, 500, 300);
+        body.setHeld(false);
+        step(1);
+        assertEquals(500, skeleton.getTranslateX(TestRigs.TORSO), 1e-2);
+        assertTrue(skeleton.getTranslateY(TestRigs.TORSO) > 300);
+        assertTrue(skeleton.getTranslateY(TestRigs.TORSO) < 301);
+    }
+
+    @Test
+    public void worldStepsAtAFixedRate() {
+        ManualClock clock = new ManualClock();
+        PhysicsWorld world = new PhysicsWorld(clock);
+        world.setLimits(0, 0, 1080, FLOOR);
+        world.add(body);
+        Skeleton other = rig.instantiate(540, 600);
+        VerletBody reference = new VerletBody(other, rig);
+        // Time before the first update is not caught up, and half a step
+        // carries over into the next update
+        clock.advanceSeconds(1);
+        assertTrue(world.update());
+        assertEquals(600, skeleton.getTranslateY(TestRigs.TORSO), 0);
+        for (int f = 0; f < 10; f++) {
+            clock.advanceSeconds(PhysicsWorld.STEP_SECONDS * 1.5f);
+            world.update();
+        }
+        for (int s = 0; s < 15; s++) {
+            reference.step(PhysicsWorld.STEP_SECONDS, 0, PhysicsWorld.DEFAULT_GRAVITY, limits);
+        }
+        assertEquals(other.getTranslateY(TestRigs.TORSO), skeleton.getTranslateY(TestRigs.TORSO), 1e-3);
+        assertSame(body, world.find(skeleton));
+    }
+
+    @Test
+    public void stepDoesNotAllocate() {
+        limits.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        step(5000);
+
+        long allocated = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                step(1000);
+            }
+        });
+        assertEquals("bytes allocated over 1000 steps", 0, allocated);
+    }
+}
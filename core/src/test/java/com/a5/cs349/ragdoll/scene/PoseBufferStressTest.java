@@ -0,0 +1,172 @@
+package com.a5.cs349.ragdoll.scene;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writers stamp every value of a frame, and its joint count, with one
+ * number; readers check that each frame they acquire carries a single
+ * stamp. A frame that was handed out while still being written would mix
+ * two.
+ */
+public class PoseBufferStressTest {
+    private static final int WRITERS = 3;
+    private static final int READERS = 3;
+    private static final int FRAMES_PER_WRITER = 100000;
+    private static final int STAMP_BITS = 21;                           // Stamps stay exact as floats
+
+    @Test
+    public void framesAreNeverTorn() throws InterruptedException {
+        final PoseBuffer buffer = new PoseBuffer();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicLong framesChecked = new AtomicLong();
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int id = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    PoseBuffer.Writer writer = buffer.newWriter();
+                    await(start);
+                    for (int f = 0; f < FRAMES_PER_WRITER; f++) {
+                        int stamp = (id << STAMP_BITS) + f;
+                        writer.begin();
+                        for (int j = 0, n = jointsFor(stamp); j < n; j++) {
+                            writer.addJoint(stamp, stamp, stamp, stamp, stamp, stamp, stamp);
+                        }
+                        writer.publish();
+                    }
+                }
+            });
+        }
+
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    PoseBuffer.Reader reader = buffer.newReader();
+                    await(start);
+                    while (writing.get() && failure.get() == null) {
+                        PoseBuffer.Frame frame = reader.acquire();
+                        if (frame.getSequence() == 0) {
+                            continue;
+                        }
+                        String error = check(frame);
+                        if (error != null) {
+                            failure.compareAndSet(null, error);
+                        }
+                        framesChecked.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        for (Thread t : writers) {
+            t.start();
+        }
+        for (Thread t : readers) {
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : writers) {
+            t.join();
+        }
+        writing.set(false);
+        for (Thread t : readers) {
+            t.join();
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertTrue("readers never saw a frame", framesChecked.get() > 0);
+    }
+
+    @Test
+    public void readerSeesTheLatestFrameAndKeepsIt() {
+        PoseBuffer buffer = new PoseBuffer();
+        PoseBuffer.Writer writer = buffer.newWriter();
+        PoseBuffer.Reader reader = buffer.newReader();
+        assertEquals(0, reader.acquire().getSequence());
+
+        writer.begin();
+        writer.addJoint(0, 1, 0, 0, 1, 10, 20);
+        writer.publish();
+        writer.begin();
+        writer.addJoint(0, 1, 0, 0, 1, 30, 40);
+        long second = writer.publish();
+
+        PoseBuffer.Frame frame = reader.acquire();
+        assertEquals(second, frame.getSequence());
+        assertEquals(30, frame.getTransforms()[4], 0);
+        // Writing on doesn't touch the frame the reader holds
+        writer.begin();
+        writer.addJoint(0, 1, 0, 0, 1, 50, 60);
+        assertEquals(30, frame.getTransforms()[4], 0);
+        assertSame(frame, reader.acquire());
+    }
+
+    @Test
+    public void skeletonsArePublishedWithTheirImageStretch() {
+        Skeleton skeleton = new Skeleton();
+        int root = skeleton.addJoint(Skeleton.NO_PARENT);
+        int arm = skeleton.addJoint(root);
+        skeleton.setTranslate(root, 100, 50);
+        skeleton.setTranslate(arm, 0, 20);
+        skeleton.setScalable(arm, true);
+        skeleton.scale(arm, 2);
+
+        PoseBuffer buffer = new PoseBuffer();
+        PoseBuffer.Writer writer = buffer.newWriter();
+        writer.begin();
+        writer.addSkeleton(skeleton);
+        writer.publish();
+
+        PoseBuffer.Frame frame = buffer.newReader().acquire();
+        assertEquals(2, frame.getJointCount());
+        assertEquals(arm, frame.getPart(1));
+        float[] t = frame.getTransforms();
+        assertEquals(2, t[6 + 3], 1e-6);
+        assertEquals(100, t[6 + 4], 1e-4);
+        assertEquals(70, t[6 + 5], 1e-4);
+    }
+
+    private static int jointsFor(int stamp) {
+        return 1 + stamp % 37;
+    }
+
+    private static String check(PoseBuffer.Frame frame) {
+        int stamp = frame.getPart(0);
+        if (frame.getJointCount() != jointsFor(stamp)) {
+            return "frame " + stamp + " has " + frame.getJointCount() + " joints";
+        }
+        float[] t = frame.getTransforms();
+        for (int j = 0, n = frame.getJointCount(); j < n; j++) {
+            if (frame.getPart(j) != stamp) {
+                return "frame " + stamp + " joint " + j + " is from frame " + frame.getPart(j);
+            }
+            for (int o = j * 6; o < j * 6 + 6; o++) {
+                if (t[o] != stamp) {
+                    return "frame " + stamp + " value " + o + " is from frame " + t[o];
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.a5.cs349.ragdoll.scene;
+
+import com.a5.cs349.ragdoll.testing.Allocations;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PoseHistoryTest {
+    private Skeleton first;
+    private Skeleton second;
+    private PoseHistory.Target scene;
+
+    @Before
+    public void setUp() {
+        first = TestRigs.chain(540, 960);
+        second = TestRigs.chain(100, 200);
+        scene = new PoseHistory.Target() {
+            @Override
+            public Skeleton getSkeleton(int id) {
+                return id == 0 ? first : second;
+            }
+        };
+    }
+
+    private static float[] pose(Skeleton skeleton) {
+        float[] pose = new float[skeleton.getCount() * Skeleton.POSE_STRIDE];
+        skeleton.getPose(pose, 0);
+        return pose;
+    }
+
+    private static void assertSamePose(float[] expected, Skeleton skeleton) {
+        float[] actual = pose(skeleton);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("channel " + i, Float.floatToRawIntBits(expected[i]), Float.floatToRawIntBits(actual[i]));
+        }
+    }
+
+    @Test
+    public void undoAndRedoAreExact() {
+        PoseHistory history = new PoseHistory();
+        float[] start = pose(first);
+
+        history.beginGesture();
+        history.track(0, first);
+        first.rotate(1, 33.3f);
+        first.translateInWorld(0, 12.7f, -3.1f);
+        first.scale(2, 1.37f);
+        assertTrue(history.endGesture());
+        float[] end = pose(first);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(history.undo(scene));
+            assertSamePose(start, first);
+            assertFalse(history.canUndo());
+            assertTrue(history.redo(scene));
+            assertSamePose(end, first);
+            assertFalse(history.canRedo());
+        }
+    }
+
+    @Test
+    public void onlyChangedChannelsAreKept() {
+        PoseHistory history = new PoseHistory();
+        history.beginGesture();
+        history.track(0, first);
+        first.rotate(1, 10);
+        history.endGesture();
+        assertEquals("one channel of 16 bytes", 16, history.getByteCount());
+    }
+
+    @Test
+    public void undoLeavesOtherChangesAlone() {
+        PoseHistory history = new PoseHistory();
+        history.beginGesture();
+        history.track(0, first);
+        first.rotate(1, 10);
+        history.endGesture();
+
+        // Say physics moves the body after the gesture
+        first.translate(0, 5, 5);
+        float x = first.getTranslateX(0);
+        history.undo(scene);
+        assertEquals(0, first.getRotation(1), 0);
+        assertEquals(x, first.getTranslateX(0), 0);
+    }
+
+    @Test
+    public void aGestureCanSpanSkeletons() {
+        PoseHistory history = new PoseHistory();
+        float[] firstStart = pose(first);
+        float[] secondStart = pose(second);
+        history.beginGesture();
+        history.track(0, first);
+        history.track(1, second);
+        history.track(0, first);                                        // Tracked once
+        first.rotate(3, 90);
+        second.translate(0, -40, 25);
+        assertTrue(history.endGesture());
+        assertEquals(1, history.getUndoCount());
+
+        history.undo(scene);
+        assertSamePose(firstStart, first);
+        assertSamePose(secondStart, second);
+    }
+
+    @Test
+    public void gesturesThatChangeNothingAreNotKept() {
+        PoseHistory history = new PoseHistory();
+        history.beginGesture();
+        history.track(0, first);
+        assertFalse(history.endGesture());
+        history.beginGesture();
+        assertFalse(history.endGesture());
+        assertFalse(history.canUndo());
+        assertFalse("not recording", history.endGesture());
+    }
+
+    @Test
+    public void aNewGestureDropsRedo() {
+        PoseHistory history = new PoseHistory();
+        for (int i = 1; i <= 3; i++) {
+            history.beginGesture();
+            history.track(0, first);
+            first.setRotation(1, i * 10);
+            history.endGesture();
+        }
+        history.undo(scene);
+        history.undo(scene);
+        assertEquals(10, first.getRotation(1), 0);
+        assertEquals(2, history.getRedoCount());
+
+        history.beginGesture();
+        history.track(0, first);
+        first.setRotation(2, 45);
+        history.endGesture();
+        assertFalse(history.canRedo());
+        assertEquals(2, history.getUndoCount());
+        history.undo(scene);
+        history.undo(scene);
+        assertEquals(0, first.getRotation(1), 0);
+        assertEquals(0, first.getRotation(2), 0);
+    }
+
+    @Test
+    public void theOldestEntriesAreDroppedWhenFull() {
+        PoseHistory history = new PoseHistory(8, 20);
+        for (int i = 1; i <= 100; i++) {
+            history.beginGesture();
+            history.track(0, first);
+            first.setRotation(1 + i % 3, i);
+            first.translate(0, 1, 0);
+            history.endGesture();
+            assertTrue(history.getByteCount() <= 20 * 16);
+            assertTrue(history.getUndoCount() <= 8);
+        }
+        float[] end = pose(first);
+        int kept = history.getUndoCount();
+        assertTrue(kept > 0);
+        while (history.undo(scene)) {
+        }
+        assertEquals(100 - kept, first.getTranslateX(0) - 540, 0);
+        while (history.redo(scene)) {
+        }
+        assertSamePose(end, first);
+    }
+
+    @Test
+    public void aGestureBiggerThanTheHistoryIsDroppedAlone() {
+        PoseHistory history = new PoseHistory(8, 2);
+        history.beginGesture();
+        history.track(0, first);
+        first.rotate(1, 5);
+        history.endGesture();
+        history.beginGesture();
+        history.track(0, first);
+        first.rotate(2, 5);
+        history.endGesture();
+        history.undo(scene);
+        assertEquals(1, history.getRedoCount());
+
+        history.beginGesture();
+        history.track(0, first);
+        first.rotate(1, 5);
+        first.rotate(2, 5);
+        first.rotate(3, 5);
+        assertFalse(history.endGesture());
+        assertEquals(1, history.getUndoCount());
+        assertEquals(1, history.getRedoCount());
+        assertEquals(2 * 16, history.getByteCount());
+
+        assertTrue(history.undo(scene));
+        assertEquals(0, first.getRotation(1), 0);
+        assertEquals("not in the entry undone", 5, first.getRotation(3), 0);
+    }
+
+    @Test
+    public void thousandsOfDragsFitInAFewHundredKilobytes() {
+        PoseHistory history = new PoseHistory();
+        for (int i = 0; i < PoseHistory.DEFAULT_MAX_ENTRIES; i++) {
+            history.beginGesture();
+            history.track(0, first);
+            first.rotate(1 + i % 3, 1);                                 // A limb turned
+            first.translate(0, 1, 1);                                   // and the body dragged
+            history.endGesture();
+        }
+        assertEquals(PoseHistory.DEFAULT_MAX_ENTRIES, history.getUndoCount());
+        assertTrue(history.getByteCount() < 256 * 1024);
+    }
+
+    @Test
+    public void undoAndRedoDoNotAllocate() {
+        final PoseHistory history = new PoseHistory();
+        for (int i = 0; i < 1000; i++) {
+            history.beginGesture();
+            history.track(0, first);
+            history.track(1, second);
+            first.rotate(1 + i % 3, 1);
+            second.translate(0, 1, 1);
+            history.endGesture();
+        }
+        Runnable round = new Runnable() {
+            @Override
+            public void run() {
+                while (history.undo(scene)) {
+                }
+                while (history.redo(scene)) {
+                }
+            }
+        };
+        round.run();
+        round.run();
+        long allocated = Allocations.measure(round);
+        assertEquals("bytes allocated undoing and redoing 1000 gestures", 0, allocated);
+    }
+}
@@ -0,0 +1,62 @@
+package com.a5.cs349.ragdoll.scene;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PoseSnapshotTest {
+    private Skeleton first;
+    private Skeleton second;
+
+    @Before
+    public void setUp() {
+        first = TestRigs.chain(540, 960);
+        second = TestRigs.chain(100, 200);
+    }
+
+    @Test
+    public void restoreUndoesEveryChange() {
+        List<Skeleton> scene = Arrays.asList(first, second);
+        PoseSnapshot snapshot = PoseSnapshot.capture(scene);
+        float[] before = worldTransforms(first);
+
+        first.translate(0, 30, -20);
+        first.rotate(1, 45);
+        first.scale(2, 1.5f);
+        second.rotate(3, 90);
+        first.updateWorldTransforms();
+
+        snapshot.restore(0, first);
+        snapshot.restore(1, second);
+        assertArrayEquals(before, worldTransforms(first), 0);
+        assertEquals(0, second.getRotation(3), 0);
+        assertEquals(1, first.getScale(2), 0);
+        assertTrue(first.subtreeBoundsContain(0, 540, 960 + 160));
+    }
+
+    @Test
+    public void snapshotIsACopy() {
+        PoseSnapshot snapshot = PoseSnapshot.capture(Arrays.asList(first));
+        first.rotate(1, 45);
+        snapshot.restore(0, first);
+        first.rotate(1, 10);
+        snapshot.restore(0, first);
+        assertEquals(0, first.getRotation(1), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSkeletonsOfAnotherShape() {
+        PoseSnapshot snapshot = PoseSnapshot.capture(Arrays.asList(first));
+        second.addJoint(3);
+        snapshot.restore(0, second);
+    }
+
+    private static float[] worldTransforms(Skeleton skeleton) {
+        skeleton.updateWorldTransforms();
+        return Arrays.copyOf(skeleton.getWorldTransforms(), skeleton.getCount() * 6);
+    }
+}
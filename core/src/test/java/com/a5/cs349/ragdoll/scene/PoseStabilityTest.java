@@ -0,0 +1,127 @@
+package com.a5.cs349.ragdoll.scene;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Joints hold parent-relative poses, so manipulating one joint must leave
+ * every other joint's local state alone and must not let the pose drift.
+ */
+public class PoseStabilityTest {
+    private static final int CYCLES = 10000;
+
+    private Skeleton skeleton;
+
+    @Before
+    public void setUp() {
+        // A torso with two three-bone limbs, roughly the shape of the Scyther rig
+        skeleton = new Skeleton();
+        int torso = skeleton.addJoint(Skeleton.NO_PARENT);
+        skeleton.setTranslate(torso, 540, 960);
+        int parent = torso;
+        for (int j = 0; j < 3; j++) {
+            parent = skeleton.addJoint(parent);
+            skeleton.setTranslate(parent, -80 + j * 5, 90 - j * 10);
+            skeleton.setScalable(parent, j < 2);
+        }
+        parent = torso;
+        for (int j = 0; j < 3; j++) {
+            parent = skeleton.addJoint(parent);
+            skeleton.setTranslate(parent, 75 - j * 5, 95 + j * 10);
+        }
+    }
+
+    @Test
+    public void rotateTouchesOnlyThatJoint() {
+        float[] before = localPose();
+        skeleton.rotate(1, 37);
+        float[] after = localPose();
+        for (int i = 0; i < before.length; i++) {
+            if (i / 4 != 1) {
+                assertEquals("local state of joint " + i / 4, before[i], after[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void randomRotateUnrotateCyclesKeepThePose() {
+        float[] worldBefore = worldOrigins();
+        Random random = new Random(349);
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            int joint = random.nextInt(skeleton.getCount());
+            float degrees = random.nextFloat() * 720 - 360;
+            skeleton.rotate(joint, degrees);
+            skeleton.updateWorldTransforms();
+            skeleton.rotate(joint, -degrees);
+            skeleton.updateWorldTransforms();
+        }
+        float[] worldAfter = worldOrigins();
+        for (int i = 0; i < worldBefore.length; i++) {
+            assertEquals("world coordinate " + i, worldBefore[i], worldAfter[i], 0.05f);
+        }
+        for (int joint = 0; joint < skeleton.getCount(); joint++) {
+            float r = skeleton.getRotation(joint);
+            assertTrue("rotation of " + joint + " was " + r,
+                    Math.min(Math.abs(r), Math.abs(360 - r)) < 0.01f);
+        }
+    }
+
+    @Test
+    public void boneLengthsSurviveThousandsOfRotations() {
+        float[] lengths = boneLengths();
+        Random random = new Random(20674034);
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            skeleton.rotate(random.nextInt(skeleton.getCount()), random.nextFloat() * 360);
+            skeleton.updateWorldTransforms();
+        }
+        float[] after = boneLengths();
+        for (int i = 0; i < lengths.length; i++) {
+            assertEquals("bone " + i, lengths[i], after[i], 1e-3f);
+        }
+    }
+
+    @Test
+    public void scaleRoundTripRestoresThePose() {
+        float[] worldBefore = worldOrigins();
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            assertTrue(skeleton.scale(1, 1.25f));
+            assertTrue(skeleton.scale(1, 0.8f));
+        }
+        assertArrayEquals(worldBefore, worldOrigins(), 0.05f);
+    }
+
+    private float[] localPose() {
+        float[] pose = new float[skeleton.getCount() * 4];
+        for (int joint = 0; joint < skeleton.getCount(); joint++) {
+            pose[joint * 4] = skeleton.getTranslateX(joint);
+            pose[joint * 4 + 1] = skeleton.getTranslateY(joint);
+            pose[joint * 4 + 2] = skeleton.getRotation(joint);
+            pose[joint * 4 + 3] = skeleton.getScale(joint);
+        }
+        return pose;
+    }
+
+    private float[] worldOrigins() {
+        float[] origins = new float[skeleton.getCount() * 2];
+        for (int joint = 0; joint < skeleton.getCount(); joint++) {
+            origins[joint * 2] = skeleton.getWorldX(joint);
+            origins[joint * 2 + 1] = skeleton.getWorldY(joint);
+        }
+        return origins;
+    }
+
+    private float[] boneLengths() {
+        float[] lengths = new float[skeleton.getCount()];
+        for (int joint = 1; joint < skeleton.getCount(); joint++) {
+            int p = skeleton.getParent(joint);
+            float dx = skeleton.getWorldX(joint) - skeleton.getWorldX(p);
+            float dy = skeleton.getWorldY(joint) - skeleton.getWorldY(p);
+            lengths[joint] = (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,189 @@
+package com.a5.cs349.ragdoll.scene;
+
+import com.a5.cs349.ragdoll.geom.Affine;
+import com.a5.cs349.ragdoll.geom.Bounds;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SkeletonTest {
+    private Skeleton skeleton;
+    private int root;
+    private int arm;
+    private int hand;
+    private int leg;
+
+    @Before
+    public void setUp() {
+        skeleton = new Skeleton(2);
+        root = skeleton.addJoint(Skeleton.NO_PARENT);
+        arm = skeleton.addJoint(root);
+        hand = skeleton.addJoint(arm);
+        leg = skeleton.addJoint(root);
+        skeleton.setTranslate(root, 100, 100);
+        skeleton.setTranslate(arm, 50, 0);
+        skeleton.setTranslate(hand, 30, 0);
+        skeleton.setTranslate(leg, 0, 80);
+    }
+
+    @Test
+    public void jointsAreStoredDepthFirst() {
+        assertEquals(4, skeleton.getCount());
+        assertEquals(4, skeleton.getSubtreeEnd(root));
+        assertEquals(3, skeleton.getSubtreeEnd(arm));
+        assertEquals(3, skeleton.getSubtreeEnd(hand));
+        assertEquals(4, skeleton.getSubtreeEnd(leg));
+        assertEquals(arm, skeleton.getParent(hand));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsJointsOutOfDepthFirstOrder() {
+        // The arm's subtree is closed once the leg has been added
+        skeleton.addJoint(arm);
+    }
+
+    @Test
+    public void worldTransformsComposeDownTheChain() {
+        assertEquals(180, skeleton.getWorldX(hand), 1e-4);
+        assertEquals(100, skeleton.getWorldY(hand), 1e-4);
+
+        skeleton.rotate(arm, 90);
+        // The hand swings about the arm's joint
+        assertEquals(150, skeleton.getWorldX(hand), 1e-3);
+        assertEquals(130, skeleton.getWorldY(hand), 1e-3);
+        assertEquals(90, skeleton.getWorldRotation(hand), 1e-4);
+
+        Affine world = new Affine();
+        skeleton.getWorldTransform(hand, world);
+        assertEquals(0, world.a, 1e-6);
+        assertEquals(1, world.b, 1e-6);
+        // The leg is untouched
+        assertEquals(100, skeleton.getWorldX(leg), 1e-4);
+        assertEquals(180, skeleton.getWorldY(leg), 1e-4);
+    }
+
+    @Test
+    public void inverseUndoesWorld() {
+        skeleton.rotate(root, 30);
+        skeleton.rotate(arm, 45);
+        Affine world = new Affine();
+        skeleton.getWorldTransform(hand, world);
+        float x = world.mapX(7, -3);
+        float y = world.mapY(7, -3);
+        assertEquals(7, skeleton.toLocalX(hand, x, y), 1e-3);
+        assertEquals(-3, skeleton.toLocalY(hand, x, y), 1e-3);
+    }
+
+    @Test
+    public void subtreeBoundsAreRefreshedAfterChanges() {
+        for (int j = 0; j < skeleton.getCount(); j++) {
+            skeleton.setLocalBounds(j, -5, -5, 5, 5);
+        }
+        Bounds b = new Bounds();
+        skeleton.getSubtreeBounds(root, b);
+        assertEquals(95, b.left, 1e-4);
+        assertEquals(185, b.right, 1e-4);
+        assertEquals(185, b.bottom, 1e-4);
+
+        skeleton.translate(hand, 20, 0);
+        skeleton.getSubtreeBounds(arm, b);
+        assertEquals(205, b.right, 1e-4);
+        skeleton.getSubtreeBounds(root, b);
+        assertEquals(205, b.right, 1e-4);
+        assertTrue(skeleton.subtreeBoundsContain(root, 200, 100));
+        assertFalse(skeleton.subtreeBoundsContain(leg, 200, 100));
+    }
+
+    @Test
+    public void scaleStretchesScalableChains() {
+        skeleton.setScalable(arm, true);
+        skeleton.setScalable(hand, true);
+        skeleton.rotate(arm, 90);
+        assertTrue(skeleton.scale(arm, 2));
+        assertEquals(2, skeleton.getScale(arm), 0);
+        // The hand inherits the stretch without changing its own pose
+        assertEquals(1, skeleton.getScale(hand), 0);
+        assertEquals(2, skeleton.getEffectiveScale(hand), 0);
+        assertEquals(1, skeleton.getEffectiveScale(leg), 0);
+        // Its offset (30, 0) lies across the arm's y axis, so it does not move
+        assertEquals(150, skeleton.getWorldX(hand), 1e-3);
+        assertEquals(130, skeleton.getWorldY(hand), 1e-3);
+
+        skeleton.setTranslate(hand, 0, 30);
+        assertEquals(90, skeleton.getWorldX(hand), 1e-3);
+        assertEquals(100, skeleton.getWorldY(hand), 1e-3);
+
+        assertFalse(skeleton.scale(root, 2));
+        assertFalse(skeleton.scale(arm, 10));
+        assertEquals(2, skeleton.getScale(arm), 0);
+    }
+
+    @Test
+    public void attachAppendsUnderParent() {
+        Skeleton finger = new Skeleton();
+        int knuckle = finger.addJoint(Skeleton.NO_PARENT);
+        int tip = finger.addJoint(knuckle);
+        finger.setTranslate(knuckle, 10, 0);
+        finger.setTranslate(tip, 5, 0);
+        finger.setTag(tip, "tip");
+
+        Skeleton other = new Skeleton();
+        int otherRoot = other.addJoint(Skeleton.NO_PARENT);
+        int base = other.attach(finger, otherRoot);
+        assertEquals(1, base);
+        assertEquals(otherRoot, other.getParent(base));
+        assertEquals(base, other.getParent(base + 1));
+        assertEquals("tip", other.getTag(base + 1));
+        assertEquals(15, other.getWorldX(base + 1), 1e-4);
+    }
+
+    @Test
+    public void damageCoversOnlyTheMovedSubtreeBeforeAndAfter() {
+        for (int j = root; j <= leg; j++) {
+            skeleton.setLocalDrawBounds(j, -5, -5, 5, 5);
+        }
+        Bounds damage = new Bounds();
+        assertTrue(skeleton.collectDamage(damage));
+        damage.setEmpty();
+        assertFalse(skeleton.collectDamage(damage));
+
+        // The hand is at (180, 100); rotating the arm swings it to (150, 130)
+        skeleton.rotate(arm, 90);
+        assertTrue(skeleton.collectDamage(damage));
+        assertTrue(damage.contains(180, 100));
+        assertTrue(damage.contains(150, 130));
+        assertTrue(damage.contains(150, 100));
+        // Neither the root nor the leg moved
+        assertFalse(damage.contains(100, 100));
+        assertFalse(damage.contains(100, 180));
+
+        damage.setEmpty();
+        assertFalse(skeleton.collectDamage(damage));
+        assertTrue(damage.isEmpty());
+    }
+
+    @Test
+    public void drawBoundsStretchWithTheImage() {
+        skeleton.setScalable(arm, true);
+        skeleton.setLocalDrawBounds(arm, -5, 0, 5, 10);
+        skeleton.scale(arm, 2);
+        Bounds bounds = new Bounds();
+        skeleton.getDrawBounds(arm, bounds);
+        assertEquals(145, bounds.left, 1e-4);
+        assertEquals(120, bounds.bottom, 1e-4);
+        assertTrue(skeleton.subtreeDrawBoundsIntersect(root, 150, 115, 151, 116));
+    }
+
+    @Test
+    public void instancesShareTheDefinitionButNotThePose() {
+        RigDefinition rig = TestRigs.scyther();
+        Skeleton a = rig.instantiate(100, 100);
+        Skeleton b = rig.instantiate(100, 100);
+        a.rotate(1, 45);
+        assertEquals(45, a.getRotation(1), 0);
+        assertEquals(0, b.getRotation(1), 0);
+        assertEquals(rig.getOffsetX(1), b.getTranslateX(1), 0);
+        assertTrue(a.hitTest(0, 100, 100, rig) != Skeleton.NO_PARENT);
+    }
+}
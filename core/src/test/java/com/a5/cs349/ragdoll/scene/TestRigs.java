@@ -0,0 +1,74 @@
+package com.a5.cs349.ragdoll.scene;
+
+import com.a5.cs349.ragdoll.io.RigLoader;
+import com.a5.cs349.ragdoll.io.RigReader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Rigs and skeletons for plain JVM tests, without any images. Rigs are
+ * read from the rig files the app ships, which are on the test classpath.
+ */
+public final class TestRigs {
+    public static final int TORSO = 0;
+    public static final int LEFT_FOOT = 3;
+    public static final int LEFT_ARM = 7;
+    public static final int LEFT_HAND = 9;
+    public static final int RIGHT_HAND = 12;
+    public static final int HEAD = 13;
+
+    private static final String SCYTHER = "rigs/scyther.rig";
+
+    private static final RigLoader LOADER = new RigLoader(new RigLoader.Source() {
+        @Override
+        public InputStream open(String name) throws IOException {
+            InputStream in = TestRigs.class.getClassLoader().getResourceAsStream(name);
+            if (in == null) {
+                throw new FileNotFoundException(name + " is not on the test classpath");
+            }
+            return in;
+        }
+    }, new RigReader.ImageResolver() {
+        @Override
+        public int resolve(String image) {
+            return image.hashCode();
+        }
+    });
+
+    private TestRigs() {
+    }
+
+    /**
+     * The Scyther rig the app draws, from rigs/scyther.rig: a torso with
+     * two three-bone legs, two three-bone arms and a head, in BodyPart
+     * order.
+     */
+    public static RigDefinition scyther() {
+        try {
+            return LOADER.load(SCYTHER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A skeleton of four joints in a line, built without a rig: a root at
+     * (x, y) and three scalable bones, each hanging 50 pixels below its
+     * parent.
+     */
+    public static Skeleton chain(float x, float y) {
+        Skeleton skeleton = new Skeleton();
+        int parent = skeleton.addJoint(Skeleton.NO_PARENT);
+        skeleton.setTranslate(parent, x, y);
+        skeleton.setLocalBounds(parent, -10, -10, 10, 10);
+        for (int j = 0; j < 3; j++) {
+            parent = skeleton.addJoint(parent);
+            skeleton.setTranslate(parent, 0, 50);
+            skeleton.setScalable(parent, true);
+            skeleton.setLocalBounds(parent, -10, 0, 10, 50);
+        }
+        return skeleton;
+    }
+}
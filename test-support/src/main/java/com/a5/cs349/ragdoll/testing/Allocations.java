@@ -0,0 +1,46 @@
+package com.a5.cs349.ragdoll.testing;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes the current thread allocates, for tests that check a
+ * hot path allocates nothing once warmed up.
+ */
+public final class Allocations {
+    private static final int TRIES = 3;
+
+    private Allocations() {
+    }
+
+    /**
+     * Returns the bytes the current thread allocates running work, which
+     * should be warmed up first so class loading and first use allocations
+     * are not counted.
+     *
+     * Reading the counter usually allocates the same few bytes, but now
+     * and then the JIT compiling it costs more, so both the cost of a read
+     * and the work itself are measured a few times and the least taken.
+     * Work that allocates every time it runs is still counted in full.
+     */
+    public static long measure(Runnable work) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("This JVM cannot count the bytes a thread allocates");
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        long baseline = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < TRIES; i++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            baseline = Math.min(baseline, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        for (int i = 0; i < TRIES; i++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            work.run();
+            allocated = Math.min(allocated, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return allocated - baseline;
+    }
+}